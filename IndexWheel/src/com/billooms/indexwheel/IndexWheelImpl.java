@@ -1,24 +1,31 @@
 package com.billooms.indexwheel;
 
-import com.billooms.indexwheel.drawables.Circle;
-import com.billooms.indexwheel.drawables.Dot;
-import com.billooms.indexwheel.drawables.Text;
+import com.billooms.indexwheel.api.HolePattern;
+import com.billooms.indexwheel.api.IndexCursor;
 import com.billooms.indexwheel.api.IndexWheel;
-import com.billooms.indexwheel.drawables.Pt;
-import java.awt.Color;
-import java.awt.Font;
+import com.billooms.indexwheel.api.PatternCursor;
+import com.billooms.indexwheel.api.Spindle;
+import com.billooms.indexwheel.api.StepMath;
 import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openide.util.Lookup;
 import org.openide.util.lookup.ServiceProvider;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 /**
  * Implementation of an index wheel on a lathe.
+ * The holes are kept in an immutable HolePattern, which is replaced when the wheel is changed,
+ * so the control path never sees a half-changed wheel and never touches anything for drawing.
+ * The drawing (WheelView) is only made when the wheel is painted, and only the views
+ * of the last MAX_VIEWS wheels that were painted are kept.
+ * The rotation is the Spindle's, and the drawing is turned to it when the wheel is painted.
  * @author Bill Ooms. Copyright 2011 Studio of Bill Ooms. All rights reserved.
  * 
  * This program is free software: you can redistribute it and/or modify
@@ -39,33 +46,25 @@ public class IndexWheelImpl implements IndexWheel {
 
 	private final static String ID_PREFIX = "idx";
 	private final static int DEFAULT_HOLES = 48;
-    private final static double HOLES_RADIUS = WHEEL_RADIUS - 0.1;
-    private final static double TEXT_RADIUS = WHEEL_RADIUS - 0.3;
-    private final static Font ARROW_FONT = new Font("SansSerif", Font.BOLD, 30);	// Font that will be used for arrow.
-    private final static Color ARROW_COLOR = Color.BLUE;
-    private final static String ARROW_UNI = "\u27A1";		// unicode for rightarrow symbol
-//	private final static String ARROW_UNI = "\u2B05";		// unicode for leftarrow symbol
-    private final static Font NAME_FONT = new Font("SansSerif", Font.BOLD, 30);	// Font that will be used for name.
-    private final static Color NAME_COLOR = Color.BLACK;
     private final static String DEFAULT_NAME = "Index" + DEFAULT_HOLES;
-	private final static Font NUMBER_FONT = new Font("SansSerif", Font.PLAIN, 12);
-	private final static Font HIGHLIGHT_FONT = new Font("SansSerif", Font.BOLD, 16);	// highlight for one index hole
-	private final static Color HIGHLIGHT_COLOR = Color.BLUE;
+	/** Number of wheels that keep their drawing after they are painted */
+	private final static int MAX_VIEWS = 4;
 
     private final static DecimalFormat F4 = new DecimalFormat("0.0000");
-    
-    // Objects for drawing
-    private Circle outline;			// the outline of the wheel
-    private Dot[] holes;			// array of holes
-    private Text[] numbers;			// text for hole number
-    private Text name;				// name for the wheel
-    private Text arrow;				// points to current location of the wheel
+
+	// Drawings of the wheels that were painted last (the eldest is dropped)
+	private final static Map<IndexWheelImpl, WheelView> views = new LinkedHashMap<IndexWheelImpl, WheelView>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<IndexWheelImpl, WheelView> eldest) {
+			return size() > MAX_VIEWS;
+		}
+	};
 	
 	private static int countID = 0;		// counter for generating a unique ID
 	private final String id;			// unique ID which doesn't change
-    private int numHoles = DEFAULT_HOLES;	// total number of holes in the wheel
-    private double phase = 0.0;		// fractional phase in the range 0.0 to 1.0
-    private static double rotation = 0.0;	// current rotation in degrees shared by all wheels
+	private String name = DEFAULT_NAME;	// name for the wheel
+	private volatile HolePattern pattern = new HolePattern(DEFAULT_HOLES, 0.0);	// holes, phase and filled holes
+	private final static Spindle spindle = Lookup.getDefault().lookup(Spindle.class);	// rotation shared by all wheels
 //	private int resolution = 2600;		// micro-steps per spindle rotation -- use for testing
 	private int resolution = 0;			// micro-steps per spindle rotation
 	
@@ -76,19 +75,6 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	public IndexWheelImpl() {
 		id = ID_PREFIX + countID;		// unique ID which does not change
-		
-		// arrow on left side
-		arrow = new Text(new Point2D.Double(-WHEEL_RADIUS, 0.0), ARROW_UNI, ARROW_COLOR);
-		arrow.setFont(ARROW_FONT);
-		arrow.setJustify(Text.Justify.RIGHT);
-
-		name = new Text(new Point2D.Double(0.0, 0.0), DEFAULT_NAME, NAME_COLOR);
-		name.setFont(NAME_FONT);
-		name.setJustify(Text.Justify.CENTER);
-
-		outline = new Circle(new Point2D.Double(0.0, 0.0), WHEEL_RADIUS, Color.BLACK);
-		
-		makeWheel();
 		countID++;
 	}
 	
@@ -99,90 +85,37 @@ public class IndexWheelImpl implements IndexWheel {
 	public IndexWheelImpl(Element element) {
 		this();					// initialize all the basic stuff
 		
-		numHoles = Integer.parseInt(element.getAttribute("nHoles"));
-		phase = Double.parseDouble(element.getAttribute("phase"));
-		name.setText(element.getAttribute("name"));
-		makeWheel();			// must do again in case the number of holes has changed
+		HolePattern p = new HolePattern(Integer.parseInt(element.getAttribute("nHoles")), 
+				Double.parseDouble(element.getAttribute("phase")));
+		name = element.getAttribute("name");
 		
 		NodeList list = element.getElementsByTagName("fill");	// find all <hole>
+		int[] holes = new int[list.getLength()];
 		for (int i = 0; i < list.getLength(); i++) {
-			fillHole(Integer.parseInt(((Element)list.item(i)).getAttribute("hole")), true);
-		}
-	}
-
-	/**
-	 * Make all the features of the wheel.
-	 * (the first time, or when the number of holes changes).
-	 * All holes are un-filled.
-	 */
-	private void makeWheel() {
-		holes = new Dot[numHoles];
-		numbers = new Text[numHoles];
-
-		double delta = 2.0*Math.PI/numHoles;	// radians per hole
-		double ph = phase * delta;				// additional phase shift (radians)
-		// arrow on left side
-		arrow.moveTo(new Point2D.Double((-WHEEL_RADIUS)*Math.cos(-ph), (WHEEL_RADIUS)*Math.sin(-ph)));
-
-		double angle;		// in radians
-		for (int i = 0; i < holes.length; i++) {
-			angle = (double)i * delta - Math.toRadians(rotation);
-			// holes on left side
-			holes[i] = new Dot(new Point2D.Double(-HOLES_RADIUS*Math.cos(angle), HOLES_RADIUS*Math.sin(angle)));
-			holes[i].setFill(false);
-			numbers[i] = new Text(new Point2D.Double(-TEXT_RADIUS*Math.cos(angle), TEXT_RADIUS*Math.sin(angle)), Integer.toString(i));
-			numbers[i].setFont(NUMBER_FONT);
-		}
-	}
-
-	/**
-	 * Update the location of everything on the wheel.
-	 */
-	protected void updateWheel() {
-		double delta = 2.0*Math.PI/numHoles;
-		double ph = phase * delta;
-		// arrow on left side
-		arrow.moveTo(new Point2D.Double((-WHEEL_RADIUS)*Math.cos(-ph), (WHEEL_RADIUS)*Math.sin(-ph)));
-
-		double angle;		// in radians
-		for (int i = 0; i < holes.length; i++) {
-			angle = (double)i * delta - Math.toRadians(rotation);
-			// holes on left side
-			holes[i].moveTo(new Point2D.Double(-HOLES_RADIUS*Math.cos(angle), HOLES_RADIUS*Math.sin(angle)));
-			numbers[i].moveTo(new Point2D.Double(-TEXT_RADIUS*Math.cos(angle), TEXT_RADIUS*Math.sin(angle)));
-			numbers[i].setFont(NUMBER_FONT);		// make sure all fonts are reset
-			numbers[i].setColor(Pt.DEFAULT_COLOR);
-		}
-		double rot = rotation;
-		while (rot >= 360.0) {		// make sure rot is less than 360		
-			rot = rot - 360.0;
-		}
-		if (resolution != 0) {		// bold font for the hole
-			for (int i = 0; i < holes.length; i++) {
-				if ((degreeToStep(angleOf(i) + phaseDeg(), resolution) == degreeToStep(rot, resolution)) && 
-					(isFilled(i))) {
-					numbers[i].setFont(HIGHLIGHT_FONT);
-					numbers[i].setColor(HIGHLIGHT_COLOR);
-				}
-			}
+			holes[i] = Integer.parseInt(((Element)list.item(i)).getAttribute("hole"));
 		}
+		pattern = p.withHoles(holes);	// holes out of range are ignored
 	}
 
     /**
-     * Paint the object.
+     * Paint the object. 
+	 * The drawing is made if the wheel or resolution changed since it was last painted
+	 * (a new rotation only turns it).
      * @param g2d Graphics2D
      */
 	@Override
     public void paint(Graphics2D g2d) {
-		outline.paint(g2d);			// draw the outline
-		for (Dot h : holes) {		// draw all the holes
-			h.paint(g2d);
-		}
-		for (Text t : numbers) {		// draw the text numbers
-			t.paint(g2d);
+		HolePattern p = pattern;
+		double rotation = spindle.getRotation();
+		WheelView view;
+		synchronized (views) {
+			view = views.get(this);		// this wheel is now the last painted
+			if ((view == null) || !view.isFor(p, resolution)) {
+				view = new WheelView(p, name, resolution);
+				views.put(this, view);
+			}
 		}
-		arrow.paint(g2d);			// draw the arrow
-		name.paint(g2d);			// draw the name
+		view.paint(g2d, rotation);
     }
 	
 	/**
@@ -200,7 +133,7 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public String getName() {
-		return name.getText();
+		return name;
 	}
 
 	/**
@@ -210,18 +143,34 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public void setName(String str) {
-		String old = name.getText();
-		name.setText(str);
+		String old = name;
+		name = str;
+		synchronized (views) {
+			WheelView view = views.get(this);
+			if (view != null) {
+				view.setName(str);
+			}
+		}
 		pcs.firePropertyChange(PROP_NAME, old, str);
 	}
 
+	/**
+	 * Get the pattern of holes of the wheel. 
+	 * The pattern is immutable, and a new one is made each time the wheel is changed.
+	 * @return HolePattern
+	 */
+	@Override
+	public HolePattern getPattern() {
+		return pattern;
+	}
+
 	/**
 	 * Get the number of holes in the wheel.
 	 * @return total number of holes.
 	 */
 	@Override
 	public int getNumHoles() {
-		return numHoles;
+		return pattern.getNumHoles();
 	}
 
 	/**
@@ -233,10 +182,9 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public void setNumHoles(int n) {
-		int old = numHoles;
-		this.numHoles = Math.max(n, 1);	// don't go less than 1
-		makeWheel();
-		pcs.firePropertyChange(PROP_NUMHOLES, old, numHoles);
+		int old = pattern.getNumHoles();
+		pattern = pattern.withNumHoles(n);
+		pcs.firePropertyChange(PROP_NUMHOLES, old, pattern.getNumHoles());
 	}
 
 	/**
@@ -245,7 +193,7 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public double getPhase() {
-		return phase;
+		return pattern.getPhase();
 	}
 
 	/**
@@ -255,16 +203,9 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public void setPhase(double ph) {
-		double old = phase;
-		this.phase = ph;
-		if (ph < 0.0) {			// must be in range 0.0 to 1.0
-			this.phase = 0.0;
-		}
-		if (ph > 1.0) {
-			this.phase = 1.0;
-		}
-		updateWheel();
-		pcs.firePropertyChange(PROP_PHASE, old, phase);
+		double old = pattern.getPhase();
+		pattern = pattern.withPhase(ph);
+		pcs.firePropertyChange(PROP_PHASE, old, pattern.getPhase());
 	}
 
 	/**
@@ -275,7 +216,7 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public double getRotation() {
-		return rotation;
+		return spindle.getRotation();
 	}
 
 	/**
@@ -283,15 +224,13 @@ public class IndexWheelImpl implements IndexWheel {
 	 * Positive rotation is counter-clockwise.
 	 * Note that all wheels share a common rotation as if they were all 
 	 * connected together on a single shaft.
-	 * This fires a PROP_ROTATION property change with the old and new values. 
+	 * This sets the rotation of the Spindle, which fires one Spindle.PROP_ROTATION property change 
+	 * (the wheels don't fire their own, and nothing is done for each wheel). 
 	 * @param r new rotation in degrees
 	 */
 	@Override
 	public void setRotation(double r) {
-		double old = rotation;
-		IndexWheelImpl.rotation = r;
-		updateWheel();
-		pcs.firePropertyChange(PROP_ROTATION, old, rotation);
+		spindle.setRotation(r);
 	}
 
 	/**
@@ -310,62 +249,76 @@ public class IndexWheelImpl implements IndexWheel {
 	@Override
 	public double getRotationOfNext(int res) {
 		this.resolution = res;		// save it for other use (comment this out for testing)
-		if (getNumFilled() <= 0) {	// do nothing if no holes are filled
+		HolePattern p = pattern;
+		double rotation = spindle.getRotation();
+		if (p.getNumFilled() == 0) {	// do nothing if no holes are filled
 			return rotation;
 		}
-
-		int idx = 0;		// find the next filled hole
 		// Must make allowances for round-off due to resolution, so 
-		// convert the angles to steps prior to comparison.
-		while (!isFilled(idx) || 
-			   (degreeToStep(angleOf(idx) + phaseDeg(), res) <= degreeToStep(rotation, res))) {
-			idx++;
-		}
-		return angleOf(idx) + phaseDeg();
+		// the search is done in steps.
+		return StepMath.stepToDegree(p.getStepOfNext(StepMath.degreeToStep(rotation, res), res), res);
 	}
 
 	/**
-	 * Determine if hole n is filled.
-	 * Note that n can be negative or n > numHoles. 
-	 * If n > numHoles, then it wraps around.
-	 * @param n hole number
-	 * @return true=filled; false=not filled
+	 * Get the position of a hole in micro-steps (see StepMath.holeToStep). 
+	 * This is exact integer arithmetic, so hole n + numHoles is exactly res steps from hole n.
+	 * @param n hole number (can be negative or more than numHoles for other rotations)
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return position of the hole in micro-steps
 	 */
-	private boolean isFilled(int n) {
-		int nn = n;
-		while (nn < 0) {		// don't want a negative from modulus
-			nn += numHoles;
-		}
-		nn = nn % numHoles;
-		return holes[nn].getFill();
+	@Override
+	public long getStepOfHole(long n, int res) {
+		return pattern.getStepOfHole(n, res);
+	}
+
+	/**
+	 * Get the position of the next filled hole after the given position. 
+	 * Like getRotationOfNext, but in micro-steps from exact integer arithmetic.
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return position of the next filled hole in micro-steps (always more than step). 
+	 * Returns step if there are no filled holes.
+	 */
+	@Override
+	public long getStepOfNext(long step, int res) {
+		this.resolution = res;		// save it for other use
+		return pattern.getStepOfNext(step, res);
 	}
 
 	/**
-	 * Get the angle in degrees of the given hole.
-	 * @param n hole number (can be negative or > numHoles)
-	 * @return angle in degrees
+	 * Check if the given position is exactly at a filled hole (on any rotation).
+	 * This is a binary search of the table of filled holes for the resolution.
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return true=a filled hole is at this position
 	 */
-	private double angleOf(int n) {
-		return n * 360.0/numHoles;
+	@Override
+	public boolean isOnFilledHole(long step, int res) {
+		return pattern.isOnFilledHole(step, res);
 	}
 
 	/**
-	 * The phase shift in absolute degrees.
-	 * @return phase in absolute degrees
+	 * Get a cursor on the filled holes of this wheel, at the given position.
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return IndexCursor
 	 */
-	private double phaseDeg() {
-		return phase*360.0/numHoles;
+	@Override
+	public IndexCursor getCursor(long step, int res) {
+		this.resolution = res;		// save it for other use
+		return new PatternCursor(this, step, res);
 	}
 
 	/**
-     * Convert degrees to steps. 
-	 * This should be the same as is used in RotationStage.java
-     * @param deg degrees
-	 * @param res resolution in micro-steps per rotation
-     * @return steps
+	 * Determine if hole n is filled.
+	 * Note that n can be negative or n > numHoles. 
+	 * If n > numHoles, then it wraps around.
+	 * @param n hole number
+	 * @return true=filled; false=not filled
 	 */
-	private long degreeToStep(double deg, int res) {
-		return Math.round(deg*res/360.0);
+	@Override
+	public boolean isFilled(int n) {
+		return pattern.isFilled(n);
 	}
 
 	/**
@@ -374,9 +327,7 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public void clearAll() {
-		for (Dot h : holes) {
-			h.setFill(false);
-		}
+		pattern = pattern.withAll(false);
 		pcs.firePropertyChange(PROP_CLEARALL, null, null);
 	}
 
@@ -386,9 +337,7 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public void fillAll() {
-		for (Dot h : holes) {
-			h.setFill(true);
-		}
+		pattern = pattern.withAll(true);
 		pcs.firePropertyChange(PROP_FILLALL, null, null);
 	}
 
@@ -401,10 +350,10 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public final void fillHole(int n, boolean f) {
-		if ((n >= holes.length) || (n < 0)) {
+		if ((n >= pattern.getNumHoles()) || (n < 0)) {
 			return;
 		}
-		holes[n].setFill(true);
+		pattern = pattern.withHole(n, f);
 		pcs.firePropertyChange(PROP_FILLHOLE, null, n);
 	}
 	
@@ -412,18 +361,14 @@ public class IndexWheelImpl implements IndexWheel {
 	 * Get the number of holes in the wheel that are filled.
 	 * @return number of filled holes
 	 */
-	private int getNumFilled() {
-		int n = 0;
-		for (Dot dot : holes) {
-			if (dot.getFill()) {
-				n++;
-			}
-		}
-		return n;
+	@Override
+	public int getNumFilled() {
+		return pattern.getNumFilled();
 	}
 	
 	/**
 	 * Toggle the fill of the hole nearest the given point (within given distance).
+	 * The nearest hole is found from the angle of the point, so nothing needs to be drawn.
 	 * This fires a PROP_TOGGLEFILL property change with the number of the hole. 
 	 * @param p Point in pixels (screen coordinates)
 	 * @param dis distance to measure
@@ -431,20 +376,18 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public boolean toggleHoleNearest(Point2D.Double p, double dis) {
-        Dot d = null;
-        double minSep = dis;
-        for (Dot h : holes) {
-            double sep = h.separation(p);
-            if (sep < minSep) {
-                minSep = sep;
-                d = h;
-            }
-        }
-		if (d == null) {
+		HolePattern pat = pattern;
+		int numHoles = pat.getNumHoles();
+		double delta = 2.0*Math.PI/numHoles;		// radians per hole
+		double rot = Math.toRadians(spindle.getRotation());
+		// holes are on the left side: (-R*cos(angle), R*sin(angle))
+		int n = (int) Math.floorMod(Math.round((Math.atan2(p.y, -p.x) + rot) / delta), (long) numHoles);
+		double angle = (double)n * delta - rot;
+		if (p.distance(-WheelView.HOLES_RADIUS*Math.cos(angle), WheelView.HOLES_RADIUS*Math.sin(angle)) >= dis) {
 			return false;
 		}
-		d.setFill(!d.getFill());		// toggle fill
-		pcs.firePropertyChange(PROP_TOGGLEFILL, null, d);
+		pattern = pat.withHole(n, !pat.isFilled(n));	// toggle fill
+		pcs.firePropertyChange(PROP_TOGGLEFILL, null, n);
 		return true;
 	}
 
@@ -454,14 +397,13 @@ public class IndexWheelImpl implements IndexWheel {
 	 */
 	@Override
 	public void writeXML(PrintWriter out) {
-		out.println("  <IndexWheel nHoles='" + holes.length + 
-				"' phase='" + F4.format(phase) +
-				"' name='" + name.getText() + 
+		HolePattern p = pattern;
+		out.println("  <IndexWheel nHoles='" + p.getNumHoles() + 
+				"' phase='" + F4.format(p.getPhase()) +
+				"' name='" + name + 
 				"'>");
-		for (int i = 0; i < holes.length; i++) {
-			if (holes[i].getFill()) {		// only write out the filled holes
-				out.println("    <fill hole='" + i + "'/>");
-			}
+		for (int i = p.nextFilled(0); i >= 0; i = p.nextFilled(i + 1)) {	// only write out the filled holes
+			out.println("    <fill hole='" + i + "'/>");
 		}
 		out.println("  </IndexWheel>");
 	}
@@ -3,7 +3,6 @@ package com.billooms.indexwheel;
 
 import com.billooms.indexwheel.api.IndexWheel;
 import com.billooms.indexwheel.api.IndexWheelMgr;
-import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.File;
@@ -39,7 +38,7 @@ import org.w3c.dom.NodeList;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 @ServiceProvider(service = IndexWheelMgr.class)
-public class IndexWheelMgrImpl implements IndexWheelMgr, PropertyChangeListener {
+public class IndexWheelMgrImpl implements IndexWheelMgr {
 
 	private final ResourceBundle resBundle = ResourceBundle.getBundle("com/billooms/indexwheel/Bundle");
     private List<IndexWheel> wheelList;
@@ -52,20 +51,6 @@ public class IndexWheelMgrImpl implements IndexWheelMgr, PropertyChangeListener
         this.wheelList = new ArrayList<IndexWheel>();
 	}
 
-	/**
-	 * Listen for a PROP_ROTATION PropertyChange in any of the IndexWheels 
-	 * and update all the other wheels in the list.
-	 * @param evt 
-	 */
-	@Override
-	public void propertyChange(PropertyChangeEvent evt) {
-		if (evt.getPropertyName().equals(IndexWheel.PROP_ROTATION)) {
-			for (IndexWheel wh : wheelList) {
-				((IndexWheelImpl)wh).updateWheel();	// when rotation changes, update all wheels
-			}
-		}
-	}
-	
 	/**
 	 * Get the number of wheels in the list.
 	 * @return number of wheels
@@ -119,7 +104,6 @@ public class IndexWheelMgrImpl implements IndexWheelMgr, PropertyChangeListener
     public synchronized IndexWheel addWheel() {
         IndexWheel wheel = new IndexWheelImpl();
         this.wheelList.add(wheel);
-		wheel.addPropertyChangeListener(this);	// listen to the wheel for changes
         this.pcs.firePropertyChange(PROP_ADD, null, wheel);
         return wheel;
     }
@@ -250,7 +234,6 @@ public class IndexWheelMgrImpl implements IndexWheelMgr, PropertyChangeListener
 			for (int i = 0; i < list.getLength(); i++) {
 				IndexWheel wheel = new IndexWheelImpl((Element)list.item(i));
 				wheelList.add(wheel);					// add to the list
-				wheel.addPropertyChangeListener(this);	// listen to the wheel for changes
 			}
         } catch (Exception e) {
 			NotifyDescriptor d = new NotifyDescriptor.Message("Error while trying to read the xml data:\n" + e,
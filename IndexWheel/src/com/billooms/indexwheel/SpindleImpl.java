@@ -0,0 +1,72 @@
+package com.billooms.indexwheel;
+
+import com.billooms.indexwheel.api.Spindle;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Implementation of the spindle that all the IndexWheels are on.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = Spindle.class)
+public class SpindleImpl implements Spindle {
+
+	private volatile double rotation = 0.0;	// current rotation in degrees
+	
+    private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+
+	/**
+	 * Get the current rotation in degrees.
+	 * Positive rotation is counter-clockwise.
+	 * @return current rotation in degrees
+	 */
+	@Override
+	public double getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Set the current rotation.
+	 * Positive rotation is counter-clockwise.
+	 * This fires a PROP_ROTATION property change with the old and new values.
+	 * @param r new rotation in degrees
+	 */
+	@Override
+	public void setRotation(double r) {
+		double old = rotation;
+		rotation = r;
+		pcs.firePropertyChange(PROP_ROTATION, old, r);
+	}
+
+	/**
+	 * Add the given PropertyChangeListener to this object
+	 * @param listener
+	 */
+	@Override
+    public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
+        this.pcs.addPropertyChangeListener(listener);
+    }
+
+	/**
+	 * Remove the given PropertyChangeListener from this object
+	 * @param listener
+	 */
+	@Override
+    public synchronized void removePropertyChangeListener(PropertyChangeListener listener) {
+        this.pcs.removePropertyChangeListener(listener);
+    }
+}
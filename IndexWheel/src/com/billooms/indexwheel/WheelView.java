@@ -0,0 +1,178 @@
+package com.billooms.indexwheel;
+
+import com.billooms.indexwheel.api.HolePattern;
+import com.billooms.indexwheel.api.IndexWheel;
+import com.billooms.indexwheel.api.StepMath;
+import com.billooms.indexwheel.drawables.Circle;
+import com.billooms.indexwheel.drawables.Dot;
+import com.billooms.indexwheel.drawables.Pt;
+import com.billooms.indexwheel.drawables.Text;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+
+/**
+ * The drawing of an index wheel: the outline, holes, hole numbers, name and arrow.
+ * A view is made from a HolePattern for one resolution, when the wheel is painted,
+ * and it is made again only when one of those changes. Views are dropped by IndexWheelImpl
+ * when a wheel isn't painted any more, so the drawables only exist for the wheels on the screen.
+ * The angles of the holes are found once (at rotation 0). When the rotation changes,
+ * the holes and numbers are turned where they are (the drawables only handle a scaled
+ * and translated Graphics2D, not a rotated one) and only the highlighted numbers are changed.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+final class WheelView {
+
+	/** Radius of the circle of holes */
+	final static double HOLES_RADIUS = IndexWheel.WHEEL_RADIUS - 0.1;
+    private final static double TEXT_RADIUS = IndexWheel.WHEEL_RADIUS - 0.3;
+    private final static Font ARROW_FONT = new Font("SansSerif", Font.BOLD, 30);	// Font that will be used for arrow.
+    private final static Color ARROW_COLOR = Color.BLUE;
+    private final static String ARROW_UNI = "\u27A1";		// unicode for rightarrow symbol
+//	private final static String ARROW_UNI = "\u2B05";		// unicode for leftarrow symbol
+    private final static Font NAME_FONT = new Font("SansSerif", Font.BOLD, 30);	// Font that will be used for name.
+    private final static Color NAME_COLOR = Color.BLACK;
+	private final static Font NUMBER_FONT = new Font("SansSerif", Font.PLAIN, 12);
+	private final static Font HIGHLIGHT_FONT = new Font("SansSerif", Font.BOLD, 16);	// highlight for one index hole
+	private final static Color HIGHLIGHT_COLOR = Color.BLUE;
+
+	final HolePattern pattern;		// what this view was made for
+	final int resolution;
+
+    private final Circle outline;		// the outline of the wheel
+    private final Dot[] holes;			// array of holes
+    private final Text[] numbers;		// text for hole number
+    private final Text name;			// name for the wheel
+    private final Text arrow;			// points to current location of the wheel
+	private final double[] cos;			// cos and sin of the angle of each hole at rotation 0
+	private final double[] sin;
+	private double rotation = Double.NaN;	// rotation the holes and numbers are turned to
+	private int highlight = -1;			// first highlighted number (-1 = none)
+	private int numHighlighted = 0;		// number of highlighted numbers
+
+	/**
+	 * Make the drawing of a wheel.
+	 * @param pattern HolePattern
+	 * @param str name of the wheel
+	 * @param resolution micro-steps per spindle rotation (0 if not known, then no hole is highlighted)
+	 */
+	WheelView(HolePattern pattern, String str, int resolution) {
+		this.pattern = pattern;
+		this.resolution = resolution;
+		int numHoles = pattern.getNumHoles();
+
+		outline = new Circle(new Point2D.Double(0.0, 0.0), IndexWheel.WHEEL_RADIUS, Color.BLACK);
+		name = new Text(new Point2D.Double(0.0, 0.0), str, NAME_COLOR);
+		name.setFont(NAME_FONT);
+		name.setJustify(Text.Justify.CENTER);
+
+		double delta = 2.0*Math.PI/numHoles;	// radians per hole
+		double ph = pattern.getPhase() * delta;	// additional phase shift (radians)
+		// arrow on left side
+		arrow = new Text(new Point2D.Double((-IndexWheel.WHEEL_RADIUS)*Math.cos(-ph), (IndexWheel.WHEEL_RADIUS)*Math.sin(-ph)),
+				ARROW_UNI, ARROW_COLOR);
+		arrow.setFont(ARROW_FONT);
+		arrow.setJustify(Text.Justify.RIGHT);
+
+		holes = new Dot[numHoles];
+		numbers = new Text[numHoles];
+		cos = new double[numHoles];
+		sin = new double[numHoles];
+		for (int i = 0; i < numHoles; i++) {
+			cos[i] = Math.cos((double)i * delta);
+			sin[i] = Math.sin((double)i * delta);
+			holes[i] = new Dot(new Point2D.Double());		// placed by turn()
+			holes[i].setFill(pattern.isFilled(i));
+			numbers[i] = new Text(new Point2D.Double(), Integer.toString(i));
+			numbers[i].setFont(NUMBER_FONT);
+		}
+	}
+
+	/**
+	 * Check if this view can be used to paint.
+	 * @param p HolePattern of the wheel
+	 * @param res micro-steps per spindle rotation
+	 * @return true = made for the same pattern and resolution
+	 */
+	boolean isFor(HolePattern p, int res) {
+		return (p == pattern) && (res == resolution);
+	}
+
+	/**
+	 * Turn the holes and numbers to a rotation and highlight the numbers of the filled holes at it.
+	 * @param rot rotation in degrees
+	 */
+	private void turn(double rot) {
+		rotation = rot;
+		double cr = Math.cos(Math.toRadians(rot));
+		double sr = Math.sin(Math.toRadians(rot));
+		for (int i = 0; i < holes.length; i++) {
+			double c = cos[i] * cr + sin[i] * sr;		// cos and sin of (angle - rotation)
+			double s = sin[i] * cr - cos[i] * sr;
+			// holes on left side
+			holes[i].getPos().setLocation(-HOLES_RADIUS*c, HOLES_RADIUS*s);
+			numbers[i].getPos().setLocation(-TEXT_RADIUS*c, TEXT_RADIUS*s);
+		}
+		int n = highlight;
+		for (int i = 0; i < numHighlighted; i++) {		// back to a plain font
+			numbers[n].setFont(NUMBER_FONT);
+			numbers[n].setColor(Pt.DEFAULT_COLOR);
+			n = pattern.nextFilled(n + 1);
+		}
+		highlight = -1;
+		numHighlighted = 0;
+		if (resolution != 0) {		// bold font for the filled holes at the rotation
+			long r = StepMath.degreeToStep(rot, resolution);
+			n = pattern.getFilledHoleAt(r, resolution);
+			highlight = n;
+			while ((n >= 0) && (Math.floorMod(pattern.getStepOfHole(n, resolution) - r, (long) resolution) == 0)) {
+				numbers[n].setFont(HIGHLIGHT_FONT);
+				numbers[n].setColor(HIGHLIGHT_COLOR);
+				numHighlighted++;
+				n = pattern.nextFilled(n + 1);	// holes at the same step (only at a very low resolution)
+			}
+		}
+	}
+
+	/**
+	 * Change the name that is shown.
+	 * @param str name
+	 */
+	void setName(String str) {
+		name.setText(str);
+	}
+
+    /**
+     * Paint the wheel.
+     * @param g2d Graphics2D
+	 * @param rot rotation in degrees
+     */
+    void paint(Graphics2D g2d, double rot) {
+		if (rot != rotation) {
+			turn(rot);
+		}
+		outline.paint(g2d);			// draw the outline
+		for (Dot h : holes) {		// draw all the holes
+			h.paint(g2d);
+		}
+		for (Text t : numbers) {		// draw the text numbers
+			t.paint(g2d);
+		}
+		arrow.paint(g2d);			// draw the arrow
+		name.paint(g2d);			// draw the name
+    }
+}
@@ -0,0 +1,295 @@
+package com.billooms.indexwheel.api;
+
+import java.util.Arrays;
+
+/**
+ * The pattern of an index wheel: the number of holes, the phase and the filled holes.
+ * A HolePattern is immutable (the with... methods return a new pattern), so it can be
+ * used on any thread, and it has nothing for drawing: it is what the control path uses
+ * to find the positions of the holes. The filled holes are one bit per hole.
+ * The sorted positions of the filled holes for a resolution are built when they are
+ * first needed and kept with the pattern (see getStepOfNext).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class HolePattern {
+
+	private final int numHoles;
+	private final double phase;			// fraction of the hole spacing (0.0 to 1.0)
+	private final long phaseUnits;		// phase in units of 1/StepMath.PHASE_SCALE
+	private final HoleSet filled;		// never changed after the constructor
+	private final int numFilled;
+	private volatile StepTable stepTable = null;	// positions of the filled holes (built when needed)
+
+	/**
+	 * Create a pattern with no filled holes.
+	 * @param numHoles number of holes (values less than 1 will be interpreted as 1)
+	 * @param phase phase in fraction of the hole spacing (clipped to 0.0 to 1.0)
+	 */
+	public HolePattern(int numHoles, double phase) {
+		this(Math.max(numHoles, 1), phase, null);
+	}
+
+	private HolePattern(int numHoles, double phase, HoleSet filled) {
+		this.numHoles = numHoles;
+		this.phase = Math.max(0.0, Math.min(phase, 1.0));
+		this.phaseUnits = StepMath.phaseUnits(this.phase);
+		this.filled = (filled == null) ? new HoleSet(numHoles) : filled;
+		this.numFilled = this.filled.cardinality();
+	}
+
+	/**
+	 * Get the number of holes.
+	 * @return total number of holes
+	 */
+	public int getNumHoles() {
+		return numHoles;
+	}
+
+	/**
+	 * Get the phase.
+	 * @return phase in fraction of the hole spacing (0.0 to 1.0)
+	 */
+	public double getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Get the number of filled holes.
+	 * @return number of filled holes
+	 */
+	public int getNumFilled() {
+		return numFilled;
+	}
+
+	/**
+	 * Determine if hole n is filled.
+	 * @param n hole number (can be negative or n >= numHoles, it wraps around)
+	 * @return true=filled; false=not filled
+	 */
+	public boolean isFilled(long n) {
+		return filled.get((int) Math.floorMod(n, (long) numHoles));
+	}
+
+	/**
+	 * Find the first filled hole at or after a hole (without wrapping around).
+	 * @param from hole number (0 or more)
+	 * @return hole number, or -1 if there is none
+	 */
+	public int nextFilled(int from) {
+		return filled.nextSetBit(from);
+	}
+
+	/**
+	 * Get a pattern with a different number of holes (all un-filled).
+	 * @param n number of holes (values less than 1 will be interpreted as 1)
+	 * @return new HolePattern
+	 */
+	public HolePattern withNumHoles(int n) {
+		return new HolePattern(n, phase);
+	}
+
+	/**
+	 * Get a pattern with a different phase (the same filled holes).
+	 * @param ph phase in fraction of the hole spacing (clipped to 0.0 to 1.0)
+	 * @return new HolePattern
+	 */
+	public HolePattern withPhase(double ph) {
+		return new HolePattern(numHoles, ph, filled);	// the holes can be shared, they never change
+	}
+
+	/**
+	 * Get a pattern with one hole filled or cleared.
+	 * @param n hole number (0 to numHoles-1)
+	 * @param f true=fill, false=clear
+	 * @return new HolePattern (or this one if nothing changes)
+	 */
+	public HolePattern withHole(int n, boolean f) {
+		if (filled.get(n) == f) {
+			return this;
+		}
+		HoleSet h = new HoleSet(filled);
+		h.set(n, f);
+		return new HolePattern(numHoles, phase, h);
+	}
+
+	/**
+	 * Get a pattern with the given holes filled and all the others cleared
+	 * (for example when a wheel is read from a file, so the holes are copied only once).
+	 * @param holes hole numbers to fill (numbers less than 0 or numHoles or more are ignored)
+	 * @return new HolePattern
+	 */
+	public HolePattern withHoles(int[] holes) {
+		HoleSet h = new HoleSet(numHoles);
+		for (int n : holes) {
+			if ((n >= 0) && (n < numHoles)) {
+				h.set(n, true);
+			}
+		}
+		return new HolePattern(numHoles, phase, h);
+	}
+
+	/**
+	 * Get a pattern with all holes filled or cleared.
+	 * @param f true=fill, false=clear
+	 * @return new HolePattern
+	 */
+	public HolePattern withAll(boolean f) {
+		HoleSet h = new HoleSet(numHoles);
+		h.setAll(f);
+		return new HolePattern(numHoles, phase, h);
+	}
+
+	/**
+	 * Get the position of a hole in micro-steps (see StepMath.holeToStep).
+	 * @param n hole number (can be negative or more than numHoles for other rotations)
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return position of the hole in micro-steps
+	 */
+	public long getStepOfHole(long n, int res) {
+		return StepMath.holeToStep(n, numHoles, phaseUnits, res);
+	}
+
+	/**
+	 * Get the position of the next filled hole after the given position.
+	 * This is a binary search of the sorted positions of the filled holes.
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return position of the next filled hole in micro-steps (always more than step).
+	 * Returns step if there are no filled holes.
+	 */
+	public long getStepOfNext(long step, int res) {
+		return getStepTable(res).next(step);
+	}
+
+	/**
+	 * Check if the given position is exactly at a filled hole (on any rotation).
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return true=a filled hole is at this position
+	 */
+	public boolean isOnFilledHole(long step, int res) {
+		return getFilledHoleAt(step, res) >= 0;
+	}
+
+	/**
+	 * Get the filled hole at a position (on any rotation).
+	 * If more than one filled hole is at the position (only at a very low resolution),
+	 * this is the one with the lowest number.
+	 * @param step position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return hole number, or -1 if no filled hole is at this position
+	 */
+	public int getFilledHoleAt(long step, int res) {
+		StepTable t = getStepTable(res);
+		int k = t.indexOf(step);
+		return (k < 0) ? -1 : t.holes[k];
+	}
+
+	/**
+	 * Get the table of the filled holes for a resolution.
+	 * The table is built when it is first needed, and is kept until another resolution is used.
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return StepTable
+	 */
+	StepTable getStepTable(int res) {
+		StepTable t = stepTable;
+		if ((t == null) || (t.res != res)) {
+			t = new StepTable(res);
+			stepTable = t;
+		}
+		return t;
+	}
+
+	/**
+	 * The positions of the filled holes on the first rotation for one resolution,
+	 * sorted, so a position is found with a binary search and no floating point.
+	 */
+	final class StepTable {
+		final int res;
+		final long[] steps;		// positions of the filled holes (0 to res)
+		final int[] holes;		// hole number at each position (also sorted)
+
+		StepTable(int res) {
+			this.res = res;
+			steps = new long[numFilled];
+			holes = new int[numFilled];
+			int k = 0;
+			for (int i = filled.nextSetBit(0); i >= 0; i = filled.nextSetBit(i + 1)) {	// in order, so sorted
+				steps[k] = StepMath.holeToStep(i, numHoles, phaseUnits, res);
+				holes[k] = i;
+				k++;
+			}
+		}
+
+		/**
+		 * Get the position of the first filled hole after a position.
+		 * @param step position in micro-steps
+		 * @return position in micro-steps (more than step), or step if no holes are filled
+		 */
+		long next(long step) {
+			if (steps.length == 0) {
+				return step;
+			}
+			long base = Math.floorDiv(step, (long) res) * res;	// start of this rotation
+			int k = floor(step - base) + 1;		// the first position more than step
+			return (k < steps.length) ? base + steps[k] : base + res + steps[0];
+		}
+
+		/**
+		 * Find the last filled hole at or before a position on the first rotation.
+		 * @param a position on the first rotation (0 to res-1)
+		 * @return index in the table, or -1 if all the filled holes are after a
+		 */
+		int floor(long a) {
+			int lo = 0;
+			int hi = steps.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (steps[mid] <= a) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo - 1;
+		}
+
+		/**
+		 * Find a filled hole at a position.
+		 * @param step position in micro-steps
+		 * @return index in the table of the first hole at the position, or -1 if there is none
+		 */
+		int indexOf(long step) {
+			long a = Math.floorMod(step, (long) res);
+			int k = first(a);
+			if ((k < 0) && (a == 0)) {
+				k = first(res);			// a hole with a phase of 1.0 is at the end of the rotation
+			}
+			return k;
+		}
+
+		private int first(long a) {
+			int k = Arrays.binarySearch(steps, a);
+			if (k < 0) {
+				return -1;
+			}
+			while ((k > 0) && (steps[k - 1] == a)) {
+				k--;
+			}
+			return k;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.billooms.indexwheel.api;
+
+import java.util.Arrays;
+
+/**
+ * The filled holes of an index wheel, one bit per hole in an array of long words.
+ * Counting and searching are done 64 holes at a time (Long.bitCount and
+ * Long.numberOfTrailingZeros), so a wheel with a million holes is 16 KB
+ * and is scanned in a few thousand steps.
+ * Bits at or beyond size are always 0.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+final class HoleSet {
+
+	private final int size;
+	private final long[] words;
+
+	/**
+	 * Create a set with all holes un-filled.
+	 * @param size number of holes
+	 */
+	HoleSet(int size) {
+		this.size = size;
+		words = new long[(size + 63) >>> 6];
+	}
+
+	/**
+	 * Create a copy of a set.
+	 * @param other HoleSet to copy
+	 */
+	HoleSet(HoleSet other) {
+		this.size = other.size;
+		words = other.words.clone();
+	}
+
+	/**
+	 * Get the number of holes.
+	 * @return size
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Check if a hole is filled.
+	 * @param n hole number (0 to size-1)
+	 * @return true=filled
+	 */
+	boolean get(int n) {
+		return (words[n >>> 6] & (1L << n)) != 0;
+	}
+
+	/**
+	 * Fill or clear a hole.
+	 * @param n hole number (0 to size-1)
+	 * @param f true=fill, false=clear
+	 */
+	void set(int n, boolean f) {
+		if (f) {
+			words[n >>> 6] |= (1L << n);
+		} else {
+			words[n >>> 6] &= ~(1L << n);
+		}
+	}
+
+	/**
+	 * Toggle a hole.
+	 * @param n hole number (0 to size-1)
+	 * @return new state (true=filled)
+	 */
+	boolean flip(int n) {
+		words[n >>> 6] ^= (1L << n);
+		return get(n);
+	}
+
+	/**
+	 * Fill or clear all the holes.
+	 * @param f true=fill, false=clear
+	 */
+	void setAll(boolean f) {
+		Arrays.fill(words, f ? -1L : 0L);
+		if (f && ((size & 63) != 0)) {
+			words[words.length - 1] = -1L >>> (64 - (size & 63));	// nothing beyond size
+		}
+	}
+
+	/**
+	 * Count the filled holes.
+	 * @return number of filled holes
+	 */
+	int cardinality() {
+		int n = 0;
+		for (long w : words) {
+			n += Long.bitCount(w);
+		}
+		return n;
+	}
+
+	/**
+	 * Find the first filled hole at or after a hole.
+	 * @param from hole number to start at (0 or more)
+	 * @return hole number, or -1 if there is no filled hole at or after from
+	 */
+	int nextSetBit(int from) {
+		if (from >= size) {
+			return -1;
+		}
+		int i = from >>> 6;
+		long w = words[i] & (-1L << from);
+		while (w == 0) {
+			if (++i == words.length) {
+				return -1;
+			}
+			w = words[i];
+		}
+		return (i << 6) + Long.numberOfTrailingZeros(w);
+	}
+
+	/**
+	 * Find the first filled hole at or after a hole, wrapping around to hole 0.
+	 * @param from hole number to start at (0 to size-1)
+	 * @return number of holes from 'from' to the filled hole (0 to size-1), or -1 if no hole is filled
+	 */
+	int distanceToNext(int from) {
+		int n = nextSetBit(from);
+		if (n >= 0) {
+			return n - from;
+		}
+		n = nextSetBit(0);
+		return (n < 0) ? -1 : n + size - from;
+	}
+}
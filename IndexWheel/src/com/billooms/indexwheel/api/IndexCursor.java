@@ -0,0 +1,92 @@
+package com.billooms.indexwheel.api;
+
+/**
+ * A position on the filled holes of an IndexWheel: the filled hole and the revolution.
+ * Get one from IndexWheel.getCursor for a spindle resolution.
+ * Moving to the next or previous filled hole is O(1) (no search of the wheel),
+ * and seek is a binary search of the filled holes.
+ * All positions are in micro-steps from exact integer arithmetic (see StepMath).
+ * If the filled holes, phase or number of holes of the wheel are changed,
+ * the cursor finds its place again the next time it is used.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface IndexCursor {
+
+	/**
+	 * Get the wheel of this cursor.
+	 * @return IndexWheel
+	 */
+	IndexWheel getWheel();
+
+	/**
+	 * Get the resolution of this cursor.
+	 * @return micro-steps per revolution
+	 */
+	int getResolution();
+
+	/**
+	 * Put the cursor at a position (for example the stage's position after a manual move).
+	 * If the position is between filled holes, the cursor is at the filled hole before it,
+	 * but next() and previous() still go to the filled holes after and before the position.
+	 * This costs nothing if the position is where the cursor is already.
+	 * @param step position in micro-steps
+	 */
+	void sync(long step);
+
+	/**
+	 * Get the position of the cursor.
+	 * @return position in micro-steps (the synced position if it is between holes)
+	 */
+	long getStep();
+
+	/**
+	 * Get the filled hole of the cursor.
+	 * @return hole number (0 to numHoles-1), or -1 if no holes are filled
+	 */
+	int getHole();
+
+	/**
+	 * Get the revolution of the cursor.
+	 * @return number of whole revolutions (can be negative)
+	 */
+	long getRevolution();
+
+	/**
+	 * Move to the next filled hole (wrapping to the next revolution).
+	 * @return position of the filled hole in micro-steps (the same position if no holes are filled)
+	 */
+	long next();
+
+	/**
+	 * Move to the previous filled hole (wrapping to the previous revolution).
+	 * @return position of the filled hole in micro-steps (the same position if no holes are filled)
+	 */
+	long previous();
+
+	/**
+	 * Move forward to a filled hole: the first time it comes at or after the cursor's position.
+	 * @param hole hole number (0 to numHoles-1)
+	 * @return position of the filled hole in micro-steps
+	 * @throws IllegalArgumentException if the hole is not filled
+	 */
+	long seek(int hole);
+
+	/**
+	 * Get the number of filled holes after the cursor before the end of the revolution.
+	 * @return number of filled holes (0 at the last filled hole)
+	 */
+	int remaining();
+}
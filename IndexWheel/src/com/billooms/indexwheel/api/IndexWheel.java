@@ -31,8 +31,8 @@ public interface IndexWheel {
 	String PROP_NUMHOLES = "numHoles";
 	/** Property name used for changing the phase */
 	String PROP_PHASE = "phase";
-	/** Property name used for changing the rotation */
-	String PROP_ROTATION = "rotation";
+	/** Property name used for changing the rotation (fired by the Spindle, see Spindle.PROP_ROTATION) */
+	String PROP_ROTATION = Spindle.PROP_ROTATION;
 	/** Property name used for clearing all the holes */
 	String PROP_CLEARALL = "clearAll";
 	/** Property name used for filline all the holes */
@@ -107,8 +107,8 @@ public interface IndexWheel {
 	 * Set the current rotation of the wheels to the given value. 
 	 * Positive rotation is counter-clockwise.
 	 * Note that all wheels share a common rotation as if they were all 
-	 * connected together on a single shaft.
-	 * This fires a PROP_ROTATION property change with the old and new values. 
+	 * connected together on a single shaft (see Spindle).
+	 * This fires a Spindle.PROP_ROTATION property change from the Spindle with the old and new values. 
 	 * @param r new rotation in degrees
 	 */
 	void setRotation(double r);
@@ -128,6 +128,63 @@ public interface IndexWheel {
 	 */
 	double getRotationOfNext(int res);
 
+	/**
+	 * Get the position of a hole in micro-steps (see StepMath.holeToStep). 
+	 * This is exact integer arithmetic, so hole n + numHoles is exactly res steps from hole n.
+	 * @param n hole number (can be negative or more than numHoles for other rotations)
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return position of the hole in micro-steps
+	 */
+	long getStepOfHole(long n, int res);
+
+	/**
+	 * Get the position of the next filled hole after the given position. 
+	 * Like getRotationOfNext, but in micro-steps from exact integer arithmetic.
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return position of the next filled hole in micro-steps (always more than step). 
+	 * Returns step if there are no filled holes.
+	 */
+	long getStepOfNext(long step, int res);
+
+	/**
+	 * Check if the given position is exactly at a filled hole (on any rotation).
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return true=a filled hole is at this position
+	 */
+	boolean isOnFilledHole(long step, int res);
+
+	/**
+	 * Get a cursor on the filled holes of this wheel, at the given position.
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 * @return IndexCursor
+	 */
+	IndexCursor getCursor(long step, int res);
+
+	/**
+	 * Get the pattern of holes of the wheel (number of holes, phase and filled holes).
+	 * The pattern is immutable, so it can be kept and used on any thread.
+	 * A new pattern is made each time the wheel is changed.
+	 * @return HolePattern
+	 */
+	HolePattern getPattern();
+
+	/**
+	 * Determine if hole n is filled.
+	 * Note that n can be negative or n >= numHoles (it wraps around).
+	 * @param n hole number
+	 * @return true=filled; false=not filled
+	 */
+	boolean isFilled(int n);
+
+	/**
+	 * Get the number of holes in the wheel that are filled.
+	 * @return number of filled holes
+	 */
+	int getNumFilled();
+
 	/**
 	 * Clear all the holes (i.e. not filled). 
 	 * This fires a PROP_CLEARALL property change. 
@@ -0,0 +1,181 @@
+package com.billooms.indexwheel.api;
+
+import java.util.Arrays;
+
+/**
+ * An IndexCursor on the HolePattern of an IndexWheel: index k in the sorted table of
+ * filled holes (see HolePattern) on revolution rev.
+ * k is -1 for a position before the first filled hole of the revolution.
+ * If the wheel gets a new pattern, the cursor finds its place again at its position.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class PatternCursor implements IndexCursor {
+
+	private final IndexWheel wheel;
+	private final int res;
+	private HolePattern pattern;
+	private HolePattern.StepTable table;
+	private long rev;
+	private int k;
+	private boolean exact;		// true = at the filled hole, false = at step (after hole k)
+	private long step;
+
+	/**
+	 * Create a cursor on the filled holes of a wheel.
+	 * @param wheel IndexWheel
+	 * @param step present position in micro-steps
+	 * @param res The resolution of the spindle in micro-steps per revolution.
+	 */
+	public PatternCursor(IndexWheel wheel, long step, int res) {
+		this.wheel = wheel;
+		this.res = res;
+		pattern = wheel.getPattern();
+		table = pattern.getStepTable(res);
+		find(step);
+	}
+
+	@Override
+	public IndexWheel getWheel() {
+		return wheel;
+	}
+
+	@Override
+	public int getResolution() {
+		return res;
+	}
+
+	@Override
+	public synchronized void sync(long s) {
+		check();
+		if (s != step) {
+			find(s);
+		}
+	}
+
+	@Override
+	public synchronized long getStep() {
+		check();
+		return step;
+	}
+
+	@Override
+	public synchronized int getHole() {
+		check();
+		int n = table.holes.length;
+		if (n == 0) {
+			return -1;
+		}
+		return table.holes[(k >= 0) ? k : n - 1];
+	}
+
+	@Override
+	public synchronized long getRevolution() {
+		check();
+		return rev;
+	}
+
+	@Override
+	public synchronized long next() {
+		check();
+		int n = table.steps.length;
+		if (n == 0) {
+			return step;
+		}
+		long old = step;
+		do {				// skip holes at the same step (only at a very low resolution)
+			k++;
+			if (k == n) {
+				k = 0;
+				rev++;
+			}
+		} while (at() <= old);
+		return step;
+	}
+
+	@Override
+	public synchronized long previous() {
+		check();
+		int n = table.steps.length;
+		if (n == 0) {
+			return step;
+		}
+		long old = step;
+		if (!exact && (k >= 0)) {
+			return at();	// the filled hole before a position between holes
+		}
+		do {				// skip holes at the same step (only at a very low resolution)
+			k--;
+			if (k < 0) {
+				k = n - 1;
+				rev--;
+			}
+		} while (at() >= old);
+		return step;
+	}
+
+	@Override
+	public synchronized long seek(int hole) {
+		check();
+		int j = Arrays.binarySearch(table.holes, hole);	// hole numbers are in order too
+		if (j < 0) {
+			throw new IllegalArgumentException("Hole " + hole + " is not filled");
+		}
+		if (rev * res + table.steps[j] < step) {
+			rev++;
+		}
+		k = j;
+		return at();
+	}
+
+	@Override
+	public synchronized int remaining() {
+		check();
+		return table.steps.length - 1 - k;
+	}
+
+	/**
+	 * Put the cursor exactly at the filled hole k.
+	 * @return position of the hole in micro-steps
+	 */
+	private long at() {
+		exact = true;
+		step = rev * res + table.steps[k];
+		return step;
+	}
+
+	/**
+	 * Find the place for a position (binary search).
+	 * @param s position in micro-steps
+	 */
+	private void find(long s) {
+		rev = Math.floorDiv(s, (long) res);
+		k = table.floor(s - rev * res);
+		exact = (k >= 0) && (rev * res + table.steps[k] == s);
+		step = s;
+	}
+
+	/**
+	 * If the wheel's pattern was changed, find the place again in the new table.
+	 */
+	private void check() {
+		HolePattern p = wheel.getPattern();
+		if (p != pattern) {
+			pattern = p;
+			table = p.getStepTable(res);
+			find(step);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.billooms.indexwheel.api;
+
+import java.beans.PropertyChangeListener;
+
+/**
+ * The spindle of the lathe: all the IndexWheels are on it, so they share its rotation.
+ * The rotation is kept only here, and a change fires one PROP_ROTATION property change
+ * from the spindle (not one from each wheel), so the cost of a rotation change doesn't depend
+ * on how many wheels are loaded. A wheel uses the rotation when it is painted.
+ * Get the spindle with Lookup.getDefault().lookup(Spindle.class).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface Spindle {
+	/** Property name used when the rotation changes */
+	String PROP_ROTATION = "rotation";
+
+	/**
+	 * Get the current rotation in degrees.
+	 * Positive rotation is counter-clockwise.
+	 * @return current rotation in degrees
+	 */
+	double getRotation();
+
+	/**
+	 * Set the current rotation.
+	 * Positive rotation is counter-clockwise.
+	 * This fires a PROP_ROTATION property change with the old and new values.
+	 * @param r new rotation in degrees
+	 */
+	void setRotation(double r);
+
+	/**
+	 * Add the given PropertyChangeListener to this object
+	 * @param listener
+	 */
+	void addPropertyChangeListener(PropertyChangeListener listener);
+
+	/**
+	 * Remove the given PropertyChangeListener from this object
+	 * @param listener
+	 */
+	void removePropertyChangeListener(PropertyChangeListener listener);
+}
@@ -0,0 +1,114 @@
+package com.billooms.indexwheel.api;
+
+/**
+ * Exact conversions between index holes and stepper positions.
+ * The position of hole n of a wheel with N holes and phase p (fraction of the hole spacing)
+ * on a spindle with R micro-steps per rotation is (n + p) * R / N steps.
+ * This is computed from integers only, so a hole many rotations away is exactly
+ * a whole number of rotations from the same hole on the first rotation:
+ * there is no round-off that adds up on a long run.
+ *
+ * The phase is quantized to 1/PHASE_SCALE of the hole spacing (the xml file keeps 4 decimals),
+ * and the result is rounded to the nearest step, with halves rounded up (toward +infinity),
+ * which is the same rule as Math.round.
+ * The degree conversions (for the display) use the same rounding rule.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class StepMath {
+
+	/** Units of phase per hole spacing */
+	public final static long PHASE_SCALE = 10000L;
+
+	private StepMath() {
+	}
+
+	/**
+	 * Quantize a phase to units of 1/PHASE_SCALE of the hole spacing.
+	 * @param phase phase in fraction of the hole spacing (0.0 to 1.0)
+	 * @return phase in units
+	 */
+	public static long phaseUnits(double phase) {
+		return Math.round(phase * PHASE_SCALE);
+	}
+
+	/**
+	 * Get the step position of a hole.
+	 * @param n hole number (can be negative or more than numHoles for other rotations)
+	 * @param numHoles number of holes in the wheel
+	 * @param phaseUnits phase in units of 1/PHASE_SCALE of the hole spacing (see phaseUnits)
+	 * @param res resolution in micro-steps per rotation
+	 * @return position in steps
+	 */
+	public static long holeToStep(long n, int numHoles, long phaseUnits, int res) {
+		long rot = Math.floorDiv(n, (long) numHoles);		// whole rotations are exact
+		long hole = n - rot * numHoles;						// 0 to numHoles-1
+		long num = (hole * PHASE_SCALE + phaseUnits) * res;
+		long den = numHoles * PHASE_SCALE;
+		return rot * res + roundDiv(num, den);
+	}
+
+	/**
+	 * Get the last hole at or before a step position
+	 * (the largest n for which holeToStep(n) is not more than step).
+	 * @param step position in steps
+	 * @param numHoles number of holes in the wheel
+	 * @param phaseUnits phase in units of 1/PHASE_SCALE of the hole spacing
+	 * @param res resolution in micro-steps per rotation
+	 * @return hole number (can be negative or more than numHoles)
+	 */
+	public static long stepToHole(long step, int numHoles, long phaseUnits, int res) {
+		long rot = Math.floorDiv(step, (long) res);
+		long rem = step - rot * res;				// 0 to res-1
+		long n = rot * numHoles + Math.floorDiv(rem * numHoles * PHASE_SCALE - phaseUnits * res, res * PHASE_SCALE);
+		while (holeToStep(n + 1, numHoles, phaseUnits, res) <= step) {	// at most a step or two of round-off
+			n++;
+		}
+		while (holeToStep(n, numHoles, phaseUnits, res) > step) {
+			n--;
+		}
+		return n;
+	}
+
+	/**
+	 * Convert degrees to steps (rounded to the nearest step, halves up).
+	 * @param deg degrees
+	 * @param res resolution in micro-steps per rotation
+	 * @return steps
+	 */
+	public static long degreeToStep(double deg, int res) {
+		return Math.round(deg * res / 360.0);
+	}
+
+	/**
+	 * Convert steps to degrees.
+	 * @param step steps
+	 * @param res resolution in micro-steps per rotation
+	 * @return degrees
+	 */
+	public static double stepToDegree(long step, int res) {
+		return 360.0 * step / res;
+	}
+
+	/**
+	 * Divide and round to the nearest integer, halves up (toward +infinity).
+	 * @param num numerator
+	 * @param den denominator (more than 0)
+	 * @return rounded quotient
+	 */
+	public static long roundDiv(long num, long den) {
+		return Math.floorDiv(2 * num + den, 2 * den);
+	}
+}
@@ -5,6 +5,7 @@ import com.billooms.indexwheel.api.IndexChildren;
 import com.billooms.indexwheel.api.IndexWheel;
 import com.billooms.indexwheel.api.IndexWheelMgr;
 import com.billooms.indexwheel.api.RootNode;
+import com.billooms.indexwheel.api.Spindle;
 import com.billooms.indexwheeleditor.drawables.Grid;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -66,6 +67,7 @@ public final class IndexWheelEditorTopComponent extends TopComponent implements
 	private DisplayPanel display;			// panel for displaying the graphics (nested class below)
 	private IndexWheel selected = null;		// currently selected IndexWheel
 	private IndexWheelMgr idxMgr = Lookup.getDefault().lookup(IndexWheelMgr.class);	// IndexWheel Manager
+	private final Spindle spindle = Lookup.getDefault().lookup(Spindle.class);	// rotation of the wheels
 	
 	private final ExplorerManager exMgr = new ExplorerManager();	// for the ListView down in the EditPanel
     private Lookup.Result result = null;	// global selection of IndexWheel
@@ -490,6 +492,7 @@ private void clearAll(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearAl
 	public void componentOpened() {
 		idxMgr = Lookup.getDefault().lookup(IndexWheelMgr.class);
 		idxMgr.addPropertyChangeListener(this);	// listen to IndexWheelMgr
+		spindle.addPropertyChangeListener(this);	// listen for rotation
         result = Utilities.actionsGlobalContext().lookupResult(IndexWheel.class);
         result.addLookupListener(this);		// listen for changes in the selection
 		if (selected != null) {
@@ -501,6 +504,7 @@ private void clearAll(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearAl
 	public void componentClosed() {
 		idxMgr.removePropertyChangeListener(this);	// remove the listeners when the window closes
 		idxMgr = null;
+		spindle.removePropertyChangeListener(this);
         result.removeLookupListener(this);
         result = null;
 		if (selected != null) {
@@ -539,6 +543,8 @@ private void clearAll(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearAl
 	public void propertyChange(PropertyChangeEvent evt) {
 		if (evt.getSource() instanceof IndexWheel) {	// when the wheel changes, update everything
 			updateAll();		// when the wheel changes, update everything
+		} else if (evt.getSource() instanceof Spindle) {
+			display.repaint();	// the wheel is turned when it is painted
 		} else if (evt.getSource() instanceof IndexWheelMgr) {
 			if (evt.getPropertyName().equals(IndexWheelMgr.PROP_READXML)) {
 				this.setDisplayName("IndexWheel Editor: " + evt.getNewValue());	// update display name
@@ -0,0 +1,38 @@
+package com.billooms.indexercontrol;
+
+/**
+ * How a follower axis moves with a master axis (see Coordinator).
+ * Both positions are unwrapped positions in steps.
+ * Implementations are called for every position of the master,
+ * so they must be fast and should not allocate anything.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface AxisLink {
+
+	/**
+	 * Get the follower position for a master position.
+	 * @param master master position in steps
+	 * @return follower position in steps
+	 */
+	long getTarget(long master);
+
+	/**
+	 * Get the largest follower speed for a master speed
+	 * (the largest slope of the link, so the follower's velocity limit can keep up).
+	 * @return follower steps per master step (not negative)
+	 */
+	double getMaxSlope();
+}
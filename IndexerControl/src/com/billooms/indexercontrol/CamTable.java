@@ -0,0 +1,139 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.indexwheel.api.StepMath;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Links a follower to a master through a table of follower positions for one period
+ * (one rotation) of the master, for example a rosette for ornamental turning.
+ * The table has equally spaced entries, and a position between entries is interpolated
+ * with integer arithmetic, so a lookup is a few multiplications and no trig.
+ * The follower can also advance by a fixed rise per period (for a rosette on a spiral).
+ * Tables are immutable, and the ones made by rosette() are cached.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class CamTable implements AxisLink {
+
+	/** Number of table entries used by rosette() */
+	public final static int DEFAULT_SIZE = 3600;
+
+	private final static Map<String, CamTable> CACHE = new ConcurrentHashMap<String, CamTable>();
+
+	private final long[] table;		// follower steps at equally spaced master positions (one more to close the period)
+	private final int size;			// number of entries in one period
+	private final long period;		// master steps per period
+	private final long rise;		// follower steps per period
+	private final long masterOrigin;
+	private final long followerOrigin;
+	private final double maxSlope;
+
+	/**
+	 * Create a cam table.
+	 * @param values follower steps at equally spaced master positions over one period (at least 1 entry)
+	 * @param period master steps per period (for example steps per rotation)
+	 * @param rise follower steps added per period (0 for a closed cam)
+	 * @param masterOrigin master position of the first entry
+	 * @param followerOrigin follower position added to all the entries
+	 */
+	public CamTable(long[] values, long period, long rise, long masterOrigin, long followerOrigin) {
+		if ((values.length == 0) || (period <= 0)) {
+			throw new IllegalArgumentException("empty table or period " + period);
+		}
+		size = values.length;
+		table = new long[size + 1];
+		System.arraycopy(values, 0, table, 0, size);
+		table[size] = values[0] + rise;		// the start of the next period
+		this.period = period;
+		this.rise = rise;
+		this.masterOrigin = masterOrigin;
+		this.followerOrigin = followerOrigin;
+		double max = 0.0;
+		for (int i = 0; i < size; i++) {
+			max = Math.max(max, Math.abs(table[i + 1] - table[i]));
+		}
+		maxSlope = max * size / period;
+	}
+
+	/**
+	 * Get a table for a rosette: the follower moves amplitude*(1 - cos(lobes*angle))/2,
+	 * so it starts at followerOrigin (no jump when it is started) and has the given number of lobes per rotation.
+	 * Tables are cached (for the same lobes, amplitude, size and period),
+	 * only the origins are new.
+	 * @param lobes number of lobes per rotation
+	 * @param amplitude follower steps from the smallest to the largest
+	 * @param size number of table entries
+	 * @param period master steps per rotation
+	 * @param masterOrigin master position of angle 0
+	 * @param followerOrigin follower position at angle 0
+	 * @return CamTable
+	 */
+	public static CamTable rosette(int lobes, long amplitude, int size, long period, long masterOrigin, long followerOrigin) {
+		String key = lobes + ":" + amplitude + ":" + size + ":" + period;
+		CamTable base = CACHE.get(key);
+		if (base == null) {
+			long[] values = new long[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = Math.round(amplitude * (1.0 - Math.cos(2.0 * Math.PI * lobes * i / size)) / 2.0);
+			}
+			base = new CamTable(values, period, 0L, 0L, 0L);
+			CACHE.put(key, base);
+		}
+		return new CamTable(base, masterOrigin, followerOrigin);
+	}
+
+	/**
+	 * Make a copy with different origins (sharing the table).
+	 */
+	private CamTable(CamTable base, long masterOrigin, long followerOrigin) {
+		this.table = base.table;
+		this.size = base.size;
+		this.period = base.period;
+		this.rise = base.rise;
+		this.maxSlope = base.maxSlope;
+		this.masterOrigin = masterOrigin;
+		this.followerOrigin = followerOrigin;
+	}
+
+	@Override
+	public long getTarget(long master) {
+		long m = master - masterOrigin;
+		long rev = Math.floorDiv(m, period);
+		long pos = (m - rev * period) * size;		// position in the table times period
+		int i = (int) (pos / period);
+		long frac = pos - i * period;				// 0 to period-1
+		long v = table[i] + StepMath.roundDiv((table[i + 1] - table[i]) * frac, period);
+		return followerOrigin + rev * rise + v;
+	}
+
+	@Override
+	public double getMaxSlope() {
+		return maxSlope;
+	}
+
+	/**
+	 * Get the number of entries in one period.
+	 * @return size of the table
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "CamTable " + size + " entries, period " + period + ", rise " + rise;
+	}
+}
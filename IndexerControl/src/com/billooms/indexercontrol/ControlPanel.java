@@ -2,21 +2,32 @@
 package com.billooms.indexercontrol;
 
 import com.billooms.indexerprefs.api.Preferences;
+import com.billooms.indexwheel.api.IndexCursor;
 import com.billooms.indexwheel.api.IndexWheel;
 import com.billooms.indexwheel.api.IndexWheelMgr;
-import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.Latencies;
+import com.billooms.stepperboard.api.LatencyHistogram;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.StepperListener;
+import java.awt.EventQueue;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.Collection;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JToggleButton;
 import org.openide.DialogDescriptor;
 import org.openide.DialogDisplayer;
 import org.openide.NotifyDescriptor;
+import org.openide.awt.StatusDisplayer;
 import org.openide.util.Lookup;
 import org.openide.util.LookupEvent;
 import org.openide.util.LookupListener;
+import org.openide.util.NbBundle;
 
 /**
  * Control panel for controlling the stepper motor
@@ -35,7 +46,7 @@ import org.openide.util.LookupListener;
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-public class ControlPanel extends JPanel implements PropertyChangeListener, LookupListener {
+public class ControlPanel extends JPanel implements PropertyChangeListener, StepperListener, LookupListener {
 	
 	private final static double BIG_ROTATE = 10 * 360.0;	// for manual control
 	private final static double MAX_RPM = 10.0;				// max rpm (unless limited by hardware to a smaller value)
@@ -44,19 +55,30 @@ public class ControlPanel extends JPanel implements PropertyChangeListener, Look
 	private RotationStage cStage;
 	private double rpm;					// speed set by the slider
 	private IndexWheel selected = null;		// currenly selected IndexWheel
+	private IndexCursor cursor = null;		// filled holes of the selected IndexWheel
 	private IndexWheelMgr idxMgr = Lookup.getDefault().lookup(IndexWheelMgr.class);	// IndexWheel manager
 	
-	private static SoundClip ding = null;	// sound for going past zero
+	private static volatile SoundClip ding = null;	// sound for going past zero (loaded at startup)
 	private static double lastPos = 0.0;	// save last position (modulo 360.0)
 	
+	private final LatencyHistogram positionTime = Latencies.get("ui.position");	// board event to display updated
+	private final AtomicBoolean positionPending = new AtomicBoolean(false);	// showPosition is waiting on the EDT
+	private volatile long positionEvent;	// time of the first position event that isn't shown yet
+	private final Runnable showPosition = new Runnable() {	// shows the latest position (on the EDT)
+		@Override
+		public void run() {
+			positionPending.set(false);
+			updatePosition();
+			positionTime.recordSince(positionEvent);
+		}
+	};
+	private final LatencyHistogram stopTime = Latencies.get("ui.stop");			// move finished to button released
+	
 	/** Creates new ControlPanel */
 	public ControlPanel(RotationStage stage) {
 		this.cStage = stage;
 //		this.rpm = cStage.getMaxRPM();		// this always gives 0.0 -- do it on engage instead
 		stepsPerRotation = Lookup.getDefault().lookup(Preferences.class).getStepsPerRotation();
-		if (ding == null) {
-			ding = new SoundClip("Ding.wav");
-		}
 		
 		initComponents();
 		
@@ -68,25 +90,64 @@ public class ControlPanel extends JPanel implements PropertyChangeListener, Look
 		updatePosition();		// show the actual value from the stage
 	}
 	
+	/**
+	 * Load the sound for going past zero.
+	 * This is called by Startup on a background thread, so that opening the window doesn't wait for it.
+	 */
+	static synchronized void loadSound() {
+		if (ding == null) {
+			ding = new SoundClip("Ding.wav");
+		}
+	}
+	
+	/**
+	 * Listen to the StepperBoard for POSITION changes.
+	 * The display is updated on the EDT. Events that come while an update is waiting
+	 * are merged into it (it shows the latest position), and the time from the first
+	 * of them until the display is updated is recorded in "ui.position".
+	 * @param s Stepper
+	 * @param position new position
+	 * @param nanoTime time of the position
+	 */
+	@Override
+	public void onPosition(Stepper s, long position, long nanoTime) {
+		if (positionPending.compareAndSet(false, true)) {
+			positionEvent = nanoTime;
+			EventQueue.invokeLater(showPosition);	// update the position on the display
+		}
+	}
+
+	/**
+	 * Listen to the StepperBoard for ALL_STOPPED.
+	 * The display is updated on the EDT, merged with any position update that is waiting.
+	 */
+	@Override
+	public void onAllStopped() {
+		if (positionPending.compareAndSet(false, true)) {
+			positionEvent = System.nanoTime();
+			EventQueue.invokeLater(showPosition);	// update the position on the display
+		}
+	}
+
+	@Override
+	public void onStopped(Stepper s, boolean stopped) {
+	}
+
+	@Override
+	public void onVelocity(Stepper s, double velocity) {
+	}
+
+	@Override
+	public void onCurrent(Stepper s, double current) {
+	}
+	
     /**
-     * Listen to the StepperBoard for ALL_STOPPED and for POSITION changes, 
-     * and listen to the IndexWheelMgr for PROP_READXML.
+     * Listen to the IndexWheelMgr for PROP_READXML.
      * @param evt 
      */
 	@Override
 	public void propertyChange(PropertyChangeEvent evt) {
-		if (evt.getSource() instanceof StepperBoard) {
-			switch(StepperBoard.Props.valueOf(evt.getPropertyName())) {
-				case ALL_STOPPED:						// listen for ALL_STOPPED
-					nextButton.setSelected(false);		// deselect the buttons
-					goZeroButton.setSelected(false);
-					updatePosition();					// update the position on the display
-					break;
-				case POSITION:							// listen for POSITION changes
-					updatePosition();					// update the position on the display
-					break;
-			}
-		} else if (evt.getSource() instanceof IndexWheelMgr) {
+		if (evt.getSource() instanceof IndexWheelMgr) {
 			if (evt.getPropertyName().equals(IndexWheelMgr.PROP_READXML)) {
 				selected = idxMgr.get(0);		// after reading select the first one
 				wheelField.setText(selected.getName());
@@ -139,6 +200,89 @@ public class ControlPanel extends JPanel implements PropertyChangeListener, Look
 		goNext(null);
 	}
 	
+	/**
+	 * Rotate the spindle to the previous index point.
+	 * This can be called from some external source. 
+	 * The GoToNext button on the panel is selected (to show the status).
+	 */
+	public void goPrevious() {
+		if (!someWheelSelected()) {
+			return;
+		}
+		nextButton.setSelected(true);
+		if (engageButton.isSelected()) {
+			goToIndex(cursorAt(cStage.getPositionSteps()).previous());
+		} else {	// this is for playing with the software when no motors connected
+			showIndex(cursorAt(RotationStage.degreeToStep(selected.getRotation())).previous());
+		}
+	}
+	
+	/**
+	 * Rotate the spindle forward to the given filled hole of the selected IndexWheel.
+	 * This can be called from some external source. 
+	 * The GoToNext button on the panel is selected (to show the status).
+	 * @param hole hole number
+	 */
+	public void goToHole(int hole) {
+		if (!someWheelSelected()) {
+			return;
+		}
+		if ((hole < 0) || (hole >= selected.getNumHoles()) || !selected.isFilled(hole)) {
+			StatusDisplayer.getDefault().setStatusText(NbBundle.getMessage(ControlPanel.class, 
+					"MSG_HoleNotFilled", Integer.toString(hole), selected.getName()));
+			return;
+		}
+		nextButton.setSelected(true);
+		if (engageButton.isSelected()) {
+			goToIndex(cursorAt(cStage.getPositionSteps()).seek(hole));
+		} else {	// this is for playing with the software when no motors connected
+			showIndex(cursorAt(RotationStage.degreeToStep(selected.getRotation())).seek(hole));
+		}
+	}
+	
+	/**
+	 * Get the cursor of the selected IndexWheel at the given position
+	 * (a new one if the wheel or resolution changed).
+	 * @param steps position in micro-steps
+	 * @return IndexCursor
+	 */
+	private IndexCursor cursorAt(long steps) {
+		if ((cursor == null) || (cursor.getWheel() != selected) || (cursor.getResolution() != stepsPerRotation)) {
+			cursor = selected.getCursor(steps, stepsPerRotation);
+		} else {
+			cursor.sync(steps);		// nothing to do unless the spindle was moved some other way
+		}
+		return cursor;
+	}
+	
+	/**
+	 * Move the spindle to an index position (see RotationStage.moveToIndex).
+	 * The cursor is moved to the chosen target, so the next step starts from there.
+	 * The GoToNext button is deselected when the move is finished.
+	 * @param steps position of the index in micro-steps
+	 */
+	private void goToIndex(long steps) {
+		long target = cStage.chooseTarget(steps);			// the same angle, but maybe the other way
+		cursor.sync(target);
+		long from = cStage.getPositionSteps();
+		cStage.moveToIndex(target, cStage.rpmToVelocity(rpm)).whenComplete(deselectWhenDone(nextButton));
+		if ((ding != null) && (Math.floorDiv(target, (long) stepsPerRotation) != Math.floorDiv(from, (long) stepsPerRotation))) {
+			ding.play();		// sound when going past zero
+		}
+	}
+	
+	/**
+	 * Show an index position when no motors are connected.
+	 * @param steps position of the index in micro-steps
+	 */
+	private void showIndex(long steps) {
+		double rot = RotationStage.stepToDegree(steps);
+		selected.setRotation(rot);
+		rotateField.setValue(rot);
+		lastPos = rot;
+		nextButton.setSelected(false);
+	}
+	
 	/**
 	 * Update the display with the current position
 	 */
@@ -151,6 +295,37 @@ public class ControlPanel extends JPanel implements PropertyChangeListener, Look
 		}
 	}
 	
+	/**
+	 * Make an action that deselects the given button when a move is finished
+	 * (or has failed, in which case the reason is shown in the status line).
+	 * @param button button to deselect
+	 * @return action for the move's future
+	 */
+	private BiConsumer<MoveResult, Throwable> deselectWhenDone(final JToggleButton button) {
+		return new BiConsumer<MoveResult, Throwable>() {
+			@Override
+			public void accept(MoveResult result, Throwable ex) {
+				final long stopped = System.nanoTime();
+				if (ex instanceof CompletionException) {
+					ex = ex.getCause();
+				}
+				if (ex instanceof MoveFailedException) {
+					MoveFailedException mf = (MoveFailedException) ex;
+					StatusDisplayer.getDefault().setStatusText(NbBundle.getMessage(ControlPanel.class, 
+							"MSG_MoveFailed_" + mf.getReason(), mf.getTarget(), mf.getPosition()), 
+							StatusDisplayer.IMPORTANCE_ERROR_HIGHLIGHT);
+				}
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						button.setSelected(false);
+						stopTime.recordSince(stopped);
+					}
+				});
+			}
+		};
+	}
+	
 	/**
 	 * Check to see if some IndexWheel was selected. 
 	 * If not, use the first IndexWheel from the IndexWheelMgr.
@@ -407,13 +582,12 @@ public class ControlPanel extends JPanel implements PropertyChangeListener, Look
 		
 		if (engageButton.isSelected()) {
 			if (goZeroButton.isSelected()) {
-				if (cStage.getPosition() == 0.0) {
+				if (cStage.getAngleSteps() == 0) {
 					goZeroButton.setSelected(false);	// it's at zero already
 				} else {
-					cStage.wrapAroundCheck();
-//					cStage.goToAtMax(0.0);
-					cStage.goToAtRPM(0.0, rpm);
-					selected.setRotation(0.0);
+					long zero = cStage.chooseTarget(cStage.getNearestZero());	// no more than half a rotation away
+					cStage.moveToIndex(zero, cStage.rpmToVelocity(rpm)).whenComplete(deselectWhenDone(goZeroButton));
+					selected.setRotation(RotationStage.stepToDegree(zero));
 				}
 			} else {
 				cStage.stop();
@@ -435,21 +609,13 @@ public class ControlPanel extends JPanel implements PropertyChangeListener, Look
 		
 		if (engageButton.isSelected()) {
 			if (nextButton.isSelected()) {
-				double rot = selected.getRotationOfNext(stepsPerRotation);
-				cStage.goToAtRPM(rot, rpm);
-				if (((long)rot % 360) < ((long)lastPos % 360)) {	// sound when going past zero
-					ding.play();
-				}
+				goToIndex(cursorAt(cStage.getPositionSteps()).next());	// exact, no round-off
 			} else {
 				cStage.stop();
 				selected.setRotation(cStage.getPosition());
 			}
 		} else {	// this is for playing with the software when no motors connected
-			double rot = selected.getRotationOfNext(stepsPerRotation);
-			selected.setRotation(rot);
-			rotateField.setValue(rot);
-			lastPos = rot;
-			nextButton.setSelected(false);
+			showIndex(cursorAt(RotationStage.degreeToStep(selected.getRotation())).next());
 		}
 }//GEN-LAST:event_goNext
 
@@ -7,11 +7,15 @@ import com.billooms.indexwheel.api.IndexWheelMgr;
 import com.billooms.stepperboard.api.StepperBoard;
 import com.billooms.stepperboard.api.StepperBoard.Stepper;
 import java.awt.BorderLayout;
+import java.awt.EventQueue;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import org.openide.util.NbBundle;
 import org.openide.windows.TopComponent;
 import org.netbeans.api.settings.ConvertAsProperties;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
+import org.openide.awt.StatusDisplayer;
 import org.openide.util.Lookup;
 import org.openide.util.Utilities;
 import org.openide.util.lookup.Lookups;
@@ -52,18 +56,46 @@ public final class ControlTopComponent extends TopComponent {
 	private StepperBoard stepBoard = null;
 	private IndexWheelMgr idxMgr = null;
 	private Preferences prefs = null;
+	private StepVerifier verifier = null;
+	
+	/** Shows "connecting" in the name until the board is attached */
+	private final PropertyChangeListener attachListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent evt) {
+			if (evt.getPropertyName().equals(StepperBoard.Props.ATTACH.toString()) ||
+					evt.getPropertyName().equals(StepperBoard.Props.DETACH.toString())) {
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						updateName();
+					}
+				});
+			}
+		}
+	};
+	
+	/** Shows problems found by the StepVerifier in the status line */
+	private final PropertyChangeListener verifierListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent evt) {
+			StatusDisplayer.getDefault().setStatusText(
+					NbBundle.getMessage(ControlTopComponent.class, "MSG_StepVerifier_" + evt.getPropertyName(),
+					evt.getOldValue(), evt.getNewValue()), StatusDisplayer.IMPORTANCE_ERROR_HIGHLIGHT);
+		}
+	};
 	
     /**
      * Create a new window for controlling the stepper motor.
      */
 	public ControlTopComponent() {
 		initComponents();
-		setName(NbBundle.getMessage(ControlTopComponent.class, "CTL_ControlTopComponent"));
+		setName(NbBundle.getMessage(ControlTopComponent.class, "CTL_ControlTopComponent_connecting"));
 		setToolTipText(NbBundle.getMessage(ControlTopComponent.class, "HINT_ControlTopComponent"));
 		putClientProperty(TopComponent.PROP_CLOSING_DISABLED, Boolean.TRUE);
 		putClientProperty(TopComponent.PROP_UNDOCKING_DISABLED, Boolean.TRUE);
 
-		cStage = new RotationStage(Stepper.values()[Lookup.getDefault().lookup(Preferences.class).getWiredTo()]);
+		cStage = new RotationStage(Startup.getBoard(),		// waits for Startup to create the board
+				Stepper.values()[Lookup.getDefault().lookup(Preferences.class).getWiredTo()]);
 		
 		panel = new ControlPanel(cStage);
 		this.add(panel, BorderLayout.CENTER);
@@ -87,8 +119,13 @@ public final class ControlTopComponent extends TopComponent {
 	@Override
 	public void componentOpened() {
 		// TODO add custom code on component opening
-		stepBoard = Lookup.getDefault().lookup(StepperBoard.class);
-		stepBoard.addPropertyChangeListener(panel);				// panel listens to the StepperBoard
+		stepBoard = cStage.getBoard();
+		stepBoard.addStepperListener(panel);				// panel listens to the stage's StepperBoard
+		stepBoard.addPropertyChangeListener(attachListener);	// name shows "connecting" until attached
+		updateName();
+		verifier = new StepVerifier(cStage);				// checks that the stepper follows its moves
+		verifier.addPropertyChangeListener(verifierListener);
+		verifier.start();
 		idxMgr = Lookup.getDefault().lookup(IndexWheelMgr.class);
 		idxMgr.addPropertyChangeListener(panel);				// panel listens for READXML
 		prefs = Lookup.getDefault().lookup(Preferences.class);
@@ -100,8 +137,12 @@ public final class ControlTopComponent extends TopComponent {
 	@Override
 	public void componentClosed() {
 		// TODO add custom code on component closing
-		stepBoard.removePropertyChangeListener(panel);		// quit listening when window closes
+		stepBoard.removeStepperListener(panel);		// quit listening when window closes
+		stepBoard.removePropertyChangeListener(attachListener);
 		stepBoard = null;
+		verifier.stop();
+		verifier.removePropertyChangeListener(verifierListener);
+		verifier = null;
 		idxMgr.removePropertyChangeListener(panel);
 		idxMgr = null;
 		prefs.removePropertyChangeListener(cStage);
@@ -110,6 +151,17 @@ public final class ControlTopComponent extends TopComponent {
         result = null;
 	}
 
+	/**
+	 * Show in the name whether the board is attached yet.
+	 */
+	private void updateName() {
+		if ((stepBoard != null) && stepBoard.isAttached()) {
+			setName(NbBundle.getMessage(ControlTopComponent.class, "CTL_ControlTopComponent"));
+		} else {
+			setName(NbBundle.getMessage(ControlTopComponent.class, "CTL_ControlTopComponent_connecting"));
+		}
+	}
+
 	void writeProperties(java.util.Properties p) {
 		// better to version settings since initial version as advocated at
 		// http://wiki.apidesign.org/wiki/PropertyFiles
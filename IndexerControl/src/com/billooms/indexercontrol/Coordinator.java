@@ -0,0 +1,207 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.stepperboard.api.StepperAdapter;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+
+/**
+ * Slaves a follower stage to a master stage (usually the spindle) through an AxisLink:
+ * a GearLink for a fixed ratio (helical or spiral fluting), or a CamTable (rosettes).
+ * Every position change of the master gives a new follower target from the link,
+ * and the target is sent to the board only when it changes.
+ * Every velocity change of the master sets the follower's velocity limit
+ * to the master's velocity times the link's largest slope (with some HEADROOM),
+ * so the follower can keep up without running ahead.
+ * Nothing is allocated per update, so the follower can be fed as fast as the board reports.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Coordinator {
+
+	/** Factor applied to the follower velocity needed to keep up */
+	public final static double HEADROOM = 1.25;
+	private final static double VEL_CHANGE = 0.1;	// smallest relative change of the follower velocity limit that is sent
+
+	private final Stage master;
+	private final Stage follower;
+	private volatile AxisLink link;
+	private final FollowListener listener = new FollowListener();
+	private volatile boolean running = false;
+	private long lastTarget;			// last target sent to the follower
+	private double lastVel = 0.0;		// last velocity limit sent to the follower
+	private long updates = 0;			// targets sent to the follower
+	private long skipped = 0;			// master positions that didn't change the follower target
+
+	/**
+	 * Create a coordinator (it does nothing until it is started).
+	 * @param master stage that leads
+	 * @param follower stage that follows (a different stepper than the master)
+	 * @param link how the follower moves with the master
+	 */
+	public Coordinator(Stage master, Stage follower, AxisLink link) {
+		if ((master.getBoard() == follower.getBoard()) && (master.getStepper() == follower.getStepper())) {
+			throw new IllegalArgumentException("A stage can't follow itself: " + master.getStepper());
+		}
+		this.master = master;
+		this.follower = follower;
+		this.link = link;
+	}
+
+	/**
+	 * Get the master stage.
+	 * @return Stage
+	 */
+	public Stage getMaster() {
+		return master;
+	}
+
+	/**
+	 * Get the follower stage.
+	 * @return Stage
+	 */
+	public Stage getFollower() {
+		return follower;
+	}
+
+	/**
+	 * Get the link between the master and the follower.
+	 * @return AxisLink
+	 */
+	public AxisLink getLink() {
+		return link;
+	}
+
+	/**
+	 * Change the link (the follower goes to its new target at once, so
+	 * the new link should start near the follower's position).
+	 * @param link how the follower moves with the master
+	 */
+	public void setLink(AxisLink link) {
+		this.link = link;
+		if (running) {
+			update(master.getPositionSteps());
+		}
+	}
+
+	/**
+	 * Check if the follower is following the master.
+	 * @return true = started
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Start following the master.
+	 * The follower goes to the target for the master's present position
+	 * (fast enough to keep up with the master's velocity limit), then follows.
+	 */
+	public void start() {
+		if (running) {
+			return;
+		}
+		synchronized (this) {
+			lastVel = 0.0;
+			updates = 0;
+			skipped = 0;
+			lastTarget = follower.getPositionSteps();
+		}
+		running = true;
+		master.getBoard().addControlListener(listener);
+		updateVelocity(master.getVelocityLimit());
+		update(master.getPositionSteps());
+	}
+
+	/**
+	 * Stop following the master (the follower finishes going to its last target).
+	 */
+	public void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		master.getBoard().removeControlListener(listener);
+	}
+
+	/**
+	 * Get the number of targets sent to the follower since it was started.
+	 * @return number of updates
+	 */
+	public synchronized long getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Get the number of master positions that didn't change the follower's target.
+	 * @return number of skipped updates
+	 */
+	public synchronized long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Send the follower target for a master position (if it changed).
+	 * @param masterSteps unwrapped master position in steps
+	 */
+	private void update(long masterSteps) {
+		long target = link.getTarget(masterSteps);
+		synchronized (this) {
+			if (target == lastTarget) {
+				skipped++;
+				return;
+			}
+			lastTarget = target;
+			updates++;
+		}
+		follower.setTargetSteps(target);
+	}
+
+	/**
+	 * Set the follower's velocity limit for a master velocity
+	 * (only if it changed by more than VEL_CHANGE, to save board traffic).
+	 * @param masterVel master velocity in steps/second
+	 */
+	private void updateVelocity(double masterVel) {
+		double vel = Math.abs(masterVel) * link.getMaxSlope() * HEADROOM;
+		vel = Math.max(follower.getMinVelocity(), Math.min(follower.getMaxVelocity(), vel));
+		synchronized (this) {
+			if (Math.abs(vel - lastVel) <= VEL_CHANGE * lastVel) {
+				return;
+			}
+			lastVel = vel;
+		}
+		follower.setVelocityLimit(vel);
+	}
+
+	/**
+	 * Follows the master's position and velocity (on the board's event thread).
+	 * It is a control listener, so it gets every position, not just the display rate.
+	 */
+	private class FollowListener extends StepperAdapter {
+
+		@Override
+		public void onPosition(Stepper s, long position, long nanoTime) {
+			if (running && (s == master.getStepper())) {
+				update(master.getTracker().toUnwrapped(position));
+			}
+		}
+
+		@Override
+		public void onVelocity(Stepper s, double velocity) {
+			if (running && (s == master.getStepper())) {
+				updateVelocity(velocity);
+			}
+		}
+	}
+}
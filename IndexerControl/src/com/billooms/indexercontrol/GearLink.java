@@ -0,0 +1,77 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.indexwheel.api.StepMath;
+
+/**
+ * Links a follower to a master with a fixed ratio (electronic gearing),
+ * for example a carriage that advances with the spindle for helical or spiral fluting.
+ * The ratio is a fraction of integers and the target is computed with integer arithmetic
+ * (rounded like StepMath.roundDiv), so there is no error that adds up over many rotations.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class GearLink implements AxisLink {
+
+	private final long numerator;
+	private final long denominator;
+	private final long masterOrigin;
+	private final long followerOrigin;
+
+	/**
+	 * Create a gear link.
+	 * The follower is at followerOrigin when the master is at masterOrigin, and moves
+	 * numerator steps for each denominator steps of the master.
+	 * @param numerator follower steps (can be negative to go the other way)
+	 * @param denominator master steps (more than 0)
+	 * @param masterOrigin master position in steps
+	 * @param followerOrigin follower position in steps
+	 */
+	public GearLink(long numerator, long denominator, long masterOrigin, long followerOrigin) {
+		if (denominator <= 0) {
+			throw new IllegalArgumentException("denominator must be more than 0: " + denominator);
+		}
+		this.numerator = numerator;
+		this.denominator = denominator;
+		this.masterOrigin = masterOrigin;
+		this.followerOrigin = followerOrigin;
+	}
+
+	/**
+	 * Create a gear link for a lead: the follower moves a given distance per rotation of the spindle.
+	 * @param lead follower steps per rotation of the master
+	 * @param stepsPerRotation master steps per rotation
+	 * @param masterOrigin master position in steps
+	 * @param followerOrigin follower position in steps
+	 * @return GearLink
+	 */
+	public static GearLink lead(long lead, long stepsPerRotation, long masterOrigin, long followerOrigin) {
+		return new GearLink(lead, stepsPerRotation, masterOrigin, followerOrigin);
+	}
+
+	@Override
+	public long getTarget(long master) {
+		return followerOrigin + StepMath.roundDiv((master - masterOrigin) * numerator, denominator);
+	}
+
+	@Override
+	public double getMaxSlope() {
+		return Math.abs((double) numerator / denominator);
+	}
+
+	@Override
+	public String toString() {
+		return "GearLink " + numerator + "/" + denominator;
+	}
+}
@@ -0,0 +1,44 @@
+
+package com.billooms.indexercontrol;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import org.openide.awt.ActionRegistration;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionID;
+import org.openide.util.NbBundle.Messages;
+import org.openide.windows.WindowManager;
+
+/**
+ * Action to move the spindle to the previous index point. 
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+@ActionID(category = "Edit",
+id = "com.billooms.indexercontrol.GoPrevious")
+@ActionRegistration(displayName = "#CTL_GoPrevious")
+@ActionReferences({
+	@ActionReference(path = "Menu/Control", position = 3443),
+	@ActionReference(path = "Shortcuts", name = "D-B")
+})
+@Messages("CTL_GoPrevious=Go To Previous")
+public final class GoPrevious implements ActionListener {
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		WindowManager.getDefault().findTopComponent("ControlTopComponent").getLookup().lookup(ControlPanel.class).goPrevious();
+	}
+}
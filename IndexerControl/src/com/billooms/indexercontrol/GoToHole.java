@@ -0,0 +1,65 @@
+package com.billooms.indexercontrol;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import org.openide.DialogDisplayer;
+import org.openide.NotifyDescriptor;
+import org.openide.awt.ActionRegistration;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionID;
+import org.openide.awt.StatusDisplayer;
+import org.openide.util.NbBundle;
+import org.openide.util.NbBundle.Messages;
+import org.openide.windows.WindowManager;
+
+/**
+ * Action to move the spindle to a given filled hole of the selected IndexWheel. 
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+@ActionID(category = "Edit",
+id = "com.billooms.indexercontrol.GoToHole")
+@ActionRegistration(displayName = "#CTL_GoToHole")
+@ActionReferences({
+	@ActionReference(path = "Menu/Control", position = 3453),
+	@ActionReference(path = "Shortcuts", name = "D-G")
+})
+@Messages({
+	"CTL_GoToHole=Go To Hole...",
+	"LBL_GoToHole=Hole number:",
+	"MSG_GoToHole_bad=Not a hole number: {0}"
+})
+public final class GoToHole implements ActionListener {
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		NotifyDescriptor.InputLine d = new NotifyDescriptor.InputLine(
+				NbBundle.getMessage(GoToHole.class, "LBL_GoToHole"),
+				NbBundle.getMessage(GoToHole.class, "CTL_GoToHole"));
+		if (DialogDisplayer.getDefault().notify(d) != NotifyDescriptor.OK_OPTION) {
+			return;
+		}
+		String text = d.getInputText().trim();
+		int hole;
+		try {
+			hole = Integer.parseInt(text);
+		} catch (NumberFormatException ex) {
+			StatusDisplayer.getDefault().setStatusText(NbBundle.getMessage(GoToHole.class, "MSG_GoToHole_bad", text));
+			return;
+		}
+		WindowManager.getDefault().findTopComponent("ControlTopComponent").getLookup().lookup(ControlPanel.class).goToHole(hole);
+	}
+}
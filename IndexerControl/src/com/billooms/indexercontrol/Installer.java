@@ -1,23 +1,29 @@
 package com.billooms.indexercontrol;
 
+import com.billooms.stepperboard.api.Latencies;
 import org.openide.modules.ModuleInstall;
 import org.openide.windows.WindowManager;
 
 public class Installer extends ModuleInstall {
 
+	/**
+	 * Start the slow parts of startup on background threads, 
+	 * so that the windows can open right away.
+	 */
 	@Override
 	public void restored() {
-		// By default, do nothing.
-		// Put your startup code here.
+		Startup.begin();
 	}
 
 	/**
 	 * Before closing, make sure all hardware is shutdown.
+	 * The latency histograms are printed after the shutdown.
 	 * @return true=OK to exit, false=don't exit
 	 */
 	@Override
 	public boolean closing() {
 		WindowManager.getDefault().findTopComponent("ControlTopComponent").getLookup().lookup(RotationStage.class).shutDown();
+		Latencies.dump(System.out);
 		return true;
 	}
 }
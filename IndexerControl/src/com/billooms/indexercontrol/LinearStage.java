@@ -0,0 +1,101 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This controls a stepper motor moving a linear stage (for example a carriage or cross slide).
+ * A linear stage doesn't wrap around, so its position is never rebased.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class LinearStage extends Stage {
+
+	private final double stepsPerUnit;
+
+    /**
+     * This controls a stepper motor on a linear stage of the default board
+	 * @param s Stepper
+	 * @param stepsPerUnit steps per unit of travel (for example per inch or mm)
+     */
+	public LinearStage(Stepper s, double stepsPerUnit) {
+		super(s);
+		this.stepsPerUnit = checkScale(stepsPerUnit);
+	}
+
+    /**
+     * This controls a stepper motor on a linear stage of the given board
+	 * (for example a SimulatedStepperBoard when there is no hardware).
+	 * @param board StepperBoard
+	 * @param s Stepper
+	 * @param stepsPerUnit steps per unit of travel (for example per inch or mm)
+     */
+	public LinearStage(StepperBoard board, Stepper s, double stepsPerUnit) {
+		super(board, s);
+		this.stepsPerUnit = checkScale(stepsPerUnit);
+	}
+
+	private static double checkScale(double stepsPerUnit) {
+		if (!(stepsPerUnit > 0.0)) {
+			throw new IllegalArgumentException("stepsPerUnit must be more than 0: " + stepsPerUnit);
+		}
+		return stepsPerUnit;
+	}
+
+	/**
+	 * Get the scale of this stage.
+	 * @return steps per unit of travel
+	 */
+	public double getStepsPerUnit() {
+		return stepsPerUnit;
+	}
+
+	/**
+	 * Convert a distance to steps (rounded to the nearest step).
+	 * @param units distance in units
+	 * @return steps
+	 */
+	public long unitToStep(double units) {
+		return Math.round(units * stepsPerUnit);
+	}
+
+	/**
+	 * Convert steps to a distance.
+	 * @param steps steps
+	 * @return distance in units
+	 */
+	public double stepToUnit(long steps) {
+		return steps / stepsPerUnit;
+	}
+
+	/**
+	 * Get the position of the stage.
+	 * @return position in units from zero
+	 */
+	public double getPosition() {
+		return stepToUnit(getPositionSteps());
+	}
+
+	/**
+	 * Move to the given position at the given velocity.
+	 * @param units target position in units from zero
+	 * @param vel velocity limit in steps/second
+	 * @return future result of the move
+	 */
+	public CompletableFuture<MoveResult> moveToUnits(double units, double vel) {
+		return moveTo(unitToStep(units), vel);
+	}
+}
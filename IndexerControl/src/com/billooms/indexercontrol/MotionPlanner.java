@@ -0,0 +1,239 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.indexercontrol.RotationStage.DirectionPolicy;
+import com.billooms.indexwheel.api.IndexWheel;
+import com.billooms.indexwheel.api.StepMath;
+
+/**
+ * Plans moves the way the stepper board makes them, so that the time of a move
+ * (and of a whole IndexWheel) can be known before it is made.
+ * A TRAPEZOID profile has constant acceleration up to the velocity limit, 
+ * constant velocity, then constant deceleration (this is what the Phidget board does).
+ * An S_CURVE profile also limits the jerk, so that the acceleration ramps up and down.
+ * Short moves never reach the velocity limit (a triangle instead of a trapezoid).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MotionPlanner {
+
+	/** Shape of the velocity profile */
+	public static enum Shape {
+		/** Constant acceleration (the Phidget board) */
+		TRAPEZOID,
+		/** Limited jerk */
+		S_CURVE
+	}
+
+	/** Default time (sec) for an S_CURVE to reach full acceleration */
+	public final static double DEFAULT_JERK_TIME = 0.1;
+	private final static double[] NONE = new double[0];
+
+	private final double accel;		// steps/sec^2
+	private final double jerk;		// steps/sec^3
+	private final Shape shape;
+
+	/**
+	 * Create a planner for trapezoid moves.
+	 * @param accel acceleration in steps/sec^2
+	 */
+	public MotionPlanner(double accel) {
+		this(accel, accel / DEFAULT_JERK_TIME, Shape.TRAPEZOID);
+	}
+
+	/**
+	 * Create a planner.
+	 * @param accel acceleration in steps/sec^2
+	 * @param jerk jerk in steps/sec^3 (only used for S_CURVE)
+	 * @param shape TRAPEZOID or S_CURVE
+	 */
+	public MotionPlanner(double accel, double jerk, Shape shape) {
+		if ((accel <= 0.0) || (jerk <= 0.0)) {
+			throw new IllegalArgumentException("accel and jerk must be positive: " + accel + ", " + jerk);
+		}
+		this.accel = accel;
+		this.jerk = jerk;
+		this.shape = shape;
+	}
+
+	/**
+	 * Get the acceleration.
+	 * @return steps/sec^2
+	 */
+	public double getAccel() {
+		return accel;
+	}
+
+	/**
+	 * Get the jerk.
+	 * @return steps/sec^3
+	 */
+	public double getJerk() {
+		return jerk;
+	}
+
+	/**
+	 * Get the shape of the profiles.
+	 * @return TRAPEZOID or S_CURVE
+	 */
+	public Shape getShape() {
+		return shape;
+	}
+
+	/**
+	 * Plan a move.
+	 * @param from start position in steps
+	 * @param to end position in steps
+	 * @param vMax velocity limit in steps/sec
+	 * @return profile of the move
+	 */
+	public MoveProfile plan(long from, long to, double vMax) {
+		double d = Math.abs(to - from);
+		if ((d == 0.0) || (vMax <= 0.0)) {
+			return new MoveProfile(from, to, NONE, NONE, NONE, 0.0);
+		}
+		if (shape == Shape.TRAPEZOID) {
+			return planTrapezoid(from, to, d, vMax);
+		}
+		return planSCurve(from, to, d, vMax);
+	}
+
+	/**
+	 * Predict the time of a move.
+	 * @param from start position in steps
+	 * @param to end position in steps
+	 * @param vMax velocity limit in steps/sec
+	 * @return seconds
+	 */
+	public double predictTime(long from, long to, double vMax) {
+		return plan(from, to, vMax).getDuration();
+	}
+
+	/**
+	 * Predict the time to index through all the filled holes of a wheel once, 
+	 * moving to the next filled hole each time (as GoToNext does).
+	 * @param wheel IndexWheel
+	 * @param res resolution in steps per rotation of the spindle
+	 * @param fromDeg starting rotation in degrees
+	 * @param vMax velocity limit in steps/sec
+	 * @param dwell time at each hole in seconds (for the work done there)
+	 * @return seconds (0 if no holes are filled)
+	 */
+	public double predictJobTime(IndexWheel wheel, int res, double fromDeg, double vMax, double dwell) {
+		return predictJobTime(wheel, res, fromDeg, vMax, dwell, DirectionPolicy.FORWARD, 0L);
+	}
+
+	/**
+	 * Predict the time to index through all the filled holes of a wheel once 
+	 * with a direction policy (as RotationStage.moveToIndex does).
+	 * @param wheel IndexWheel
+	 * @param res resolution in steps per rotation of the spindle
+	 * @param fromDeg starting rotation in degrees
+	 * @param vMax velocity limit in steps/sec
+	 * @param dwell time at each hole in seconds (for the work done there)
+	 * @param policy direction policy
+	 * @param approach steps past the target for a backward move with SHORTEST_SINGLE_APPROACH
+	 * @return seconds (0 if no holes are filled)
+	 */
+	public double predictJobTime(IndexWheel wheel, int res, double fromDeg, double vMax, double dwell, 
+			DirectionPolicy policy, long approach) {
+		int nFilled = wheel.getNumFilled();
+		if ((nFilled <= 0) || (res <= 0)) {
+			return 0.0;
+		}
+		PositionTracker rotation = new PositionTracker(res);
+		long pos = StepMath.degreeToStep(fromDeg, res);
+		double total = 0.0;
+		for (int n = 0; n < nFilled; n++) {
+			long next = wheel.getStepOfNext(pos, res);		// the same targets as GoToNext
+			if (policy != DirectionPolicy.FORWARD) {
+				next = rotation.getNearest(pos, rotation.getAngle(next));
+			}
+			if ((policy == DirectionPolicy.SHORTEST_SINGLE_APPROACH) && (next < pos)) {
+				total += predictTime(pos, next - approach, vMax) + predictTime(next - approach, next, vMax);
+			} else {
+				total += predictTime(pos, next, vMax);
+			}
+			total += dwell;
+			pos = next;
+		}
+		return total;
+	}
+
+	/**
+	 * Plan a constant acceleration move.
+	 */
+	private MoveProfile planTrapezoid(long from, long to, double d, double vMax) {
+		if (d >= vMax*vMax/accel) {		// reaches vMax
+			double ta = vMax / accel;
+			double tc = (d - vMax*vMax/accel) / vMax;
+			return new MoveProfile(from, to, new double[] {ta, tc, ta}, 
+					new double[] {accel, 0.0, -accel}, new double[3], vMax);
+		}
+		double vp = Math.sqrt(d * accel);	// triangle
+		double ta = vp / accel;
+		return new MoveProfile(from, to, new double[] {ta, ta}, 
+				new double[] {accel, -accel}, new double[2], vp);
+	}
+
+	/**
+	 * Plan a jerk limited move.
+	 * Speeding up to v and slowing down again covers v * rampTime(v),
+	 * so the peak velocity of a short move is found by bisection.
+	 */
+	private MoveProfile planSCurve(long from, long to, double d, double vMax) {
+		double v = vMax;
+		double tc = d / vMax - rampTime(vMax);
+		if (tc < 0.0) {
+			tc = 0.0;
+			double lo = 0.0, hi = vMax;
+			for (int i = 0; i < 60; i++) {
+				v = (lo + hi) / 2.0;
+				if (v * rampTime(v) > d) {
+					hi = v;
+				} else {
+					lo = v;
+				}
+			}
+			v = lo;
+			tc = d / v - rampTime(v);		// covers what bisection leaves (tiny)
+		}
+		double tj, tconst, ap;
+		if (v * jerk >= accel * accel) {	// reaches full acceleration
+			tj = accel / jerk;
+			tconst = v / accel - accel / jerk;
+			ap = accel;
+		} else {
+			tj = Math.sqrt(v / jerk);
+			tconst = 0.0;
+			ap = jerk * tj;
+		}
+		return new MoveProfile(from, to, 
+				new double[] {tj, tconst, tj, tc, tj, tconst, tj},
+				new double[] {0.0, ap, ap, 0.0, 0.0, -ap, -ap},
+				new double[] {jerk, 0.0, -jerk, 0.0, -jerk, 0.0, jerk}, v);
+	}
+
+	/**
+	 * Time to speed up from rest to the given velocity (the same as to slow down).
+	 * @param v velocity in steps/sec
+	 * @return seconds
+	 */
+	private double rampTime(double v) {
+		if (v * jerk >= accel * accel) {
+			return v / accel + accel / jerk;
+		}
+		return 2.0 * Math.sqrt(v / jerk);
+	}
+}
@@ -0,0 +1,88 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+
+/**
+ * A move made with Stage.moveTo that the MoveWatchdog gave up on.
+ * The future of the move is completed exceptionally with this, and the stepper is stopped.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MoveFailedException extends Exception {
+
+	/** Why the move failed */
+	public static enum Reason {
+		/** The move took much longer than planned */
+		TIMEOUT,
+		/** The position stopped changing before the move was finished */
+		STALL,
+		/** The board was detached during the move */
+		DETACHED,
+		/** The target is too far from zero for the board, and the board can't be rebased while moving */
+		RANGE
+	}
+
+	private final Reason reason;
+	private final Stepper stepper;
+	private final long target;
+	private final long position;
+
+	/**
+	 * Create an exception for a failed move.
+	 * @param reason why the move failed
+	 * @param stepper Stepper that was moving
+	 * @param target target position in steps
+	 * @param position position in steps when the move failed
+	 */
+	public MoveFailedException(Reason reason, Stepper stepper, long target, long position) {
+		super("Move of " + stepper + " to " + target + " failed (" + reason + ") at " + position);
+		this.reason = reason;
+		this.stepper = stepper;
+		this.target = target;
+		this.position = position;
+	}
+
+	/**
+	 * Get the reason the move failed.
+	 * @return TIMEOUT, STALL, DETACHED or RANGE
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * Get the stepper that was moving.
+	 * @return Stepper
+	 */
+	public Stepper getStepper() {
+		return stepper;
+	}
+
+	/**
+	 * Get the target of the move.
+	 * @return target position in steps
+	 */
+	public long getTarget() {
+		return target;
+	}
+
+	/**
+	 * Get the position when the move failed.
+	 * @return position in steps
+	 */
+	public long getPosition() {
+		return position;
+	}
+}
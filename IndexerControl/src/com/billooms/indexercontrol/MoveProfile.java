@@ -0,0 +1,147 @@
+package com.billooms.indexercontrol;
+
+/**
+ * The planned motion of one move: a sequence of segments of constant jerk
+ * (for a trapezoid the jerk is always zero and the acceleration jumps between segments).
+ * The profile starts and ends at rest.
+ * Made by MotionPlanner; the position and velocity can be found at any time during the move
+ * (for example to show the spindle moving between position events).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MoveProfile {
+
+	private final long from;
+	private final long to;
+	private final double[] time;	// duration of each segment in seconds
+	private final double[] accel;	// acceleration at the start of each segment (steps/sec^2, always positive direction)
+	private final double[] jerk;	// jerk during each segment (steps/sec^3)
+	private final double duration;
+	private final double peakVelocity;
+
+	/**
+	 * Create a profile.
+	 * The segments are for a move in the positive direction, and are mirrored for a negative move.
+	 * @param from start position in steps
+	 * @param to end position in steps
+	 * @param time duration of each segment in seconds
+	 * @param accel acceleration at the start of each segment
+	 * @param jerk jerk during each segment
+	 * @param peakVelocity highest velocity in steps/second
+	 */
+	MoveProfile(long from, long to, double[] time, double[] accel, double[] jerk, double peakVelocity) {
+		this.from = from;
+		this.to = to;
+		this.time = time;
+		this.accel = accel;
+		this.jerk = jerk;
+		this.peakVelocity = peakVelocity;
+		double d = 0.0;
+		for (double t : time) {
+			d += t;
+		}
+		this.duration = d;
+	}
+
+	/**
+	 * Get the start position.
+	 * @return start position in steps
+	 */
+	public long getFrom() {
+		return from;
+	}
+
+	/**
+	 * Get the end position.
+	 * @return end position in steps
+	 */
+	public long getTo() {
+		return to;
+	}
+
+	/**
+	 * Get the length of the move.
+	 * @return number of steps (never negative)
+	 */
+	public long getDistance() {
+		return Math.abs(to - from);
+	}
+
+	/**
+	 * Get the predicted time of the move.
+	 * @return seconds from the start until arriving at the end
+	 */
+	public double getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Get the highest velocity of the move.
+	 * @return steps per second (never negative)
+	 */
+	public double getPeakVelocity() {
+		return peakVelocity;
+	}
+
+	/**
+	 * Get the planned position at a time during the move.
+	 * @param t seconds since the start (clipped to 0 and the duration)
+	 * @return position in steps (not rounded)
+	 */
+	public double getPosition(double t) {
+		if (t >= duration) {
+			return to;
+		}
+		double[] pv = integrate(t);
+		return (to >= from) ? (from + pv[0]) : (from - pv[0]);
+	}
+
+	/**
+	 * Get the planned velocity at a time during the move.
+	 * @param t seconds since the start
+	 * @return velocity in steps per second (negative for a negative move)
+	 */
+	public double getVelocity(double t) {
+		if ((t <= 0.0) || (t >= duration)) {
+			return 0.0;
+		}
+		double[] pv = integrate(t);
+		return (to >= from) ? pv[1] : -pv[1];
+	}
+
+	/**
+	 * Follow the segments up to a given time.
+	 * @param t seconds since the start
+	 * @return distance and velocity at that time
+	 */
+	private double[] integrate(double t) {
+		double p = 0.0, v = 0.0;
+		double rest = Math.max(t, 0.0);
+		for (int i = 0; (i < time.length) && (rest > 0.0); i++) {
+			double dt = Math.min(rest, time[i]);
+			double a = accel[i];
+			double j = jerk[i];
+			p += v*dt + a*dt*dt/2.0 + j*dt*dt*dt/6.0;
+			v += a*dt + j*dt*dt/2.0;
+			rest -= dt;
+		}
+		return new double[] {p, v};
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d to %d: %.3f sec, peak %.1f steps/sec", from, to, duration, peakVelocity);
+	}
+}
@@ -0,0 +1,94 @@
+package com.billooms.indexercontrol;
+
+/**
+ * The result of a move made with Stage.moveTo.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MoveResult {
+	
+	private final long target;
+	private final long position;
+	private final long elapsed;
+	private final boolean superseded;
+
+	/**
+	 * Create the result of a move.
+	 * @param target target position in steps
+	 * @param position final position in steps
+	 * @param elapsed time from the start of the move in nanoseconds
+	 * @param superseded true = the move was stopped or replaced by another move before it finished
+	 */
+	public MoveResult(long target, long position, long elapsed, boolean superseded) {
+		this.target = target;
+		this.position = position;
+		this.elapsed = elapsed;
+		this.superseded = superseded;
+	}
+
+	/**
+	 * Get the target of the move.
+	 * @return target position in steps
+	 */
+	public long getTarget() {
+		return target;
+	}
+
+	/**
+	 * Get the position at the end of the move.
+	 * @return final position in steps
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Get the time the move took.
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+
+	/**
+	 * Get the time the move took.
+	 * @return elapsed time in seconds
+	 */
+	public double getElapsedSeconds() {
+		return elapsed * 1.0E-9;
+	}
+
+	/**
+	 * Check if the move was stopped or replaced by another move before it finished.
+	 * @return true = superseded
+	 */
+	public boolean isSuperseded() {
+		return superseded;
+	}
+
+	/**
+	 * Check if the stepper ended up at the target.
+	 * @return true = at the target
+	 */
+	public boolean isAtTarget() {
+		return position == target;
+	}
+
+	@Override
+	public String toString() {
+		return "MoveResult target=" + target + " position=" + position 
+				+ " elapsed=" + getElapsedSeconds() + "s" + (superseded ? " superseded" : "");
+	}
+}
@@ -0,0 +1,203 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.indexercontrol.MoveFailedException.Reason;
+import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperSnapshot;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Watches the moves in progress so that a move can't wait forever.
+ * Each move made with Stage.moveTo gets a deadline from its planned time
+ * (TIME_FACTOR times the MotionPlanner's prediction plus SLACK), and is checked every CHECK_PERIOD.
+ * The move fails with a MoveFailedException if the deadline passes (TIMEOUT), if the position
+ * doesn't change for the stall time (STALL), or if the board is detached (DETACHED).
+ * The stepper is then stopped, and a PROP_TIMEOUT or PROP_STALL property change is fired
+ * with the MoveFailedException as the new value (DETACHED is a PROP_STALL).
+ *
+ * There is only one watchdog thread, whatever the number of steppers.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class MoveWatchdog {
+
+	/** Property name used when a move took too long */
+	public final static String PROP_TIMEOUT = "timeout";
+	/** Property name used when a move stalled (or the board was detached) */
+	public final static String PROP_STALL = "stall";
+
+	/** Factor applied to the planned time of a move */
+	public final static double TIME_FACTOR = 1.5;
+	/** Time added to the planned time of a move (msec) */
+	public final static long SLACK = 1000;
+	/** Shortest time without a change in position that is a stall (msec) */
+	public final static long STALL_TIME = 1000;
+	/** Time between checks of a move (msec) */
+	public final static long CHECK_PERIOD = 100;
+	private final static double STALL_STEPS = 3.0;	// a stall is at least this many steps at the velocity limit
+
+	private final static MoveWatchdog DEFAULT = new MoveWatchdog();
+
+	private final ScheduledThreadPoolExecutor scheduler;
+	private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+	private final AtomicInteger watched = new AtomicInteger();
+
+	/**
+	 * Get the watchdog (there is only one).
+	 * @return MoveWatchdog
+	 */
+	public static MoveWatchdog getDefault() {
+		return DEFAULT;
+	}
+
+	private MoveWatchdog() {
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "MoveWatchdog");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.setRemoveOnCancelPolicy(true);		// finished moves don't stay in the queue
+	}
+
+	/**
+	 * Watch a move until its future is completed.
+	 * @param stage Stage that is moving
+	 * @param move future of the move
+	 * @param profile planned move (board positions)
+	 * @param vel velocity limit of the move in steps/second
+	 */
+	void watch(Stage stage, CompletableFuture<MoveResult> move, MoveProfile profile, double vel) {
+		final Watch w = new Watch(stage, move, profile, vel);
+		watched.incrementAndGet();
+		w.handle = scheduler.scheduleWithFixedDelay(w, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+		move.whenComplete(new BiConsumer<MoveResult, Throwable>() {
+			@Override
+			public void accept(MoveResult r, Throwable ex) {
+				w.finish();
+			}
+		});
+	}
+
+	/**
+	 * Get the number of moves being watched.
+	 * @return number of moves in progress
+	 */
+	public int getWatched() {
+		return watched.get();
+	}
+
+	/**
+	 * Add the given PropertyChangeListener to this object.
+	 * @param listener
+	 */
+	public void addPropertyChangeListener(PropertyChangeListener listener) {
+		pcs.addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * Remove the given PropertyChangeListener from this object.
+	 * @param listener
+	 */
+	public void removePropertyChangeListener(PropertyChangeListener listener) {
+		pcs.removePropertyChangeListener(listener);
+	}
+
+	/**
+	 * Fail a move, stop the stepper, and tell the listeners.
+	 * @param w Watch of the move
+	 * @param reason why it failed
+	 * @param position position when it failed
+	 */
+	private void fail(Watch w, Reason reason, long position) {
+		PositionTracker t = w.stage.getTracker();
+		MoveFailedException ex = new MoveFailedException(reason, w.stage.getStepper(), 
+				t.toUnwrapped(w.profile.getTo()), t.toUnwrapped(position));
+		if (w.stage.failMove(w.move, ex)) {
+			System.out.println("MoveWatchdog: " + ex.getMessage());
+			pcs.firePropertyChange((reason == Reason.TIMEOUT) ? PROP_TIMEOUT : PROP_STALL, null, ex);
+		}
+	}
+
+	/**
+	 * Checks one move (on the watchdog thread).
+	 */
+	private class Watch implements Runnable {
+		final Stage stage;
+		final CompletableFuture<MoveResult> move;
+		final MoveProfile profile;
+		final long deadline;		// System.nanoTime() when the move times out
+		final long stallNanos;		// time without a change in position that is a stall
+		volatile ScheduledFuture<?> handle = null;
+		private boolean finished = false;
+		private long lastPosition;
+		private long lastChange;
+
+		Watch(Stage stage, CompletableFuture<MoveResult> move, MoveProfile profile, double vel) {
+			this.stage = stage;
+			this.move = move;
+			this.profile = profile;
+			long now = System.nanoTime();
+			deadline = now + (long) (profile.getDuration() * TIME_FACTOR * 1.0E9) + SLACK * 1000000L;
+			stallNanos = Math.max(STALL_TIME * 1000000L, (long) (STALL_STEPS / vel * 1.0E9));
+			lastPosition = profile.getFrom();
+			lastChange = now;
+		}
+
+		@Override
+		public void run() {
+			if (move.isDone()) {
+				finish();
+				return;
+			}
+			StepperBoard board = stage.getBoard();
+			StepperSnapshot snap = board.getSnapshot(stage.getStepper());
+			long now = System.nanoTime();
+			if (snap.getPosition() != lastPosition) {
+				lastPosition = snap.getPosition();
+				lastChange = now;
+			}
+			if (!board.isAttached()) {
+				fail(this, Reason.DETACHED, lastPosition);
+			} else if (now - deadline > 0) {
+				fail(this, Reason.TIMEOUT, lastPosition);
+			} else if (now - lastChange > stallNanos) {
+				fail(this, Reason.STALL, lastPosition);
+			}
+		}
+
+		/**
+		 * Stop checking this move.
+		 */
+		synchronized void finish() {
+			ScheduledFuture<?> h = handle;
+			if (finished || (h == null)) {
+				return;				// already finished, or not scheduled yet (run will finish it)
+			}
+			finished = true;
+			h.cancel(false);
+			watched.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.billooms.indexercontrol;
+
+/**
+ * Keeps the unwrapped 64-bit position of a stage.
+ * The unwrapped position is the board's position plus an offset, and the offset
+ * changes only by whole periods (rotations of a spindle), so the angle within a rotation
+ * never changes when the board's counter is moved back toward zero (rebased).
+ * The board is rebased only when a target is farther than REBASE_LIMIT from zero,
+ * so the board's int position can't overflow however long it runs,
+ * and there is no board traffic at all for the moves in between.
+ * A period of 0 means the stage doesn't wrap around (it is never rebased).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PositionTracker {
+
+	/** Board positions farther than this from zero are rebased (half the int range) */
+	public final static long REBASE_LIMIT = Integer.MAX_VALUE / 2;
+
+	private volatile long period;		// steps per period (0 = no wrap around)
+	private volatile long offset = 0;	// unwrapped position = board position + offset
+	private long rebases = 0;
+
+	/**
+	 * Create a tracker.
+	 * @param period steps per period (0 = no wrap around)
+	 */
+	public PositionTracker(long period) {
+		this.period = period;
+	}
+
+	/**
+	 * Get the period.
+	 * @return steps per period (0 = no wrap around)
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Set the period (for example, when the steps per rotation is changed).
+	 * The offset is a whole number of old periods (see getRebase), and it is changed to the same
+	 * number of new periods, so that getAngle still gives the angle of the board's position.
+	 * @param period steps per period (0 = no wrap around)
+	 */
+	public synchronized void setPeriod(long period) {
+		long old = this.period;
+		if ((old > 0) && (period > 0)) {
+			offset = Math.floorDiv(offset, old) * period;
+		}
+		this.period = period;
+	}
+
+	/**
+	 * Get the offset from the board's position.
+	 * @return unwrapped position minus board position
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Get the number of times the board was rebased.
+	 * @return number of rebases
+	 */
+	public synchronized long getRebases() {
+		return rebases;
+	}
+
+	/**
+	 * Convert a board position to an unwrapped position.
+	 * @param board position on the board
+	 * @return unwrapped position
+	 */
+	public long toUnwrapped(long board) {
+		return board + offset;
+	}
+
+	/**
+	 * Convert an unwrapped position to a board position.
+	 * @param unwrapped unwrapped position
+	 * @return position on the board
+	 */
+	public long toBoard(long unwrapped) {
+		return unwrapped - offset;
+	}
+
+	/**
+	 * Get the angle of an unwrapped position within its period.
+	 * @param unwrapped unwrapped position
+	 * @return steps from the start of the period (0 to period-1), or the position if there is no period
+	 */
+	public long getAngle(long unwrapped) {
+		return (period > 0) ? Math.floorMod(unwrapped, period) : unwrapped;
+	}
+
+	/**
+	 * Get the period that an unwrapped position is in.
+	 * @param unwrapped unwrapped position
+	 * @return number of whole periods (can be negative), or 0 if there is no period
+	 */
+	public long getRevolution(long unwrapped) {
+		return (period > 0) ? Math.floorDiv(unwrapped, period) : 0L;
+	}
+
+	/**
+	 * Get the position with the given angle that is nearest to a position
+	 * (within half a period, halves go forward).
+	 * @param unwrapped unwrapped position
+	 * @param angle steps from the start of the period
+	 * @return unwrapped position with the given angle
+	 */
+	public long getNearest(long unwrapped, long angle) {
+		if (period <= 0) {
+			return angle;
+		}
+		long p = period;
+		return Math.floorDiv(unwrapped - angle + p / 2, p) * p + angle;
+	}
+
+	/**
+	 * Check if the board must be rebased before moving to a target.
+	 * @param boardTarget target on the board
+	 * @return true = farther than REBASE_LIMIT from zero and the stage wraps around
+	 */
+	public boolean needsRebase(long boardTarget) {
+		return (period > 0) && (Math.abs(boardTarget) > REBASE_LIMIT);
+	}
+
+	/**
+	 * Get the amount to subtract from the board's position to rebase it:
+	 * whole periods, so that the board's position is within the first period.
+	 * @param boardPosition position on the board
+	 * @return steps to subtract from the board's position (a multiple of the period)
+	 */
+	public long getRebase(long boardPosition) {
+		return (period > 0) ? Math.floorDiv(boardPosition, period) * period : 0L;
+	}
+
+	/**
+	 * Record that the board was rebased (call after the board's position was changed).
+	 * @param shift steps subtracted from the board's position (see getRebase)
+	 */
+	public synchronized void rebased(long shift) {
+		offset += shift;
+		rebases++;
+	}
+
+	/**
+	 * Set the unwrapped position.
+	 * @param unwrapped new unwrapped position
+	 * @return new position for the board
+	 */
+	public synchronized long reset(long unwrapped) {
+		offset = getRebase(unwrapped);
+		return unwrapped - offset;
+	}
+}
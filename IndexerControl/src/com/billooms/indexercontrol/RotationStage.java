@@ -2,9 +2,15 @@
 package com.billooms.indexercontrol;
 
 import com.billooms.indexerprefs.api.Preferences;
+import com.billooms.indexwheel.api.IndexWheel;
+import com.billooms.indexwheel.api.StepMath;
+import com.billooms.stepperboard.api.StepperBoard;
 import com.billooms.stepperboard.api.StepperBoard.Stepper;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 import org.openide.util.Lookup;
 
 /**
@@ -26,7 +32,21 @@ import org.openide.util.Lookup;
  */
 public class RotationStage extends Stage implements PropertyChangeListener {
 	
+	/** How the spindle goes to an index position (see moveToIndex) */
+	public static enum DirectionPolicy {
+		/** Go to the target as it is given (GoToNext always goes forward) */
+		FORWARD,
+		/** Go to the same angle as the target that is nearest (no more than half a rotation) */
+		SHORTEST,
+		/** Like SHORTEST, but always finish going forward (to take up backlash) */
+		SHORTEST_SINGLE_APPROACH
+	}
+	
+	/** Degrees past the target for a backward move with SHORTEST_SINGLE_APPROACH */
+	public final static double APPROACH = 2.0;
+	
 	private static int stepsPerRotation;
+	private DirectionPolicy direction;
 
     /**
      * This controls a stepper motor on a stage
@@ -35,8 +55,40 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 		super(s);
 		
 		stepsPerRotation = Lookup.getDefault().lookup(Preferences.class).getStepsPerRotation();
+		tracker.setPeriod(stepsPerRotation);
+		direction = DirectionPolicy.values()[Lookup.getDefault().lookup(Preferences.class).getDirection()];
 	}	// end constructor
 
+    /**
+     * This controls a stepper motor on a stage of the given board
+	 * (for example a SimulatedStepperBoard when there is no hardware).
+	 * @param board StepperBoard
+	 * @param s Stepper
+     */
+	public RotationStage(StepperBoard board, Stepper s) {
+		super(board, s);
+		
+		stepsPerRotation = Lookup.getDefault().lookup(Preferences.class).getStepsPerRotation();
+		tracker.setPeriod(stepsPerRotation);
+		direction = DirectionPolicy.values()[Lookup.getDefault().lookup(Preferences.class).getDirection()];
+	}
+
+	/**
+	 * Get the direction policy for index moves.
+	 * @return DirectionPolicy
+	 */
+	public DirectionPolicy getDirectionPolicy() {
+		return direction;
+	}
+
+	/**
+	 * Set the direction policy for index moves.
+	 * @param policy DirectionPolicy
+	 */
+	public void setDirectionPolicy(DirectionPolicy policy) {
+		this.direction = policy;
+	}
+
 	/**
 	 * Get the maximum rpm of the spindle
 	 * @return maximum rpm
@@ -57,18 +109,43 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 
     /**
      * Get the current position in degrees
-     * @return position in degrees
+     * @return unwrapped position in degrees (can be more than 360)
      */
     public double getPosition() {
-        return stepToDegree(stepBoard.getPosition(stepper));
+        return stepToDegree(getPositionSteps());
     }
 
 	/**
 	 * Set the current position in degrees
-	 * @param x new value for the current position
+	 * @param d new value for the current position
 	 */
 	public void setPosition(double d) {
-		stepBoard.setCurrentPosition(stepper, (int)degreeToStep(d));
+		setPositionSteps(degreeToStep(d));
+	}
+
+	/**
+	 * Get the angle of the spindle within a rotation.
+	 * @return steps from zero (0 to stepsPerRotation-1)
+	 */
+	public long getAngleSteps() {
+		return tracker.getAngle(getPositionSteps());
+	}
+
+	/**
+	 * Get the angle of the spindle within a rotation.
+	 * @return degrees from zero (0.0 to less than 360.0)
+	 */
+	public double getAngle() {
+		return stepToDegree(getAngleSteps());
+	}
+
+	/**
+	 * Get the zero position that is nearest to the present position
+	 * (within half a rotation), so that going to zero never takes more than half a rotation.
+	 * @return unwrapped position of the nearest zero in steps
+	 */
+	public long getNearestZero() {
+		return tracker.getNearest(getPositionSteps(), 0L);
 	}
 
 	/**
@@ -78,39 +155,12 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 	 * @return true=no movement, false=there will be some movement
 	 */
 	public boolean isPosition(double deg) {
-		if (degreeToStep(deg) == stepBoard.getPosition(stepper)) {
+		if (degreeToStep(deg) == getPositionSteps()) {
 			return true;
 		}
 		return false;
 	}
 
-	/**
-	 * Make sure that theta is between -180 and +180 degrees
-	 * by adding/subtraction 360 to the position.
-	 * @return true = changed, false = not changed
-	 */
-	public boolean wrapAroundCheck() {
-		boolean changed = false;
-		if (!stepBoard.stopCheck(stepper)) {
-			System.out.println("Warning: WrapAround Check while stepper was not stopped! " +
-								stepBoard.getPosition(stepper));
-		}
-		long lastPosition = stepBoard.getCurrentPosition(stepper);	// Get the current position from the board (not the table)
-		while (lastPosition > stepsPerRotation/2) {
-			lastPosition = lastPosition - stepsPerRotation;
-			stepBoard.setCurrentPosition(stepper, (int)lastPosition);
-			stepBoard.setTargetPosition(stepper, (int)lastPosition);
-			changed = true;
-		}
-		while (lastPosition < -stepsPerRotation/2) {
-			lastPosition = lastPosition + stepsPerRotation;
-			stepBoard.setCurrentPosition(stepper, (int)lastPosition);
-			stepBoard.setTargetPosition(stepper, (int)lastPosition);
-			changed = true;
-		}
-		return changed;
-	}
-
 	/**
      * Go to a given position (in degrees) at specified velocity.
 	 * Always go even if new position is the same as last position.
@@ -120,8 +170,13 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 	 */
 	public void alwaysGoToAtVelocity(double deg, double vel) {
 		if (getEngaged()) {
+			supersedeMove();
 			setVelocityLimit(vel);
-			stepBoard.setTargetPosition(stepper, degreeToStep(deg));
+			try {
+				stepBoard.setTargetPosition(stepper, boardTarget(degreeToStep(deg)));
+			} catch (MoveFailedException ex) {
+				System.out.println("Warning: " + ex.getMessage());
+			}
 		}
 	}
 
@@ -136,15 +191,21 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 	public boolean goToAtVelocity(double deg, double vel) {
 		if (getEngaged()) {
 			long newPosition = degreeToStep(deg);
-			if (newPosition != stepBoard.getPosition(stepper)) {	// Don't try moving if no change
+			if (newPosition != getPositionSteps()) {	// Don't try moving if no change
 																	// (to avoid a momentary "Motor Stopped" indication)
 				if (vel <= 0.0) {
 					System.out.println("Warning: Attempt to move to " + deg +
 									   " on stepper "+ stepper + " with zero velocity!");
 					return false;
 				}
+				supersedeMove();
 				setVelocityLimit(vel);
-				stepBoard.setTargetPosition(stepper, newPosition);
+				try {
+					stepBoard.setTargetPosition(stepper, boardTarget(newPosition));
+				} catch (MoveFailedException ex) {
+					System.out.println("Warning: " + ex.getMessage());
+					return false;
+				}
 				return true;
 			}
 		}
@@ -174,6 +235,92 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 		return goToAtVelocity(deg, rpmToVelocity(rpm));
 	}
 
+	/**
+	 * Move to a given position (in degrees) at specified velocity.
+	 * The returned future completes when the spindle has stopped at the position,
+	 * or when the move is superseded by another move or a stop.
+	 * @param deg Position in degrees
+	 * @param vel Velocity
+	 * @return future result of the move
+	 */
+	public CompletableFuture<MoveResult> moveToDegrees(double deg, double vel) {
+		return moveTo(degreeToStep(deg), vel);
+	}
+
+	/**
+	 * Move to a given position (in degrees) at the specified rpm.
+	 * The returned future completes when the spindle has stopped at the position,
+	 * or when the move is superseded by another move or a stop.
+	 * @param deg Position in degrees
+	 * @param rpm rotations per minute
+	 * @return future result of the move
+	 */
+	public CompletableFuture<MoveResult> moveToAtRPM(double deg, double rpm) {
+		return moveTo(degreeToStep(deg), rpmToVelocity(rpm));
+	}
+
+	/**
+	 * Choose the target that the direction policy goes to for a given index position.
+	 * For SHORTEST and SHORTEST_SINGLE_APPROACH this is the position with the same angle
+	 * (modulo one rotation) that is nearest to the present position.
+	 * @param steps unwrapped index position in steps
+	 * @return unwrapped target in steps
+	 */
+	public long chooseTarget(long steps) {
+		if (direction == DirectionPolicy.FORWARD) {
+			return steps;
+		}
+		return tracker.getNearest(getPositionSteps(), tracker.getAngle(steps));
+	}
+
+	/**
+	 * Move to an index position with the direction policy at the specified velocity.
+	 * The target is chosen first with chooseTarget (so the caller knows where the spindle is going).
+	 * With SHORTEST_SINGLE_APPROACH, a backward move goes APPROACH degrees past the target
+	 * and then forward to the target, so the future completes after the second move.
+	 * @param target unwrapped target in steps (from chooseTarget)
+	 * @param vel velocity in steps/second
+	 * @return future result of the move (to the target)
+	 */
+	public CompletableFuture<MoveResult> moveToIndex(final long target, final double vel) {
+		if ((direction != DirectionPolicy.SHORTEST_SINGLE_APPROACH) || (target >= getPositionSteps())) {
+			return moveTo(target, vel);
+		}
+		return moveTo(target - degreeToStep(APPROACH), vel).thenCompose(
+				new Function<MoveResult, CompletionStage<MoveResult>>() {
+			@Override
+			public CompletionStage<MoveResult> apply(MoveResult r) {
+				if (r.isSuperseded() || !r.isAtTarget()) {
+					return CompletableFuture.completedFuture(r);	// stopped: don't approach
+				}
+				return moveTo(target, vel);
+			}
+		});
+	}
+
+	/**
+	 * Plan a move to a given position (in degrees) at the specified rpm without making it.
+	 * @param deg Position in degrees
+	 * @param rpm rotations per minute
+	 * @return profile of the move (with the predicted time)
+	 */
+	public MoveProfile planToAtRPM(double deg, double rpm) {
+		return planTo(degreeToStep(deg), rpmToVelocity(rpm));
+	}
+
+	/**
+	 * Predict the time to index through all the filled holes of a wheel once,
+	 * starting from the present position, at the specified rpm (with the direction policy).
+	 * @param wheel IndexWheel
+	 * @param rpm rotations per minute
+	 * @param dwell time at each hole in seconds
+	 * @return seconds
+	 */
+	public double predictJobTime(IndexWheel wheel, double rpm, double dwell) {
+		return getPlanner().predictJobTime(wheel, stepsPerRotation, getPosition(), rpmToVelocity(rpm), dwell, 
+				direction, degreeToStep(APPROACH));
+	}
+
 	/**
 	 * Convert from rpm to velocity
 	 * @param rpm rotations per minute
@@ -184,12 +331,12 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 	}
 
     /**
-     * Convert degrees to steps
+     * Convert degrees to steps (see StepMath for the rounding)
      * @param deg degrees
      * @return steps
      */
 	public static long degreeToStep(double deg) {
-		return Math.round(deg*stepsPerRotation/360.0);
+		return StepMath.degreeToStep(deg, stepsPerRotation);
 	}
 
     /**
@@ -198,7 +345,7 @@ public class RotationStage extends Stage implements PropertyChangeListener {
      * @return degree
      */
 	public static double stepToDegree(long s) {
-		return 360.0 * (double)s / (double)(stepsPerRotation);
+		return StepMath.stepToDegree(s, stepsPerRotation);
 	}
 
 	/**
@@ -210,8 +357,12 @@ public class RotationStage extends Stage implements PropertyChangeListener {
 	public void propertyChange(PropertyChangeEvent evt) {
 		if (evt.getPropertyName().equals(Preferences.PROP_STEPSPERROTATION)) {
 			stepsPerRotation = Lookup.getDefault().lookup(Preferences.class).getStepsPerRotation();
+			tracker.setPeriod(stepsPerRotation);
+		} else if (evt.getPropertyName().equals(Preferences.PROP_DIRECTION)) {
+			direction = DirectionPolicy.values()[Lookup.getDefault().lookup(Preferences.class).getDirection()];
 		} else if (evt.getPropertyName().equals(Preferences.PROP_WIRETO)) {
-			stepper = Stepper.values()[Lookup.getDefault().lookup(Preferences.class).getWiredTo()];
+			supersedeMove();
+			setStepper(Stepper.values()[Lookup.getDefault().lookup(Preferences.class).getWiredTo()]);
 		} else if (evt.getPropertyName().equals(Preferences.PROP_CURRENT)) {
 			stepBoard.setCurrentLimit(stepper, Lookup.getDefault().lookup(Preferences.class).getCurrentLimit());
 		} else if (evt.getPropertyName().equals(Preferences.PROP_ACCEL)) {
@@ -1,9 +1,19 @@
 
 package com.billooms.indexercontrol;
 
+import com.billooms.indexercontrol.MoveFailedException.Reason;
 import com.billooms.indexerprefs.api.Preferences;
 import com.billooms.stepperboard.api.StepperBoard;
 import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.Latencies;
+import com.billooms.stepperboard.api.LatencyHistogram;
+import com.billooms.stepperboard.api.StepperAdapter;
+import com.billooms.stepperboard.api.StepperSnapshot;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.openide.util.Lookup;
 
 /**
@@ -25,21 +35,88 @@ import org.openide.util.Lookup;
  */
 public class Stage {
 	
+	/** How long (msec) shutDown waits for the steppers to be disengaged */
+	protected final static long DISENGAGE_TIMEOUT = 1000;
+	/** How old (msec) a position from the board's table may be (see positionAge) */
+	protected final static long MAX_POSITION_AGE = 5;
+	
 	protected StepperBoard stepBoard;
 	protected Stepper stepper;
+	/** Unwrapped position of this stage (the positions of the public methods are unwrapped) */
+	protected final PositionTracker tracker = new PositionTracker(0L);
+	
+	private final Object moveLock = new Object();
+	private CompletableFuture<MoveResult> move = null;	// move in progress (if any)
+	private long moveTarget;			// target of the move in progress
+	private long moveStart;				// board time when the move started
+	private long moveCalled;			// System.nanoTime() when moveTo was called
+	private long moveFrom;				// position when moveTo was called
+	private boolean moved;				// true after the first position change of the move
+	private MoveListener moveListener = null;
+	private volatile LatencyHistogram firstMoveTime;	// moveTo to the first position change
+	private volatile LatencyHistogram moveTime;			// moveTo to stopped at the target
 
     /**
-     * This controls a stepper motor on a stage
+     * This controls a stepper motor on a stage of the default board
      */
 	public Stage(Stepper s) {
-		this.stepper = s;
-		stepBoard = Lookup.getDefault().lookup(StepperBoard.class);
+		this(Startup.getBoard(), s);		// waits for Startup to create the board
+	}
+
+    /**
+     * This controls a stepper motor on a stage of the given board
+	 * (for example a SimulatedStepperBoard when there is no hardware).
+	 * @param board StepperBoard
+	 * @param s Stepper
+     */
+	public Stage(StepperBoard board, Stepper s) {
+		stepBoard = board;
+		setStepper(s);
 //		stepBoard.setAcceleration(stepper, Lookup.getDefault().lookup(Preferences.class).getAccel());
 //		if (stepBoard.getType() == 1) {
 //			stepBoard.setCurrentLimit(stepper, Lookup.getDefault().lookup(Preferences.class).getCurrentLimit());
 //		}
 	}   // end constructor
 
+	/**
+	 * Get the board that this stage is on.
+	 * @return StepperBoard
+	 */
+	public StepperBoard getBoard() {
+		return stepBoard;
+	}
+
+	/**
+	 * Get the stepper that drives this stage.
+	 * @return Stepper
+	 */
+	public Stepper getStepper() {
+		return stepper;
+	}
+
+	/**
+	 * Set the stepper that drives this stage,
+	 * and look up the latency histograms of the new stepper.
+	 * A move in progress should be superseded first.
+	 * @param s Stepper
+	 */
+	protected final void setStepper(Stepper s) {
+		stepper = s;
+		firstMoveTime = Latencies.get(histogramName("firstMove"));
+		moveTime = Latencies.get(histogramName("move"));
+	}
+
+	/**
+	 * Get the name of a histogram for this stage (see Latencies).
+	 * The name starts with the board's histogram prefix, so the stages of different boards aren't mixed,
+	 * and it is the same before and after the board is attached.
+	 * @param what what is measured
+	 * @return name like "board.12345.S0.stage.move"
+	 */
+	String histogramName(String what) {
+		return stepBoard.getHistogramPrefix() + "." + stepper + ".stage." + what;
+	}
+
 	/**
 	 * Get the maximum possible velocity of the stepper
 	 * @return max velocity in half-steps/second
@@ -89,12 +166,70 @@ public class Stage {
 		return setVelocityLimit(getMaxVelocity());
     }
 
+	/**
+	 * Get the tracker of the unwrapped position of this stage.
+	 * @return PositionTracker
+	 */
+	public PositionTracker getTracker() {
+		return tracker;
+	}
+
 	/**
 	 * Get the position in steps (from the table)
-	 * @return position in steps
+	 * @return unwrapped position in steps
 	 */
 	public long getPositionSteps() {
-		return stepBoard.getPosition(stepper);
+		return tracker.toUnwrapped(stepBoard.getPosition(stepper));
+	}
+
+	/**
+	 * Set the current position in steps.
+	 * Note: like the board, this doesn't change the target.
+	 * @param steps new unwrapped position in steps
+	 */
+	public void setPositionSteps(long steps) {
+		stepBoard.setCurrentPosition(stepper, (int) tracker.reset(steps));
+	}
+
+	/**
+	 * Get the board target for an unwrapped target.
+	 * If the board target would be too far from zero (see PositionTracker.REBASE_LIMIT)
+	 * and the stepper is stopped, the board is rebased first by whole periods.
+	 * The board is polled to decide if the stepper is stopped, unless the snapshot shows it
+	 * stopped at its target (see positionAge).
+	 * @param steps unwrapped target in steps
+	 * @return target on the board
+	 * @throws MoveFailedException (RANGE) if the board must be rebased while the stepper is moving
+	 */
+	protected long boardTarget(long steps) throws MoveFailedException {
+		long target = tracker.toBoard(steps);
+		if (!tracker.needsRebase(target)) {
+			return target;
+		}
+		long age = positionAge();
+		long position = stepBoard.getCurrentPosition(stepper, age, TimeUnit.MILLISECONDS);
+		boolean stopped = (age != StepperBoard.AUTHORITATIVE) || stepBoard.stopCheck(stepper);
+		if (!stopped || (position != stepBoard.getTargetPosition(stepper, age, TimeUnit.MILLISECONDS))) {
+			throw new MoveFailedException(Reason.RANGE, stepper, steps, tracker.toUnwrapped(position));
+		}
+		long shift = tracker.getRebase(position);
+		long pos = position - shift;
+		stepBoard.setCurrentPosition(stepper, (int) pos);	// the board keeps its old target,
+		stepBoard.setTargetPosition(stepper, pos);			// so that must be moved too
+		tracker.rebased(shift);
+		return tracker.toBoard(steps);
+	}
+
+	/**
+	 * Get how old the position and target read from the board's table may be.
+	 * When the snapshot shows the stepper stopped at its target, the table can't be behind
+	 * the board (it changes only with a position event), so it is used.
+	 * Otherwise the stepper might be moving, and a saved position is already behind it.
+	 * @return MAX_POSITION_AGE, or StepperBoard.AUTHORITATIVE to poll the board
+	 */
+	protected long positionAge() {
+		StepperSnapshot snap = stepBoard.getSnapshot(stepper);
+		return (snap.isStopped() && (snap.getPosition() == snap.getTarget())) ? MAX_POSITION_AGE : StepperBoard.AUTHORITATIVE;
 	}
 
     /**
@@ -117,6 +252,7 @@ public class Stage {
 		if (state) {
 			stepBoard.setCurrentPosition(stepper, 0);	// Make sure stepper isn't going to move further
 			stepBoard.setTargetPosition(stepper, 0);
+			tracker.reset(0L);
 			stepBoard.setAcceleration(stepper, Lookup.getDefault().lookup(Preferences.class).getAccel());
 			if (stepBoard.getType() == 1) {
 				stepBoard.setCurrentLimit(stepper, Lookup.getDefault().lookup(Preferences.class).getCurrentLimit());
@@ -136,14 +272,201 @@ public class Stage {
         this.stop();        // make sure we're stopped firse
         stepBoard.setCurrentPosition(stepper, 0);
         stepBoard.setTargetPosition(stepper, 0);
+		tracker.reset(0L);
     }
 
     /**
-     * Stop the stage by making reading current position and making it the target position
+     * Move to the given position at the given velocity.
+	 * The returned future completes when this stepper has stopped at the target,
+	 * or when the move is superseded by another move or a stop.
+	 * The MoveWatchdog completes it exceptionally with a MoveFailedException
+	 * if it takes much longer than planned, stalls, or the board is detached.
+	 * Note that actions chained to the future run on the board's event thread (not the EDT).
+     * @param steps unwrapped target position in steps
+     * @param vel velocity limit in steps/second
+     * @return future result of the move
+     */
+	public CompletableFuture<MoveResult> moveTo(long steps, double vel) {
+		long called = System.nanoTime();
+		CompletableFuture<MoveResult> f = new CompletableFuture<MoveResult>();
+		supersedeMove();
+		long target;
+		try {
+			target = boardTarget(steps);
+		} catch (MoveFailedException ex) {
+			f.completeExceptionally(ex);
+			return f;
+		}
+		StepperSnapshot snap = stepBoard.getSnapshot(stepper);
+		boolean there = snap.isStopped() && (target == snap.getPosition()) && (target == snap.getTarget());	// a stale or moving snapshot may only pass through the target
+		if (!snap.isEngaged() || there || (vel <= 0.0)) {
+			if (vel <= 0.0) {
+				System.out.println("Warning: Attempt to move to " + steps +
+								   " on stepper "+ stepper + " with zero velocity!");
+			}
+			f.complete(new MoveResult(steps, tracker.toUnwrapped(snap.getPosition()), 0L, false));	// nothing to do
+			return f;
+		}
+		if (moveListener == null) {
+			moveListener = new MoveListener();
+			stepBoard.addControlListener(moveListener);
+		}
+		synchronized (moveLock) {
+			move = f;
+			moveTarget = target;
+			moveStart = snap.getNanoTime();
+			moveCalled = called;
+			moveFrom = snap.getPosition();
+			moved = false;
+		}
+		setVelocityLimit(vel);
+		stepBoard.setTargetPosition(stepper, target);
+		synchronized (moveLock) {
+			if (move == f) {
+				moveStart = stepBoard.getSnapshot(stepper).getNanoTime();	// board time of the new target
+			}
+		}
+		MoveWatchdog.getDefault().watch(this, f, getPlanner().plan(snap.getPosition(), target, vel), vel);
+		return f;
+	}
+
+	/**
+	 * Set the target without waiting for the move (for a stage that follows another, see Coordinator).
+	 * Any move made with moveTo is superseded, the velocity limit is not changed,
+	 * and the move is not watched.
+	 * The target is streamed (see StepperBoard.streamTargetPosition), so nothing is allocated
+	 * and no TARGET PropertyChangeEvent is fired.
+	 * @param steps unwrapped target position in steps
+	 * @return true = target was set, false = the target is out of the board's range (see boardTarget)
+	 */
+	public boolean setTargetSteps(long steps) {
+		supersedeMove();
+		try {
+			stepBoard.streamTargetPosition(stepper, boardTarget(steps));
+			return true;
+		} catch (MoveFailedException ex) {
+			System.out.println("Warning: " + ex.getMessage());
+			return false;
+		}
+	}
+
+    /**
+     * Move to the given position at the present velocity limit.
+     * @param steps unwrapped target position in steps
+     * @return future result of the move
+     */
+	public CompletableFuture<MoveResult> moveTo(long steps) {
+		return moveTo(steps, getVelocityLimit());
+	}
+
+	/**
+	 * Get a planner for moves of this stage at its present acceleration.
+	 * @return MotionPlanner with a trapezoid profile (like the board)
+	 */
+	public MotionPlanner getPlanner() {
+		double accel = stepBoard.getAcceleration(stepper);
+		if (accel <= 0.0) {			// not attached yet
+			accel = Lookup.getDefault().lookup(Preferences.class).getAccel();
+		}
+		return new MotionPlanner(accel);
+	}
+
+	/**
+	 * Plan a move from the present position without making it.
+	 * @param steps unwrapped target position in steps
+	 * @param vel velocity limit in steps/second
+	 * @return profile of the move (with the predicted time)
+	 */
+	public MoveProfile planTo(long steps, double vel) {
+		return getPlanner().plan(getPositionSteps(), steps, vel);
+	}
+
+	/**
+	 * If a move made with moveTo is in progress, complete it as superseded.
+	 * This should be called whenever the target is changed some other way.
+	 */
+	protected void supersedeMove() {
+		CompletableFuture<MoveResult> f;
+		MoveResult r;
+		synchronized (moveLock) {
+			if (move == null) {
+				return;
+			}
+			StepperSnapshot snap = stepBoard.getSnapshot(stepper);
+			f = move;
+			r = new MoveResult(tracker.toUnwrapped(moveTarget), tracker.toUnwrapped(snap.getPosition()), 
+					snap.getNanoTime() - moveStart, true);
+			move = null;
+		}
+		f.complete(r);
+	}
+
+	/**
+	 * If the given move is still in progress, complete it exceptionally and stop the stepper.
+	 * @param f future of the move
+	 * @param ex why it failed
+	 * @return true if the move was failed, false if it had already finished
+	 */
+	boolean failMove(CompletableFuture<MoveResult> f, MoveFailedException ex) {
+		synchronized (moveLock) {
+			if (move != f) {
+				return false;
+			}
+			move = null;
+		}
+		if (stepBoard.isAttached()) {
+			stepBoard.setTargetPosition(stepper, stepBoard.getCurrentPosition(stepper, positionAge(), TimeUnit.MILLISECONDS));
+		}
+		f.completeExceptionally(ex);
+		return true;
+	}
+
+	/**
+	 * Complete the move in progress if the stepper has stopped at the target.
+	 */
+	private void checkMove() {
+		CompletableFuture<MoveResult> f;
+		MoveResult r;
+		StepperSnapshot snap = stepBoard.getSnapshot(stepper);
+		synchronized (moveLock) {
+			if ((move == null) || !snap.isStopped() || (snap.getPosition() != moveTarget)) {
+				return;
+			}
+			f = move;
+			r = new MoveResult(tracker.toUnwrapped(moveTarget), tracker.toUnwrapped(snap.getPosition()), 
+					snap.getNanoTime() - moveStart, false);
+			move = null;
+			moveTime.recordSince(moveCalled);
+		}
+		f.complete(r);
+	}
+
+	/**
+	 * Record the latency of the first position change of the move in progress.
+	 * @param position new position
+	 * @param nanoTime when the board reported the position
+	 */
+	private void checkFirstMove(long position, long nanoTime) {
+		synchronized (moveLock) {
+			if ((move != null) && !moved && (position != moveFrom)) {
+				moved = true;
+				firstMoveTime.record(nanoTime - moveCalled);
+			}
+		}
+	}
+
+    /**
+     * Stop the stage by making reading current position and making it the target position.
+	 * The position is read from the board unless the stepper is stopped at its target:
+	 * a saved position of a moving motor is already behind it, and the motor would go back to it.
      */
 	public void stop() {
-		stepBoard.setTargetPosition(stepper, stepBoard.getCurrentPosition(stepper));	// Get the current position from the board (not the table)
-        stepBoard.stopCheck(stepper);		// make sure the table is updated
+		long age = positionAge();
+		stepBoard.setTargetPosition(stepper, stepBoard.getCurrentPosition(stepper, age, TimeUnit.MILLISECONDS));
+		if (age == StepperBoard.AUTHORITATIVE) {
+			stepBoard.stopCheck(stepper);		// make sure the table is updated
+		}
+		supersedeMove();
 	}
 
     /**
@@ -152,13 +475,67 @@ public class Stage {
 	 * this should be in the class controlling all stages!
      */
 	public void shutDown() {
-        System.out.println("Stage.shutDown");
+        System.out.println("Stage.shutDown (reads: " + stepBoard.getReadHits() + " from the table, " 
+				+ stepBoard.getReadMisses() + " from the board)");
+		supersedeMove();
+		if (moveListener != null) {
+			stepBoard.removeControlListener(moveListener);
+			moveListener = null;
+		}
 		if (stepBoard.isAttached()) {
 			stepBoard.disengageAll();
-			while (getEngaged()) {
-				// Wait for completion of disengage before exiting
+			if (!waitForDisengage(DISENGAGE_TIMEOUT)) {		// wait for completion of disengage before exiting
+				System.out.println("Warning: stepper " + stepper + " still engaged after " + DISENGAGE_TIMEOUT + " msec");
 			}
 			stepBoard.close();
 		}
 	}
+
+	/**
+	 * Wait until this stepper is disengaged.
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return true=disengaged, false=timed out or interrupted
+	 */
+	private boolean waitForDisengage(long timeout) {
+		final CountDownLatch done = new CountDownLatch(1);
+		PropertyChangeListener listener = new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (evt.getPropertyName().equals(StepperBoard.Props.ENGAGED.toString()) && !getEngaged()) {
+					done.countDown();
+				}
+			}
+		};
+		stepBoard.addPropertyChangeListener(listener);
+		try {
+			return !getEngaged() || done.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			stepBoard.removePropertyChangeListener(listener);
+		}
+	}
+
+	/**
+	 * Watches this stepper for the end of a move
+	 * (a control listener, so the end isn't delayed to the display rate).
+	 */
+	private class MoveListener extends StepperAdapter {
+
+		@Override
+		public void onPosition(Stepper s, long position, long nanoTime) {
+			if (s == stepper) {
+				checkFirstMove(position, nanoTime);
+				checkMove();
+			}
+		}
+
+		@Override
+		public void onStopped(Stepper s, boolean stopped) {
+			if ((s == stepper) && stopped) {
+				checkMove();
+			}
+		}
+	}
 }
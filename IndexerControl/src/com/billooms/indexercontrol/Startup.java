@@ -0,0 +1,174 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.indexerprefs.api.Preferences;
+import com.billooms.indexwheel.api.IndexWheelMgr;
+import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperBoardRegistry;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openide.util.Exceptions;
+import org.openide.util.Lookup;
+import org.openide.util.RequestProcessor;
+import org.openide.util.lookup.Lookups;
+
+/**
+ * Starts the slow parts of the program at the same time, on background threads,
+ * so that the windows can open right away:
+ * looking for the StepperBoard, loading the sound, reading the preferences,
+ * creating the IndexWheelMgr, and any Runnable registered in the Lookup at PATH
+ * (for example, reopening the last file).
+ * The time of each phase is printed when they are all finished.
+ * Startup is the only place that creates and opens the default StepperBoard:
+ * the windows get it with getBoard(), which waits for the "board" phase.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class Startup {
+
+	/** Lookup path of other startup phases: register a Runnable with @ServiceProvider(service = Runnable.class, path = PATH) */
+	final static String PATH = "Indexer/Startup";
+
+	private final static RequestProcessor RP = new RequestProcessor("Startup", 4);
+	private final static AtomicBoolean begun = new AtomicBoolean(false);
+	private final static CompletableFuture<StepperBoard> board = new CompletableFuture<StepperBoard>();
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<Runnable> phases = new ArrayList<Runnable>();
+	private final long[] elapsed;
+	private final AtomicInteger remaining;
+	private final long start = System.nanoTime();
+
+	private Startup() {
+		add("board", new Runnable() {
+			@Override
+			public void run() {
+				try {
+					board.complete(Lookup.getDefault().lookup(StepperBoardRegistry.class).getDefault());	// creates and opens the board
+				} catch (RuntimeException ex) {
+					board.completeExceptionally(ex);
+					throw ex;
+				}
+			}
+		});
+		add("sound", new Runnable() {
+			@Override
+			public void run() {
+				ControlPanel.loadSound();
+			}
+		});
+		add("preferences", new Runnable() {
+			@Override
+			public void run() {
+				Lookup.getDefault().lookup(Preferences.class);		// reads the preferences
+			}
+		});
+		add("indexwheels", new Runnable() {
+			@Override
+			public void run() {
+				Lookup.getDefault().lookup(IndexWheelMgr.class);
+			}
+		});
+		for (Runnable r : Lookups.forPath(PATH).lookupAll(Runnable.class)) {
+			add(r.getClass().getSimpleName(), r);
+		}
+		elapsed = new long[phases.size()];
+		remaining = new AtomicInteger(phases.size());
+	}
+
+	/**
+	 * Start all the phases (only the first call does anything).
+	 * This returns right away.
+	 */
+	static void begin() {
+		if (begun.compareAndSet(false, true)) {
+			new Startup().start();
+		}
+	}
+
+	/**
+	 * Get the default StepperBoard, waiting for the "board" phase to create and open it
+	 * (startup is begun if it wasn't already).
+	 * The board is not necessarily attached yet.
+	 * @return default StepperBoard
+	 */
+	public static StepperBoard getBoard() {
+		begin();
+		return board.join();
+	}
+
+	/**
+	 * Add a phase.
+	 * @param name name for the report
+	 * @param phase what to do
+	 */
+	private void add(String name, Runnable phase) {
+		names.add(name);
+		phases.add(phase);
+	}
+
+	/**
+	 * Post all the phases to the RequestProcessor.
+	 */
+	private void start() {
+		for (int i = 0; i < phases.size(); i++) {
+			final int n = i;
+			RP.post(new Runnable() {
+				@Override
+				public void run() {
+					runPhase(n);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Run a phase and time it.
+	 * The last phase to finish prints the report.
+	 * @param n phase index
+	 */
+	private void runPhase(int n) {
+		long t = System.nanoTime();
+		try {
+			phases.get(n).run();
+		} catch (RuntimeException ex) {
+			Exceptions.printStackTrace(ex);		// the other phases still run
+		}
+		elapsed[n] = System.nanoTime() - t;
+		if (remaining.decrementAndGet() == 0) {
+			report();
+		}
+	}
+
+	/**
+	 * Print the time of each phase.
+	 */
+	private void report() {
+		long sum = 0;
+		StringBuilder sb = new StringBuilder("Startup:");
+		for (int i = 0; i < phases.size(); i++) {
+			sb.append(String.format(" %s %d ms,", names.get(i), elapsed[i] / 1000000L));
+			sum += elapsed[i];
+		}
+		sb.append(String.format(" total %d ms (%d ms one after another),",
+				(System.nanoTime() - start) / 1000000L, sum / 1000000L));
+		long sinceJVM = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		sb.append(String.format(" ready %d ms after the JVM started", sinceJVM));
+		System.out.println(sb.toString());
+	}
+}
@@ -0,0 +1,347 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.stepperboard.api.StepperAdapter;
+import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.StepperSnapshot;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the stepper of a Stage really follows its moves.
+ * A separate thread reads the position from the board (not the table) and compares it
+ * with the move planned by the Stage's MotionPlanner.
+ * Samples are sparse while the stepper is idle (IDLE_PERIOD), and get denser as the
+ * end of a move comes near (down to MIN_PERIOD), so the USB link is never busy with them.
+ *
+ * A PROP_DRIFT property change is fired when the position is too far from the plan
+ * (or, while idle, is not the position in the table), a PROP_STALL property change
+ * when the position doesn't change for STALL_TIME (or STALL_STEPS at the planned velocity,
+ * if that is longer) while it should be moving, and a
+ * PROP_MISSED property change when the stepper stops somewhere other than the target.
+ * The old value is the expected position and the new value is the actual position.
+ * Each is fired at most once per move, on the verifier thread.
+ * Note that the board counts the steps it sends to the motor, so this finds steps that were
+ * never sent (a stalled or reset board, a lost command, a wrong acceleration) rather than
+ * steps that the motor missed.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class StepVerifier {
+
+	/** Property name used when the position is too far from the plan */
+	public final static String PROP_DRIFT = "drift";
+	/** Property name used when the position stops changing during a move */
+	public final static String PROP_STALL = "stall";
+	/** Property name used when the stepper stops away from the target */
+	public final static String PROP_MISSED = "missed";
+
+	/** Time between samples while idle (msec) */
+	public final static long IDLE_PERIOD = 1000;
+	/** Longest time between samples during a move (msec) */
+	public final static long MAX_PERIOD = 100;
+	/** Shortest time between samples, near the end of a move (msec) */
+	public final static long MIN_PERIOD = 5;
+	/** Shortest time without a change in position that is a stall (msec) */
+	public final static long STALL_TIME = 50;
+	/** A stall is also at least this many steps at the planned velocity (for slow moves) */
+	public final static double STALL_STEPS = 3.0;
+	/** While idle, the board is polled once in this many samples (the others may use the board's table) */
+	public final static int DRIFT_SAMPLES = 10;
+	private final static double LAG = 0.05;			// sec that the board may be behind or ahead of the plan (USB and event latency)
+	private final static long TOLERANCE = 2;		// steps of round-off allowed
+	private final static double MOVING = 0.2;		// fraction of peak velocity that should certainly show movement
+
+	private final Stage stage;
+	private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+	private final Object lock = new Object();
+	private final StartListener startListener = new StartListener();
+	private StepperBoard board;
+	private Thread thread = null;
+	private volatile boolean running = false;
+
+	// the move being checked (guarded by lock)
+	private boolean started = false;	// a move was started since the last sample
+	private long startNanos;			// when the move was started
+
+	// used only on the verifier thread
+	private MoveProfile profile = null;	// planned move (null if idle or it can't be planned)
+	private boolean moving = false;
+	private long target;
+	private long lastActual;
+	private long lastChange;			// when the actual position last changed
+	private boolean flagged;			// a problem was already fired for this move
+	private int idleMismatch = 0;		// samples in a row where the board and table differ while idle
+	private long idleSamples = 0;		// samples while idle (for DRIFT_SAMPLES)
+	private long samples = 0;
+	private long problems = 0;
+
+	/**
+	 * Create a verifier for a Stage.
+	 * Call start() to start checking.
+	 * @param stage Stage to check
+	 */
+	public StepVerifier(Stage stage) {
+		this.stage = stage;
+	}
+
+	/**
+	 * Start the verifier thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		board = stage.getBoard();
+		board.addStepperListener(startListener);
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				verify();
+			}
+		}, "StepVerifier " + stage.getStepper());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the verifier thread.
+	 */
+	public synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		board.removeStepperListener(startListener);
+		thread.interrupt();
+		thread = null;
+	}
+
+	/**
+	 * Get the number of positions read from the board.
+	 * @return number of samples
+	 */
+	public long getSamples() {
+		synchronized (lock) {
+			return samples;
+		}
+	}
+
+	/**
+	 * Get the number of problems found.
+	 * @return number of drift, stall and missed step problems
+	 */
+	public long getProblems() {
+		synchronized (lock) {
+			return problems;
+		}
+	}
+
+	/**
+	 * The verifier thread: sample, check, and wait for the next sample (or a new move).
+	 */
+	private void verify() {
+		while (running) {
+			long period;
+			try {
+				period = sample();
+			} catch (RuntimeException ex) {
+				period = IDLE_PERIOD;
+				System.out.println("StepVerifier: " + ex);
+			}
+			synchronized (lock) {
+				if (!started) {
+					try {
+						lock.wait(period);
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take one sample and check it.
+	 * @return msec until the next sample
+	 */
+	private long sample() {
+		Stepper s = stage.getStepper();
+		boolean isNew;
+		long start;
+		synchronized (lock) {
+			isNew = started;
+			start = startNanos;
+			started = false;
+		}
+		StepperSnapshot snap = board.getSnapshot(s);
+		if (isNew) {
+			beginMove(snap, start);
+		}
+		if (!snap.isEngaged() || !board.isAttached()) {
+			moving = false;
+			return IDLE_PERIOD;
+		}
+		boolean poll = moving || (idleMismatch > 0) || (idleSamples++ % DRIFT_SAMPLES == 0);
+		long actual = board.getCurrentPosition(s, poll ? StepperBoard.AUTHORITATIVE : IDLE_PERIOD, TimeUnit.MILLISECONDS);
+		long now = System.nanoTime();
+		synchronized (lock) {
+			samples++;
+		}
+		if (!moving) {
+			return checkIdle(snap, actual);
+		}
+		if (snap.getTarget() != target) {
+			profile = null;				// the target changed during the move: can't plan that
+			target = snap.getTarget();
+		}
+		if (actual != lastActual) {
+			lastActual = actual;
+			lastChange = now;
+		}
+		double t = (now - start) / 1.0E9;
+		if (actual == target) {
+			moving = false;				// arrived
+			return MIN_PERIOD;			// and check once more when stopped
+		}
+		if (snap.isStopped() && board.stopCheck(s)) {
+			fire(PROP_MISSED, target, actual);
+			moving = false;
+			return IDLE_PERIOD;
+		}
+		if (profile != null) {
+			double t0 = Math.max(t - LAG, 0.0);
+			double p0 = profile.getPosition(t0);
+			double p1 = profile.getPosition(t + LAG);
+			double p = profile.getPosition(t);
+			boolean settling = (t > profile.getDuration() - LAG);		// the final position is checked when it stops
+			if (!settling && ((actual < Math.min(p0, p1) - TOLERANCE) || (actual > Math.max(p0, p1) + TOLERANCE))) {
+				fire(PROP_DRIFT, Math.round(p), actual);
+			}
+			double v = Math.min(Math.abs(profile.getVelocity(t0)), Math.abs(profile.getVelocity(t)));
+			if ((v > MOVING * profile.getPeakVelocity()) && (now - lastChange > stallNanos(v))) {
+				fire(PROP_STALL, Math.round(p), actual);
+			}
+			double rest = profile.getDuration() - t;
+			return Math.max(MIN_PERIOD, Math.min(MAX_PERIOD, (long) (rest * 1000.0 / 4.0)));
+		}
+		if (now - lastChange > 4 * stallNanos(board.getVelocityLimit(s))) {	// no plan: only a long stall is certain
+			fire(PROP_STALL, target, actual);
+		}
+		return MAX_PERIOD;
+	}
+
+	/**
+	 * Get the time without a change in position that is a stall.
+	 * A slow stepper takes longer than STALL_TIME between steps, so it is also STALL_STEPS step intervals.
+	 * @param vel velocity in steps/sec
+	 * @return time in nsec
+	 */
+	private static long stallNanos(double vel) {
+		long t = STALL_TIME * 1000000L;
+		if (vel > 0.0) {
+			t = Math.max(t, (long) (STALL_STEPS / vel * 1.0E9));
+		}
+		return t;
+	}
+
+	/**
+	 * Plan the move that was just started.
+	 * @param snap latest snapshot of the stepper
+	 * @param start when the move was started
+	 */
+	private void beginMove(StepperSnapshot snap, long start) {
+		moving = true;
+		flagged = false;
+		idleMismatch = 0;
+		target = snap.getTarget();
+		lastActual = snap.getPosition();
+		lastChange = System.nanoTime();
+		double vel = stage.getVelocityLimit();
+		profile = (vel > 0.0) ? stage.getPlanner().plan(snap.getPosition(), target, vel) : null;
+	}
+
+	/**
+	 * Check a sample while the stepper is idle:
+	 * the board should have the same position as the table.
+	 * Only one idle sample in DRIFT_SAMPLES polls the board (and every sample after a mismatch),
+	 * the others read the table unless it could be old.
+	 * @param snap latest snapshot of the stepper
+	 * @param actual position read from the board
+	 * @return msec until the next sample
+	 */
+	private long checkIdle(StepperSnapshot snap, long actual) {
+		if (actual == snap.getPosition()) {
+			idleMismatch = 0;
+		} else if (++idleMismatch == 2) {		// twice in a row: not just a command on its way
+			flagged = false;
+			fire(PROP_DRIFT, snap.getPosition(), actual);
+		}
+		return IDLE_PERIOD;
+	}
+
+	/**
+	 * Fire a problem, once per move.
+	 * @param prop PROP_DRIFT, PROP_STALL or PROP_MISSED
+	 * @param expected expected position
+	 * @param actual actual position
+	 */
+	private void fire(String prop, long expected, long actual) {
+		if (flagged) {
+			return;
+		}
+		flagged = true;
+		synchronized (lock) {
+			problems++;
+		}
+		System.out.println("StepVerifier " + prop + ": " + stage.getStepper() + " expected " + expected + " actual " + actual);
+		pcs.firePropertyChange(prop, expected, actual);
+	}
+
+	/**
+	 * Add the given PropertyChangeListener to this object.
+	 * @param listener
+	 */
+	public void addPropertyChangeListener(PropertyChangeListener listener) {
+		pcs.addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * Remove the given PropertyChangeListener from this object.
+	 * @param listener
+	 */
+	public void removePropertyChangeListener(PropertyChangeListener listener) {
+		pcs.removePropertyChangeListener(listener);
+	}
+
+	/**
+	 * Wakes the verifier when the stepper starts to move.
+	 */
+	private class StartListener extends StepperAdapter {
+
+		@Override
+		public void onStopped(Stepper s, boolean stopped) {
+			if ((s == stage.getStepper()) && !stopped) {
+				synchronized (lock) {
+					started = true;
+					startNanos = System.nanoTime();
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.stepperboard.api.Latencies;
+import com.billooms.stepperboard.api.LatencyHistogram;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams planned setpoints (target and velocity limit) to a Stage at a fixed rate.
+ * The board only accepts point targets, so smooth or variable-speed motion is sent as
+ * a series of targets, one per period, from a buffer that is filled by a planner
+ * (a single producer thread calls offer, the streamer thread takes).
+ *
+ * The streamer thread waits with LockSupport.parkNanos until shortly before each tick
+ * and spins for the rest (SPIN), so the ticks don't drift and the lateness of each tick
+ * is recorded in the "streamer.S?.jitter" histogram (see Latencies).
+ * If a tick is more than a whole period late, the missed ticks are skipped (counted as overruns)
+ * rather than sent in a burst. A tick with an empty buffer after the first setpoint
+ * and before finish() is an underrun.
+ * The loop doesn't allocate: the buffer is two arrays (primitive longs and doubles),
+ * the histogram is a fixed table, and the targets are streamed to the board
+ * (see Stage.setTargetSteps), so it causes no GC pauses of its own.
+ * A setpoint that changes the velocity limit does allocate (a VLIMIT PropertyChangeEvent
+ * and a future for the command), so a stream should change the velocity limit only when it must.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TrajectoryStreamer {
+
+	/** Default time between setpoints (nsec) */
+	public final static long DEFAULT_PERIOD = 10000000L;	// 10 msec
+	/** Default number of setpoints in the buffer */
+	public final static int DEFAULT_CAPACITY = 1024;
+	/** Time before a tick when the thread stops parking and spins (nsec) */
+	public final static long SPIN = 100000L;				// 0.1 msec
+
+	private final Stage stage;
+	private final long period;
+	private final long[] targets;		// unwrapped targets in steps
+	private final double[] velocities;	// velocity limits in steps/second (0 = don't change)
+	private final int mask;
+	private final LatencyHistogram jitter;
+	private volatile long head = 0;		// next setpoint to send (written only by the streamer thread)
+	private volatile long tail = 0;		// next free place (written only by the producer)
+	private volatile boolean finished = false;	// no more setpoints are coming
+	private volatile boolean running = false;
+	private Thread thread = null;
+	private boolean streaming = false;	// a setpoint was sent and the stream isn't finished (streamer thread only)
+
+	// counters (written only by the streamer thread)
+	private volatile long ticks = 0;
+	private volatile long sent = 0;
+	private volatile long underruns = 0;
+	private volatile long overruns = 0;
+
+	/**
+	 * Create a streamer with the default period and capacity.
+	 * Call start() to start streaming.
+	 * @param stage Stage to feed
+	 */
+	public TrajectoryStreamer(Stage stage) {
+		this(stage, DEFAULT_PERIOD, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a streamer.
+	 * Call start() to start streaming.
+	 * @param stage Stage to feed
+	 * @param period time between setpoints in nanoseconds
+	 * @param capacity number of setpoints in the buffer (rounded up to a power of 2)
+	 */
+	public TrajectoryStreamer(Stage stage, long period, int capacity) {
+		if ((period <= 0) || (capacity <= 0)) {
+			throw new IllegalArgumentException("period " + period + " capacity " + capacity);
+		}
+		this.stage = stage;
+		this.period = period;
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		targets = new long[size];
+		velocities = new double[size];
+		mask = size - 1;
+		jitter = Latencies.get("streamer." + stage.getStepper() + ".jitter");
+	}
+
+	/**
+	 * Get the time between setpoints.
+	 * @return period in nanoseconds
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Get the size of the buffer.
+	 * @return number of setpoints that fit in the buffer
+	 */
+	public int getCapacity() {
+		return targets.length;
+	}
+
+	/**
+	 * Get the number of setpoints waiting in the buffer.
+	 * @return number of setpoints
+	 */
+	public int size() {
+		return (int) (tail - head);
+	}
+
+	/**
+	 * Add a setpoint to the end of the buffer (only one thread may add setpoints).
+	 * @param steps unwrapped target in steps
+	 * @param vel velocity limit in steps/second (0 = don't change it)
+	 * @return true = added, false = the buffer is full
+	 */
+	public boolean offer(long steps, double vel) {
+		long t = tail;
+		if (t - head >= targets.length) {
+			return false;
+		}
+		int i = (int) (t & mask);
+		targets[i] = steps;
+		velocities[i] = vel;
+		finished = false;
+		tail = t + 1;				// volatile write publishes the setpoint
+		return true;
+	}
+
+	/**
+	 * Tell the streamer that no more setpoints are coming, so an empty buffer is not an underrun.
+	 */
+	public void finish() {
+		finished = true;
+	}
+
+	/**
+	 * Check if all the setpoints were sent after finish().
+	 * @return true = finished and the buffer is empty
+	 */
+	public boolean isDone() {
+		return finished && (head == tail);
+	}
+
+	/**
+	 * Start the streamer thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				stream();
+			}
+		}, "TrajectoryStreamer " + stage.getStepper());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Stop the streamer thread (the setpoints left in the buffer are dropped and the stage is stopped).
+	 */
+	public synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(1000);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		head = tail;
+		if (stage.getBoard().isAttached()) {
+			stage.stop();
+		}
+	}
+
+	/**
+	 * Get the number of ticks since the streamer was started.
+	 * @return number of ticks
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Get the number of setpoints sent to the board.
+	 * @return number of setpoints
+	 */
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * Get the number of ticks when the buffer was empty during a stream (before finish()).
+	 * @return number of underruns
+	 */
+	public long getUnderruns() {
+		return underruns;
+	}
+
+	/**
+	 * Get the number of ticks that were skipped because the thread was more than a period late.
+	 * @return number of overruns
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * Get the histogram of the lateness of the ticks.
+	 * @return LatencyHistogram in nanoseconds
+	 */
+	public LatencyHistogram getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * The streamer thread: wait for each tick and send one setpoint.
+	 */
+	private void stream() {
+		long next = System.nanoTime() + period;
+		while (running) {
+			long now = waitUntil(next);
+			if (!running) {
+				return;
+			}
+			jitter.record(now - next);
+			long late = (now - next) / period;
+			if (late > 0) {
+				overruns += late;				// skip the missed ticks
+				next += late * period;
+			}
+			next += period;
+			ticks++;
+			try {
+				tick();
+			} catch (RuntimeException ex) {
+				System.out.println("TrajectoryStreamer: " + ex);
+			}
+		}
+	}
+
+	/**
+	 * Wait until a time: park until SPIN before it, then spin.
+	 * @param deadline System.nanoTime() to wait for
+	 * @return System.nanoTime() after waiting
+	 */
+	private long waitUntil(long deadline) {
+		long now = System.nanoTime();
+		while (running && (deadline - now > SPIN)) {
+			LockSupport.parkNanos(deadline - now - SPIN);
+			now = System.nanoTime();
+		}
+		while (running && (deadline - now > 0)) {
+			now = System.nanoTime();
+		}
+		return now;
+	}
+
+	/**
+	 * Send the next setpoint (if there is one).
+	 */
+	private void tick() {
+		long h = head;
+		if (h == tail) {
+			if (finished) {
+				streaming = false;
+			} else if (streaming) {
+				underruns++;
+			}
+			return;
+		}
+		int i = (int) (h & mask);
+		long steps = targets[i];
+		double vel = velocities[i];
+		head = h + 1;				// the producer can use this place again
+		if (vel > 0.0) {
+			stage.setVelocityLimit(vel);	// only sent if it changed
+		}
+		stage.setTargetSteps(steps);
+		streaming = true;
+		sent++;
+	}
+}
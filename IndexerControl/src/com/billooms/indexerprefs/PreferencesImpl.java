@@ -35,6 +35,7 @@ public class PreferencesImpl implements Preferences {
 	private int wiredTo;	// position on the board that the stepper is wired to 
 	private double current;	// current limit
 	private double accel;	// acceleration micro-pulse/sec^2
+	private int direction;	// direction policy for indexing
 	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 
 	public PreferencesImpl() {
@@ -74,6 +75,11 @@ public class PreferencesImpl implements Preferences {
 	public double getAccel() {
 		return accel;
 	}
+
+	@Override
+	public int getDirection() {
+		return direction;
+	}
 	
 	/**
 	 * Update all values from the last saved preferences
@@ -104,6 +110,9 @@ public class PreferencesImpl implements Preferences {
 		double oldacc = accel;
 		accel = NbPreferences.forModule(PreferencesPanel.class).getDouble("accel", 10.0) * stepsPerRotation / (2.0 * Math.PI);
 		pcs.firePropertyChange(PROP_ACCEL, oldacc, accel);
+		int oldDir = direction;
+		direction = NbPreferences.forModule(PreferencesPanel.class).getInt("direction", 0);
+		pcs.firePropertyChange(PROP_DIRECTION, oldDir, direction);
 	}
 
 	/**
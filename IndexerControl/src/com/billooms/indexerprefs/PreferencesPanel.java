@@ -1,8 +1,8 @@
 
 package com.billooms.indexerprefs;
 
+import com.billooms.indexercontrol.Startup;
 import com.billooms.stepperboard.api.StepperBoard;
-import org.openide.util.Lookup;
 import org.openide.util.NbPreferences;
 
 /**
@@ -31,7 +31,7 @@ final class PreferencesPanel extends javax.swing.JPanel {
 		this.controller = controller;
 		initComponents();
 		// TODO listen to changes in form fields and call controller.changed()		
-		stepBoard = Lookup.getDefault().lookup(StepperBoard.class);
+		stepBoard = Startup.getBoard();		// created and opened by Startup
 	}
 
 	/** This method is called from within the constructor to
@@ -59,6 +59,8 @@ final class PreferencesPanel extends javax.swing.JPanel {
         accelField = new javax.swing.JFormattedTextField();
         jLabel8 = new javax.swing.JLabel();
         jLabel9 = new javax.swing.JLabel();
+        jLabel10 = new javax.swing.JLabel();
+        directionCombo = new javax.swing.JComboBox();
 
         largeField.setColumns(3);
         largeField.setFormatterFactory(new javax.swing.text.DefaultFormatterFactory(new javax.swing.text.NumberFormatter(java.text.NumberFormat.getIntegerInstance())));
@@ -107,6 +109,10 @@ final class PreferencesPanel extends javax.swing.JPanel {
 
         org.openide.awt.Mnemonics.setLocalizedText(jLabel9, org.openide.util.NbBundle.getMessage(PreferencesPanel.class, "PreferencesPanel.jLabel9.text")); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel10, org.openide.util.NbBundle.getMessage(PreferencesPanel.class, "PreferencesPanel.jLabel10.text")); // NOI18N
+
+        directionCombo.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Forward only", "Shortest path", "Shortest path, approach forward" }));
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -145,7 +151,11 @@ final class PreferencesPanel extends javax.swing.JPanel {
                         .addComponent(accelField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(jLabel8))
-                    .addComponent(jLabel9))
+                    .addComponent(jLabel9)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(jLabel10)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(directionCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         layout.setVerticalGroup(
@@ -184,6 +194,10 @@ final class PreferencesPanel extends javax.swing.JPanel {
                     .addComponent(jLabel8))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(jLabel9)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel10)
+                    .addComponent(directionCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
     }// </editor-fold>//GEN-END:initComponents
@@ -196,6 +210,7 @@ final class PreferencesPanel extends javax.swing.JPanel {
 		wiredCombo.setSelectedIndex(NbPreferences.forModule(PreferencesPanel.class).getInt("wired", 0));
 		currentField.setValue(NbPreferences.forModule(PreferencesPanel.class).getDouble("current", 0.0));
 		accelField.setValue(NbPreferences.forModule(PreferencesPanel.class).getInt("accel", 10));
+		directionCombo.setSelectedIndex(NbPreferences.forModule(PreferencesPanel.class).getInt("direction", 0));
 		if (stepBoard.getType() == 0) {
 			microField.setValue(2);
 			wiredCombo.setEnabled(true);
@@ -224,6 +239,7 @@ final class PreferencesPanel extends javax.swing.JPanel {
 		NbPreferences.forModule(PreferencesPanel.class).putInt("wired", wiredCombo.getSelectedIndex());
 		NbPreferences.forModule(PreferencesPanel.class).putDouble("current", ((Number)currentField.getValue()).doubleValue());
 		NbPreferences.forModule(PreferencesPanel.class).putInt("accel", ((Number)accelField.getValue()).intValue());
+		NbPreferences.forModule(PreferencesPanel.class).putInt("direction", directionCombo.getSelectedIndex());
 	}
 
 	boolean valid() {
@@ -239,7 +255,9 @@ final class PreferencesPanel extends javax.swing.JPanel {
     private javax.swing.JFormattedTextField accelField;
     private javax.swing.JLabel boardLabel;
     private javax.swing.JFormattedTextField currentField;
+    private javax.swing.JComboBox directionCombo;
     private javax.swing.JLabel jLabel1;
+    private javax.swing.JLabel jLabel10;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
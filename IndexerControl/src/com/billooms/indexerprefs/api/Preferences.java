@@ -28,6 +28,7 @@ public interface Preferences {
 	String PROP_STEPSPERROTATION = PROP_PREFIX + "stepsPerRotation";
 	String PROP_CURRENT = PROP_PREFIX + "Current";
 	String PROP_ACCEL = PROP_PREFIX + "Acceleration";
+	String PROP_DIRECTION = PROP_PREFIX + "Direction";
 	
 	/**
 	 * Get the number of micro-steps per revolution of the spindle.
@@ -60,6 +61,13 @@ public interface Preferences {
 	 */
 	double getAccel();
 	
+	/**
+	 * Get the direction policy for indexing 
+	 * (0=forward only, 1=shortest path, 2=shortest path with a single approach direction).
+	 * @return index of the policy (see RotationStage.DirectionPolicy)
+	 */
+	int getDirection();
+	
 	/**
 	 * Update all values from the last saved preferences
 	 */
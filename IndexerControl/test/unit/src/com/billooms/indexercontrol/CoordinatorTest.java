@@ -0,0 +1,113 @@
+package com.billooms.indexercontrol;
+
+import com.billooms.stepperboard.api.StepperAdapter;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.sim.SimulatedStepperBoard;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a Coordinator keeps the follower on its AxisLink while the master moves,
+ * on a simulated 1062 board running in real time.
+ * The board limits the positions for the display (like the real board), and the follower
+ * must still get many more master positions than the display.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class CoordinatorTest {
+
+	private final static long STEPS_PER_ROTATION = 800;
+	private final static long MAX_ERROR = 3;		// steps the follower may lag while moving (the two reads aren't at the same time)
+
+	private SimulatedStepperBoard board;
+	private Stage master;
+	private LinearStage follower;
+	private volatile int displayed = 0;		// master positions the display got
+
+	@Before
+	public void setUp() {
+		board = new SimulatedStepperBoard(0, true);
+		board.open();
+		for (Stepper s : new Stepper[] {Stepper.S0, Stepper.S1}) {
+			board.setAcceleration(s, board.getMaxAcceleration());
+			board.setEngaged(s, true);
+		}
+		master = new Stage(board, Stepper.S0);
+		master.getTracker().setPeriod(STEPS_PER_ROTATION);
+		master.setVelocityLimit(380.0);
+		follower = new LinearStage(board, Stepper.S1, 4000.0);
+	}
+
+	@After
+	public void tearDown() {
+		board.close();
+	}
+
+	@Test
+	public void testGearLink() throws Exception {
+		check(GearLink.lead(-100, STEPS_PER_ROTATION, 0, 0));
+	}
+
+	@Test
+	public void testRosette() throws Exception {
+		check(CamTable.rosette(6, 20, 360, STEPS_PER_ROTATION, 0, 0));
+	}
+
+	/**
+	 * Move the master two rotations with the follower linked,
+	 * and check the follower's error during and after the move.
+	 * @param link AxisLink to check
+	 */
+	private void check(AxisLink link) throws Exception {
+		Coordinator c = new Coordinator(master, follower, link);
+		StepperAdapter display = new StepperAdapter() {
+			@Override
+			public void onPosition(Stepper s, long position, long nanoTime) {
+				if (s == Stepper.S0) {
+					displayed++;			// only the board's event thread writes this
+				}
+			}
+		};
+		board.addStepperListener(display);
+		c.start();
+		try {
+			long start = System.nanoTime();
+			CompletableFuture<MoveResult> move = master.moveTo(2 * STEPS_PER_ROTATION);
+			long maxError = 0;
+			while (!move.isDone()) {
+				long m = master.getPositionSteps();
+				maxError = Math.max(maxError, Math.abs(link.getTarget(m) - follower.getPositionSteps()));
+				Thread.sleep(5);
+			}
+			move.get(1, TimeUnit.SECONDS);
+			double seconds = (System.nanoTime() - start) / 1.0E9;
+			Thread.sleep(300);		// let the follower finish its last target
+			assertTrue(link + ": follower error " + maxError + " while moving", maxError <= MAX_ERROR);
+			assertEquals(link + ": follower at the end", link.getTarget(master.getPositionSteps()), follower.getPositionSteps());
+			assertTrue(link + ": display got " + displayed + " positions in " + seconds + " sec",
+					displayed <= (int) (seconds * SimulatedStepperBoard.DEFAULT_DISPLAY_RATE) + 2);
+			long followed = c.getUpdates() + c.getSkipped();	// master positions the Coordinator got
+			assertTrue(link + ": Coordinator got " + followed + " positions, display got " + displayed,
+					followed > 2 * displayed);
+		} finally {
+			c.stop();
+			board.removeStepperListener(display);
+		}
+	}
+}
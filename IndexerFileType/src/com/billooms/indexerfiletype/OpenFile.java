@@ -6,6 +6,7 @@ package com.billooms.indexerfiletype;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.EventQueue;
 import java.io.File;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.openide.DialogDescriptor;
@@ -25,6 +26,7 @@ import org.openide.loaders.DataObjectNotFoundException;
 import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
 import org.openide.util.NbBundle.Messages;
+import org.openide.util.NbPreferences;
 
 /**
  * Action to open an Indexer xml file
@@ -55,6 +57,8 @@ displayName = "#CTL_OpenFile")
 @Messages("CTL_OpenFile=Open XML File...")
 public final class OpenFile implements ActionListener {
 	private final static String EXTENSION = "xml";
+	/** NbPreferences key for the path of the most recently opened file */
+	final static String PREF_LASTFILE = "lastFile";
 
 	/** The most recently opened file */
 	protected static File openedFile = null;
@@ -104,7 +108,7 @@ public final class OpenFile implements ActionListener {
 	 * @param file the given file
 	 * @return the numerical suffix, or 0 if there is none
 	 */
-	private static int findSuffix(File file) {
+	static int findSuffix(File file) {
 		String str = file.getName().replace("." + EXTENSION, "");
 		int i = str.lastIndexOf("_");
 		if (i < 0) {
@@ -125,26 +129,59 @@ public final class OpenFile implements ActionListener {
 	 * @param file File to open
 	 */
 	protected static void open(File file) {
-		if (file != null) {
-			FileObject fo = FileUtil.toFileObject(FileUtil.normalizeFile(file));
-			if (!fo.getMIMEType().equals(NbBundle.getMessage(OpenFile.class, "MIMETYPE"))) {
-				NotifyDescriptor d = new NotifyDescriptor.Message(
-						"File " + file.getName() + " is not an Indexer xml file!",
-						NotifyDescriptor.ERROR_MESSAGE);
+		open(file, find(file));
+	}
+
+	/**
+	 * Find (or create) the DataObject for the given file.
+	 * This doesn't read the file, so it can be done on any thread
+	 * (an error is shown on the EDT).
+	 * @param file File to open
+	 * @return DataObject for the file, or null if it is not an Indexer xml file
+	 */
+	static DataObject find(File file) {
+		if (file == null) {
+			return null;
+		}
+		FileObject fo = FileUtil.toFileObject(FileUtil.normalizeFile(file));
+		if ((fo == null) || !fo.getMIMEType().equals(NbBundle.getMessage(OpenFile.class, "MIMETYPE"))) {
+			final NotifyDescriptor d = new NotifyDescriptor.Message(
+					"File " + file.getName() + " is not an Indexer xml file!",
+					NotifyDescriptor.ERROR_MESSAGE);
+			if (EventQueue.isDispatchThread()) {
 				DialogDisplayer.getDefault().notify(d);
-				return;
+			} else {
+				EventQueue.invokeLater(new Runnable() {	// dialogs only on the EDT (find is used at startup)
+					@Override
+					public void run() {
+						DialogDisplayer.getDefault().notify(d);
+					}
+				});
 			}
-			try {
-				dObj = DataObject.find(fo);		// this creates the DataObject for the file
-				
-				OpenCookie openCookie = dObj.getLookup().lookup(OpenCookie.class);
-				if (openCookie != null) {		// this should always be the case
-					openCookie.open();			// this is what reads the xml file to the IndexerMgr
-					openedFile = file;			// this is the last file opened
-					StatusDisplayer.getDefault().setStatusText("Open File: " + file.getName());
-				}
-			} catch (DataObjectNotFoundException ex) {
-				Exceptions.printStackTrace(ex);
+			return null;
+		}
+		try {
+			return DataObject.find(fo);		// this creates the DataObject for the file
+		} catch (DataObjectNotFoundException ex) {
+			Exceptions.printStackTrace(ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Read the xml of the given file into the IndexWheelMgr (on the EDT).
+	 * @param file File to open
+	 * @param dataObj DataObject for the file (from find)
+	 */
+	static void open(File file, DataObject dataObj) {
+		if (dataObj != null) {
+			dObj = dataObj;
+			OpenCookie openCookie = dObj.getLookup().lookup(OpenCookie.class);
+			if (openCookie != null) {		// this should always be the case
+				openCookie.open();			// this is what reads the xml file to the IndexerMgr
+				openedFile = file;			// this is the last file opened
+				NbPreferences.forModule(OpenFile.class).put(PREF_LASTFILE, file.getPath());	// open it again next time
+				StatusDisplayer.getDefault().setStatusText("Open File: " + file.getName());
 			}
 		}
 	}
@@ -0,0 +1,64 @@
+package com.billooms.indexerfiletype;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import org.openide.loaders.DataObject;
+import org.openide.util.Exceptions;
+import org.openide.util.NbPreferences;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Startup phase to open the most recently opened file again.
+ * The DataObject is found on the startup thread, then the xml is read on the EDT
+ * (because the IndexWheelMgr's listeners change the display).
+ * This runs in parallel with the other startup phases of the Indexer.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = Runnable.class, path = "Indexer/Startup")
+public class ReopenLastFile implements Runnable {
+
+	@Override
+	public void run() {
+		String path = NbPreferences.forModule(OpenFile.class).get(OpenFile.PREF_LASTFILE, null);
+		if (path == null) {
+			return;
+		}
+		final File file = new File(path);
+		if (!file.isFile() || (OpenFile.openedFile != null)) {
+			return;				// gone, or something was opened already
+		}
+		final DataObject dataObj = OpenFile.find(file);
+		if (dataObj == null) {
+			return;
+		}
+		try {
+			EventQueue.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					if (OpenFile.openedFile == null) {
+						OpenFile.suffix = OpenFile.findSuffix(file);
+						OpenFile.open(file, dataObj);
+					}
+				}
+			});
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (InvocationTargetException ex) {
+			Exceptions.printStackTrace(ex);
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package com.billooms.stepperboard;
+
+import com.billooms.stepperboard.api.StepperBoard.Props;
+import com.phidgets.PhidgetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Writes commands to the board on its own thread so that the caller
+ * (usually the EDT) never waits for the USB.
+ * Commands wait in a bounded FIFO queue and are written in order, except that:
+ * a new VLIMIT, ALIMIT, TARGET or CLIMIT command replaces a waiting command of the same
+ * kind for the same stepper (so a slider drag only writes the last value), and
+ * a command whose value is what the board already has is not written at all.
+ * ENGAGED and POSITION commands are always written, and commands are never merged across them.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+class CommandExecutor {
+
+	/** Maximum number of waiting commands (callers wait when it is full) */
+	final static int CAPACITY = 64;
+	/** Future for a command that didn't need to be written */
+	final static Future<Boolean> NOT_WRITTEN = CompletableFuture.completedFuture(Boolean.FALSE);
+	private final static Props[] PROPS = Props.values();
+
+	/**
+	 * Does the actual writing (on the executor thread).
+	 */
+	interface Writer {
+		/**
+		 * Write a command to the board.
+		 * @param kind ENGAGED, POSITION, TARGET, VLIMIT, ALIMIT or CLIMIT
+		 * @param n stepper index
+		 * @param value new value (ENGAGED is 1.0 for true, 0.0 for false)
+		 * @throws PhidgetException
+		 */
+		void write(Props kind, int n, double value) throws PhidgetException;
+
+		/**
+		 * Report a command that could not be written.
+		 * @param kind kind of command
+		 * @param n stepper index
+		 * @param ex the exception
+		 */
+		void failed(Props kind, int n, PhidgetException ex);
+	}
+
+	private final Writer writer;
+	private final Object lock = new Object();
+
+	// waiting commands
+	private final Props[] kind = new Props[CAPACITY];
+	private final int[] stepper = new int[CAPACITY];
+	private final double[] value = new double[CAPACITY];
+	private final List<CompletableFuture<Boolean>> future = new ArrayList<CompletableFuture<Boolean>>(
+			Collections.<CompletableFuture<Boolean>>nCopies(CAPACITY, null));
+	private long head = 0;		// next command to write
+	private long tail = 0;		// next free slot
+	private boolean writing = false;	// a command has been taken and is being written
+
+	// what the board has (acked) and what it will have after the queue is written (expected)
+	private final double[][] acked;
+	private final double[][] expected;
+	private long written = 0;		// commands written to the board
+	private long merged = 0;		// commands replaced by a later one
+	private long skipped = 0;		// commands with the value the board already had
+
+	private volatile boolean running = true;
+	private final Thread thread;
+
+	/**
+	 * Create and start a command executor.
+	 * @param name name of the executor thread
+	 * @param nSteppers maximum number of steppers
+	 * @param writer writes the commands to the board
+	 */
+	CommandExecutor(String name, int nSteppers, Writer writer) {
+		this.writer = writer;
+		acked = new double[PROPS.length][nSteppers];
+		expected = new double[PROPS.length][nSteppers];
+		forget();
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				execute();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Submit a command.
+	 * @param k ENGAGED, POSITION, TARGET, VLIMIT, ALIMIT or CLIMIT
+	 * @param n stepper index
+	 * @param v new value (ENGAGED is 1.0 for true, 0.0 for false)
+	 * @return future that is true when the command has been written, 
+	 * false if it was not needed. If the command replaces a waiting command, 
+	 * this is the waiting command's future, which is true when the new value is written.
+	 */
+	Future<Boolean> submit(Props k, int n, double v) {
+		return enqueue(k, n, v, true);
+	}
+
+	/**
+	 * Submit a command without a future (for streamed targets, so nothing is allocated per command).
+	 * The command is merged, skipped and written like a submitted command.
+	 * @param k ENGAGED, POSITION, TARGET, VLIMIT, ALIMIT or CLIMIT
+	 * @param n stepper index
+	 * @param v new value (ENGAGED is 1.0 for true, 0.0 for false)
+	 */
+	void post(Props k, int n, double v) {
+		enqueue(k, n, v, false);
+	}
+
+	/**
+	 * Put a command in the queue.
+	 * @param k kind of command
+	 * @param n stepper index
+	 * @param v new value
+	 * @param track true = the command needs a future (see submit)
+	 * @return future of the command (null if it isn't tracked and has no future)
+	 */
+	private Future<Boolean> enqueue(Props k, int n, double v, boolean track) {
+		boolean mergeable = (k != Props.ENGAGED) && (k != Props.POSITION);
+		synchronized (lock) {
+			if (mergeable) {
+				for (long i = tail - 1; i >= head; i--) {	// newest first
+					int j = (int) (i % CAPACITY);
+					if (stepper[j] == n) {
+						if (kind[j] == k) {
+							value[j] = v;		// replace the waiting command
+							expected[k.ordinal()][n] = v;
+							merged++;
+							if (track && (future.get(j) == null)) {	// it was posted
+								future.set(j, new CompletableFuture<Boolean>());
+							}
+							return future.get(j);
+						}
+						if ((kind[j] == Props.ENGAGED) || (kind[j] == Props.POSITION)) {
+							break;				// don't jump ahead of these
+						}
+					}
+				}
+				if (expected[k.ordinal()][n] == v) {
+					skipped++;
+					return NOT_WRITTEN;
+				}
+			}
+			while (running && (tail - head == CAPACITY)) {
+				try {
+					lock.wait();			// full: wait for the board to catch up
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return NOT_WRITTEN;
+				}
+			}
+			int j = (int) (tail % CAPACITY);
+			kind[j] = k;
+			stepper[j] = n;
+			value[j] = v;
+			future.set(j, track ? new CompletableFuture<Boolean>() : null);
+			tail++;
+			expected[k.ordinal()][n] = v;
+			if (k == Props.POSITION) {
+				expected[Props.TARGET.ordinal()][n] = Double.NaN;		// might have changed
+			}
+			lock.notifyAll();
+			return future.get(j);
+		}
+	}
+
+	/**
+	 * Record a value that was written to the board directly (not with submit).
+	 * @param k kind of command
+	 * @param n stepper index
+	 * @param v value the board has
+	 */
+	void acknowledge(Props k, int n, double v) {
+		synchronized (lock) {
+			acked[k.ordinal()][n] = v;
+			expected[k.ordinal()][n] = v;
+		}
+	}
+
+	/**
+	 * Check if the board is known to have the given value.
+	 * @param k kind of command
+	 * @param n stepper index
+	 * @param v value
+	 * @return true if this value was the last one written (or acknowledged)
+	 */
+	boolean isAcknowledged(Props k, int n, double v) {
+		synchronized (lock) {
+			return acked[k.ordinal()][n] == v;
+		}
+	}
+
+	/**
+	 * Check if a command of the given kind is waiting to be written (or being written).
+	 * @param k kind of command
+	 * @param n stepper index
+	 * @return true if the board doesn't have the last submitted value yet
+	 */
+	boolean isPending(Props k, int n) {
+		synchronized (lock) {
+			return Double.doubleToLongBits(expected[k.ordinal()][n]) != Double.doubleToLongBits(acked[k.ordinal()][n]);
+		}
+	}
+
+	/**
+	 * Forget what the board has (for example after it is attached again),
+	 * so that the next command of each kind is always written.
+	 */
+	final void forget() {
+		synchronized (lock) {
+			for (int k = 0; k < acked.length; k++) {
+				for (int n = 0; n < acked[k].length; n++) {
+					acked[k][n] = Double.NaN;		// NaN is never equal to anything
+					expected[k][n] = Double.NaN;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait until all the waiting commands have been written.
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return true=all written, false=timed out
+	 */
+	boolean flush(long timeout) {
+		long end = System.currentTimeMillis() + timeout;
+		synchronized (lock) {
+			while (running && ((head != tail) || writing)) {
+				long rest = end - System.currentTimeMillis();
+				if (rest <= 0) {
+					return false;
+				}
+				try {
+					lock.wait(rest);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Get the number of commands written to the board.
+	 * @return number written
+	 */
+	long getWritten() {
+		synchronized (lock) {
+			return written;
+		}
+	}
+
+	/**
+	 * Get the number of commands that were replaced by a later command before being written.
+	 * @return number merged
+	 */
+	long getMerged() {
+		synchronized (lock) {
+			return merged;
+		}
+	}
+
+	/**
+	 * Get the number of commands that were not written because the board already had the value.
+	 * @return number skipped
+	 */
+	long getSkipped() {
+		synchronized (lock) {
+			return skipped;
+		}
+	}
+
+	/**
+	 * Stop the executor thread (waiting commands are not written).
+	 */
+	void stop() {
+		running = false;
+		thread.interrupt();
+	}
+
+	/**
+	 * The executor thread: take the oldest command and write it.
+	 */
+	private void execute() {
+		while (running) {
+			Props k;
+			int n;
+			double v;
+			CompletableFuture<Boolean> f;
+			boolean needed;
+			synchronized (lock) {
+				while (running && (head == tail)) {
+					try {
+						lock.wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+				if (!running) {
+					return;
+				}
+				int j = (int) (head % CAPACITY);
+				k = kind[j];
+				n = stepper[j];
+				v = value[j];
+				f = future.set(j, null);
+				head++;
+				needed = (k == Props.ENGAGED) || (k == Props.POSITION) || (acked[k.ordinal()][n] != v);
+				if (!needed) {
+					skipped++;
+				}
+				writing = needed;
+				lock.notifyAll();		// there is room now
+			}
+			if (!needed) {
+				if (f != null) {
+					f.complete(Boolean.FALSE);
+				}
+				continue;
+			}
+			try {
+				writer.write(k, n, v);
+				synchronized (lock) {
+					acked[k.ordinal()][n] = v;
+					if (k == Props.POSITION) {
+						acked[Props.TARGET.ordinal()][n] = Double.NaN;
+					}
+					written++;
+					writing = false;
+					lock.notifyAll();
+				}
+				if (f != null) {
+					f.complete(Boolean.TRUE);
+				}
+			} catch (PhidgetException ex) {
+				synchronized (lock) {
+					acked[k.ordinal()][n] = Double.NaN;		// don't know what the board has now
+					expected[k.ordinal()][n] = Double.NaN;
+					writing = false;
+					lock.notifyAll();
+				}
+				writer.failed(k, n, ex);
+				if (f != null) {
+					f.completeExceptionally(ex);
+				}
+			} catch (RuntimeException ex) {
+				synchronized (lock) {
+					writing = false;
+					lock.notifyAll();
+				}
+				if (f != null) {
+					f.completeExceptionally(ex);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package com.billooms.stepperboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.Icon;
+import org.openide.awt.Notification;
+import org.openide.awt.NotificationDisplayer;
+import org.openide.awt.StatusDisplayer;
+import org.openide.util.ImageUtilities;
+
+/**
+ * Reports errors of a StepperBoard without stopping the thread that had the error.
+ * Reporting an error only counts it and wakes the reporter thread:
+ * the message is shown later on the reporter thread, in the status line and the
+ * notification area (no dialog), so the Phidget and command threads keep running.
+ * Errors are counted for each call site (for example "StepperBoard.getCurrentPosition"),
+ * and a call site is shown at most once per interval. The interval doubles each time
+ * the site is shown (up to MAX_INTERVAL), and starts again at MIN_INTERVAL when the site
+ * has been quiet for MAX_INTERVAL. A message includes the number of errors since it was last shown.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+class ErrorReporter {
+
+	/** Shortest time between messages from one call site (msec) */
+	final static long MIN_INTERVAL = 1000L;
+	/** Longest time between messages from one call site (msec) */
+	final static long MAX_INTERVAL = 5 * 60 * 1000L;
+	private final static String ICON = "com/billooms/stepperboard/yellow_20.png";
+
+	private final String title;
+	private final ConcurrentMap<String, Site> sites = new ConcurrentHashMap<String, Site>();
+	private final Object lock = new Object();
+	private boolean pending = false;		// some site has an error that hasn't been shown
+	private volatile boolean running = true;
+	private final Thread thread;
+	private Icon icon = null;
+
+	/**
+	 * Errors of one call site.
+	 */
+	private static class Site {
+		final String name;
+		final AtomicLong count = new AtomicLong();	// all errors
+		volatile String message;					// latest message
+		volatile boolean waiting = false;			// has errors that haven't been shown
+		// used only on the reporter thread
+		long shownCount = 0;			// count when last shown
+		long lastShown = 0;				// when last shown (msec)
+		long interval = MIN_INTERVAL;	// time until it can be shown again
+		Notification notification = null;
+
+		Site(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Create and start an error reporter.
+	 * @param name name of the reporter thread
+	 * @param title title of the notifications
+	 */
+	ErrorReporter(String name, String title) {
+		this.title = title;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				show();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Report an error.
+	 * This can be called on any thread, and doesn't wait for the message to be shown.
+	 * @param site call site (for example "StepperBoard.getCurrentPosition")
+	 * @param message description of the error
+	 */
+	void report(String site, String message) {
+		Site s = sites.get(site);
+		if (s == null) {
+			Site created = new Site(site);
+			s = sites.putIfAbsent(site, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		s.count.incrementAndGet();
+		s.message = message;
+		if (!s.waiting) {
+			s.waiting = true;
+			synchronized (lock) {
+				pending = true;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Get the number of errors of a call site.
+	 * @param site call site
+	 * @return number of errors
+	 */
+	long getCount(String site) {
+		Site s = sites.get(site);
+		return (s == null) ? 0L : s.count.get();
+	}
+
+	/**
+	 * Get the call sites that have had errors.
+	 * @return sorted list of call sites
+	 */
+	List<String> getSites() {
+		List<String> list = new ArrayList<String>(sites.keySet());
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * Stop the reporter thread.
+	 */
+	void stop() {
+		running = false;
+		thread.interrupt();
+	}
+
+	/**
+	 * The reporter thread:
+	 * show each waiting site when its interval is up, then wait for the next.
+	 */
+	private void show() {
+		while (running) {
+			long wait = 0L;			// 0 = until the next report
+			synchronized (lock) {
+				pending = false;
+			}
+			long now = System.currentTimeMillis();
+			for (Site s : sites.values()) {
+				if (!s.waiting) {
+					continue;
+				}
+				long due = s.lastShown + s.interval;
+				if ((s.lastShown == 0) || (now >= due)) {
+					display(s, now);
+				} else if ((wait == 0L) || (due - now < wait)) {
+					wait = due - now;
+				}
+			}
+			synchronized (lock) {
+				try {
+					while (running && !pending) {
+						lock.wait(wait);
+						if (wait > 0L) {
+							break;
+						}
+					}
+				} catch (InterruptedException ex) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Show the errors of a site (on the reporter thread).
+	 * @param s Site
+	 * @param now current time (msec)
+	 */
+	private void display(Site s, long now) {
+		s.waiting = false;
+		long total = s.count.get();
+		long since = total - s.shownCount;
+		if (since == 0) {
+			return;				// already shown
+		}
+		if ((s.lastShown != 0) && (now - s.lastShown > MAX_INTERVAL)) {
+			s.interval = MIN_INTERVAL;		// quiet for a long time: start again
+		} else if (s.lastShown != 0) {
+			s.interval = Math.min(2 * s.interval, MAX_INTERVAL);
+		}
+		s.shownCount = total;
+		s.lastShown = now;
+		String text = s.name + ": " + s.message
+				+ ((since > 1) ? (" (" + since + " times, " + total + " in all)") : ((total > 1) ? (" (" + total + " in all)") : ""));
+		System.out.println(title + " " + text);
+		StatusDisplayer.getDefault().setStatusText(title + " " + text, StatusDisplayer.IMPORTANCE_ERROR_HIGHLIGHT);
+		if (s.notification != null) {
+			s.notification.clear();			// only the latest for each site
+		}
+		if (icon == null) {
+			icon = ImageUtilities.loadImageIcon(ICON, false);
+		}
+		s.notification = NotificationDisplayer.getDefault().notify(title + " " + s.name, icon, text, null,
+				NotificationDisplayer.Priority.HIGH);
+	}
+}
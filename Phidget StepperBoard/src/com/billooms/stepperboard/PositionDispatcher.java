@@ -0,0 +1,226 @@
+package com.billooms.stepperboard;
+
+import org.openide.util.Exceptions;
+
+/**
+ * Moves stepper position events off the Phidget callback thread.
+ * The callback thread only time-stamps each raw event into a bounded ring
+ * (which never blocks: when the ring is full the oldest event is dropped).
+ * A separate thread drains the ring, keeps only the latest position of each stepper,
+ * gives those to the control listeners right away, and delivers them to the display
+ * (the other listeners) no more often than the maximum event rate.
+ * A slow listener therefore only delays the next delivery, never the hardware.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+class PositionDispatcher {
+
+	/** System property for the maximum delivery rate (deliveries per second) */
+	final static String PROP_MAX_RATE = "com.billooms.stepperboard.maxEventRate";
+	/** Default maximum delivery rate to the display -- plenty for the display, too slow for control */
+	final static double DEFAULT_MAX_RATE = 30.0;
+	private final static long STOP_TIMEOUT = 1000;	// msec to wait for the thread to stop
+	private final static int RING_SIZE = 256;		// must be a power of 2
+
+	/**
+	 * Receiver of the coalesced events.
+	 */
+	interface Receiver {
+		/**
+		 * Give the latest position of a stepper to control (on the dispatcher thread, not rate limited).
+		 * @param n stepper index
+		 * @param pos latest position
+		 * @param nanoTime System.nanoTime() when the raw event arrived
+		 */
+		void control(int n, long pos, long nanoTime);
+
+		/**
+		 * Deliver the latest position of a stepper to the display (on the dispatcher thread).
+		 * @param n stepper index
+		 * @param pos latest position
+		 * @param nanoTime System.nanoTime() when the raw event arrived
+		 */
+		void deliver(int n, long pos, long nanoTime);
+
+		/**
+		 * Called after all the pending positions have been delivered.
+		 */
+		void delivered();
+	}
+
+	private final Receiver receiver;
+	private final Object lock = new Object();
+
+	// raw events, written by the callback thread
+	private final int[] ringStepper = new int[RING_SIZE];
+	private final long[] ringPos = new long[RING_SIZE];
+	private final long[] ringTime = new long[RING_SIZE];
+	private long head = 0;		// next slot to write
+	private long tail = 0;		// next slot to read
+	private long dropped = 0;	// raw events lost because the ring was full
+
+	// latest value of each stepper, used only by the dispatcher thread
+	private final boolean[] fresh;		// not given to control yet
+	private final boolean[] pending;	// not delivered to the display yet
+	private final long[] latestPos;
+	private final long[] latestTime;
+
+	private volatile long minPeriod;	// nanoseconds between deliveries
+	private volatile boolean running = true;
+	private final Thread thread;
+
+	/**
+	 * Create and start a dispatcher.
+	 * @param name name of the dispatcher thread
+	 * @param nSteppers maximum number of steppers
+	 * @param receiver receiver of the coalesced events
+	 */
+	PositionDispatcher(String name, int nSteppers, Receiver receiver) {
+		this.receiver = receiver;
+		fresh = new boolean[nSteppers];
+		pending = new boolean[nSteppers];
+		latestPos = new long[nSteppers];
+		latestTime = new long[nSteppers];
+		setMaxRate(Double.parseDouble(System.getProperty(PROP_MAX_RATE, Double.toString(DEFAULT_MAX_RATE))));
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				dispatch();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Set the maximum rate at which events are delivered to the display.
+	 * @param perSecond deliveries per second (0 or less means no limit)
+	 */
+	final void setMaxRate(double perSecond) {
+		minPeriod = (perSecond > 0.0) ? (long) (1.0E9 / perSecond) : 0L;
+	}
+
+	/**
+	 * Get the number of raw events that were lost because the ring was full.
+	 * @return number of dropped events
+	 */
+	long getDropped() {
+		synchronized (lock) {
+			return dropped;
+		}
+	}
+
+	/**
+	 * Post a raw position event.
+	 * This is called on the callback thread and never blocks for long.
+	 * @param n stepper index
+	 * @param pos new position
+	 */
+	void post(int n, long pos) {
+		long t = System.nanoTime();
+		synchronized (lock) {
+			if (head - tail == RING_SIZE) {
+				tail++;				// full: drop the oldest
+				dropped++;
+			}
+			int i = (int) (head & (RING_SIZE - 1));
+			ringStepper[i] = n;
+			ringPos[i] = pos;
+			ringTime[i] = t;
+			head++;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stop the dispatcher thread and wait for it to finish delivering.
+	 * After this returns the Receiver isn't called again
+	 * (unless this is called on the dispatcher thread itself, or the thread doesn't finish within STOP_TIMEOUT).
+	 */
+	void stop() {
+		running = false;
+		thread.interrupt();
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join(STOP_TIMEOUT);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * The dispatcher thread:
+	 * wait for events, keep the latest for each stepper, give them to control,
+	 * and deliver them to the display when a period has passed since the last delivery.
+	 */
+	private void dispatch() {
+		boolean waiting = false;		// positions are waiting for the display
+		long nextDisplay = 0L;			// System.nanoTime() when the display can get them
+		while (running) {
+			synchronized (lock) {
+				while (running && (head == tail)) {
+					long rest = nextDisplay - System.nanoTime();
+					try {
+						if (!waiting) {
+							lock.wait();
+						} else if (rest > 0) {
+							lock.wait(rest / 1000000L, (int) (rest % 1000000L));
+						} else {
+							break;				// time for the display
+						}
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+				if (!running) {
+					return;
+				}
+				while (tail != head) {			// latest value wins
+					int i = (int) (tail & (RING_SIZE - 1));
+					int n = ringStepper[i];
+					fresh[n] = true;
+					pending[n] = true;
+					latestPos[n] = ringPos[i];
+					latestTime[n] = ringTime[i];
+					tail++;
+				}
+			}
+			waiting = true;
+			try {
+				for (int n = 0; n < fresh.length; n++) {
+					if (fresh[n]) {
+						fresh[n] = false;
+						receiver.control(n, latestPos[n], latestTime[n]);
+					}
+				}
+				long now = System.nanoTime();
+				if (now - nextDisplay >= 0) {
+					waiting = false;
+					nextDisplay = now + minPeriod;
+					for (int n = 0; n < pending.length; n++) {
+						if (pending[n]) {
+							pending[n] = false;
+							receiver.deliver(n, latestPos[n], latestTime[n]);
+						}
+					}
+					receiver.delivered();
+				}
+			} catch (RuntimeException ex) {
+				Exceptions.printStackTrace(ex);		// a bad listener must not stop the dispatcher
+			}
+		}
+	}
+}
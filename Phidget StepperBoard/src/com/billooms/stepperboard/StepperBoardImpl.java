@@ -1,9 +1,16 @@
 
 package com.billooms.stepperboard;
 
+import com.billooms.stepperboard.api.Latencies;
+import com.billooms.stepperboard.api.LatencyHistogram;
 import com.billooms.stepperboard.api.StepperBoard;
 import com.billooms.stepperboard.api.StepperBoard.Props;
 import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.StepperBoardRegistry;
+import com.billooms.stepperboard.api.StepperListener;
+import com.billooms.stepperboard.api.StepperListenerSupport;
+import com.billooms.stepperboard.api.StepperSnapshot;
+import com.billooms.stepperboard.journal.EventJournal;
 import com.phidgets.PhidgetException;
 import com.phidgets.StepperPhidget;
 import com.phidgets.event.AttachEvent;
@@ -22,8 +29,14 @@ import com.phidgets.event.StepperVelocityChangeEvent;
 import com.phidgets.event.StepperVelocityChangeListener;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import org.openide.DialogDisplayer;
-import org.openide.NotifyDescriptor;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.openide.util.lookup.ServiceProvider;
 
 /**
@@ -46,12 +59,13 @@ import org.openide.util.lookup.ServiceProvider;
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-@ServiceProvider(service = StepperBoard.class)
+@ServiceProvider(service = StepperBoard.class, position = 100)
 public class StepperBoardImpl implements StepperBoard {
 
 	// Saved States from ChangeListeners
 	private final static int MAXSTEPPERS = 4;
 	private final static int MAXINPUTS = 4;
+	private final static long CLOSE_TIMEOUT = 2000;		// msec to wait for commands on close
     private final static String[] boardName = {"1062", "1063", "1067"};
 	private boolean inputState[] = new boolean[MAXINPUTS];
 	private boolean engaged[] = new boolean[MAXSTEPPERS];
@@ -63,14 +77,38 @@ public class StepperBoardImpl implements StepperBoard {
 	private double aLimit[] = new double[MAXSTEPPERS];
 	private double[] current = new double[MAXSTEPPERS];
 	private double[] cLimit = new double[MAXSTEPPERS];
+	private long[] positionTime = new long[MAXSTEPPERS];	// when position[] was last known (0 = not known)
+	private final Object snapLock = new Object();		// held while the tables for snapshots are changed
+	private final AtomicReferenceArray<StepperSnapshot> snapshot = new AtomicReferenceArray<StepperSnapshot>(MAXSTEPPERS);
 	
 	private int nSteppers;
 	private int nInputs;
 	private int type;			// 0 is 1062; 1 is 1063; 2 is 1067
+	private volatile int serial;	// serial number (-1 until attached when opening any board)
 	private StepperPhidget stepPhidget;
 	private double maxVelocity, minVelocity;
 	private double maxAccel, minAccel;
 	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+	private StepperListenerSupport sls = new StepperListenerSupport(pcs);
+	private PositionDispatcher dispatcher;
+	private CommandExecutor executor;
+	private EventJournal journal;		// records all events and commands
+	private final ErrorReporter errors;	// shows errors without stopping the thread that had them
+	private final int openSerial;		// serial number to open (or StepperBoardRegistry.ANY)
+	private final String histogramPrefix;	// names of the latency histograms (from openSerial, so it doesn't change on attach)
+	private boolean opened = false;
+	private final Map<Props, LatencyHistogram[]> writeTime = new EnumMap<Props, LatencyHistogram[]>(Props.class);	// JNI time of commands
+	private final LatencyHistogram[] firstMoveTime = new LatencyHistogram[MAXSTEPPERS];	// new target to first position change
+	private final LatencyHistogram[] moveTime = new LatencyHistogram[MAXSTEPPERS];		// new target to stopped
+	private final LatencyHistogram[] positionRate = new LatencyHistogram[MAXSTEPPERS];	// raw position events per second
+	private final AtomicLongArray firstMoveStart = new AtomicLongArray(MAXSTEPPERS);	// 0 when not waiting
+	private final AtomicLongArray moveStart = new AtomicLongArray(MAXSTEPPERS);			// 0 when not moving
+	private final LatencyHistogram[] positionReadTime = new LatencyHistogram[MAXSTEPPERS];	// JNI time of reads
+	private final LatencyHistogram[] targetReadTime = new LatencyHistogram[MAXSTEPPERS];
+	private final AtomicLong readHits = new AtomicLong();		// reads with a maximum age that used the tables
+	private final AtomicLong readMisses = new AtomicLong();		// reads with a maximum age that polled the board
+	private final int[] rateCount = new int[MAXSTEPPERS];		// used only on the Phidget thread
+	private final long[] rateStart = new long[MAXSTEPPERS];
 
 	/**
 	 * Create a new StepperBoard.
@@ -81,10 +119,65 @@ public class StepperBoardImpl implements StepperBoard {
 	 * with the old and new positions.
 	 * A STOPPED PropertyChangeEvent is fired when a stepper starts or stops, 
 	 * with the old and new states.
+	 * POSITION, STOPPED and ALL_STOPPED events are fired on a separate dispatcher thread
+	 * (not the Phidget thread), and rapid position changes are combined so that
+	 * only the latest position of each stepper is delivered.
 	 * A VELOCITY PropertyChangeEvent is fired when the velocity of a stepper is changed, 
 	 * with the old and new values.
+	 * Commands (engage, position, target and limits) are written to the board 
+	 * on a separate command thread so that the caller doesn't wait for the USB.
+	 * The board is not opened until open() is called (which opens any board that is connected).
+	 * All events and commands are recorded in an EventJournal.
+	 * The latencies of commands and moves are recorded in histograms (see Latencies).
+	 * Errors are shown in the status line and the notification area (not in dialogs).
 	 */
     public StepperBoardImpl() {
+		this(StepperBoardRegistry.ANY);
+	}
+
+	/**
+	 * Create a new StepperBoard for the Phidget board with the given serial number.
+	 * Each board has its own event and command threads.
+	 * @param serialNumber serial number of the board (or StepperBoardRegistry.ANY for any board)
+	 */
+	public StepperBoardImpl(int serialNumber) {
+		this.serial = serialNumber;
+		this.openSerial = serialNumber;
+		String suffix = (serialNumber == StepperBoardRegistry.ANY) ? "" : (" " + serialNumber);
+		errors = new ErrorReporter("StepperBoard errors" + suffix, "StepperBoard" + suffix);
+		journal = EventJournal.openDefault((serialNumber == StepperBoardRegistry.ANY) ? "any" : Integer.toString(serialNumber));
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			snapshot.set(i, StepperSnapshot.EMPTY);
+		}
+		histogramPrefix = "board" + ((serialNumber == StepperBoardRegistry.ANY) ? "" : ("." + serialNumber));
+		makeHistograms(histogramPrefix);
+		dispatcher = new PositionDispatcher("StepperBoard events" + suffix, MAXSTEPPERS, new PositionDispatcher.Receiver() {
+			@Override
+			public void control(int n, long pos, long nanoTime) {
+				sls.firePositionToControls(n, pos, nanoTime);
+			}
+
+			@Override
+			public void deliver(int n, long pos, long nanoTime) {
+				deliverPosition(n, pos, nanoTime);
+			}
+
+			@Override
+			public void delivered() {
+				updateMoving();
+			}
+		});
+		executor = new CommandExecutor("StepperBoard commands" + suffix, MAXSTEPPERS, new CommandExecutor.Writer() {
+			@Override
+			public void write(Props kind, int n, double value) throws PhidgetException {
+				writeCommand(kind, n, value);
+			}
+
+			@Override
+			public void failed(Props kind, int n, PhidgetException ex) {
+				showError("StepperBoard.write " + kind.toString(), ex);
+			}
+		});
 		try {
 			stepPhidget = new StepperPhidget();
 			stepPhidget.addAttachListener(new AttachListener() {
@@ -92,6 +185,7 @@ public class StepperBoardImpl implements StepperBoard {
 				public void attached(AttachEvent evt) {
 					try {
 						nSteppers = stepPhidget.getMotorCount();
+						serial = stepPhidget.getSerialNumber();
 						if (nSteppers == 4) {	// determine type of board
 							type = 0;
 						} else {
@@ -105,15 +199,22 @@ public class StepperBoardImpl implements StepperBoard {
 						maxAccel = stepPhidget.getAccelerationMax(0);
 						minAccel = Math.max(stepPhidget.getAccelerationMin(0), ACCEL_RES[type]);
 						
+						executor.forget();		// don't know what a newly attached board has
+						synchronized (snapLock) {
+							Arrays.fill(positionTime, 0L);
+						}
 						for (int i = 0; i < nSteppers; i++) {
 							aLimit[i] = DEFAULT_ACCEL;
 							stepPhidget.setAcceleration(i, DEFAULT_ACCEL);	// set default acceleration
+							executor.acknowledge(Props.ALIMIT, i, DEFAULT_ACCEL);
 							vLimit[i] = maxVelocity;
 							stepPhidget.setVelocityLimit(i, maxVelocity);	// default limit is max
+							executor.acknowledge(Props.VLIMIT, i, maxVelocity);
 						}
 						for (int i = 0; i < nInputs; i++) {
 							inputState[i] = stepPhidget.getInputState(i);
 						}
+						journal.event(Props.ATTACH, 0, serial);
 						pcs.firePropertyChange(Props.ATTACH.toString(), null, null);
 						String boardType;
 						switch (type) {
@@ -131,6 +232,7 @@ public class StepperBoardImpl implements StepperBoard {
 								break;
 						}
 						System.out.println("Phidget board attached: " + boardType);
+						System.out.println("  serialNumber:" + serial);
 						System.out.println("  deviceLabel:" + stepPhidget.getDeviceLabel());
 						System.out.println("  deviceVersion:" + stepPhidget.getDeviceVersion());
 						System.out.println("  deviceClass:" + stepPhidget.getDeviceClass());
@@ -144,6 +246,11 @@ public class StepperBoardImpl implements StepperBoard {
 			stepPhidget.addDetachListener(new DetachListener() {
 				@Override
 				public void detached(DetachEvent evt) {
+					executor.forget();
+					synchronized (snapLock) {
+						Arrays.fill(positionTime, 0L);
+					}
+					journal.event(Props.DETACH, 0, serial);
 					pcs.firePropertyChange(Props.DETACH.toString(), null, null);
 					System.out.println("StepperBoard detached");
 				}
@@ -151,8 +258,7 @@ public class StepperBoardImpl implements StepperBoard {
             stepPhidget.addErrorListener(new ErrorListener() {
 				@Override
                 public void error(ErrorEvent evt) {
-					NotifyDescriptor d = new NotifyDescriptor.Message("StepperBoard.addErrorListener\n" + evt.toString(), NotifyDescriptor.ERROR_MESSAGE);
-					DialogDisplayer.getDefault().notify(d);
+					errors.report("StepperBoard.error", evt.toString());
                 }
             });
 			stepPhidget.addStepperPositionChangeListener(new StepperPositionChangeListener() {
@@ -160,56 +266,204 @@ public class StepperBoardImpl implements StepperBoard {
 				public void stepperPositionChanged(StepperPositionChangeEvent evt) {
 					int n = evt.getIndex();
 					long val = (long)evt.getValue();
-					long old = position[n];
-					position[n] = val;
-					pcs.firePropertyChange(Props.POSITION.toString(), old, val);
-					try {
-						boolean isStopped = stepPhidget.getStopped(n);
-//						if (stopped) {
-//							System.out.println("    Stepperboard: " + Step.values()[n] + " is stopped");
-//						}
-						boolean oldStop = stopped[n];
-						stopped[n] = isStopped;
-						pcs.firePropertyChange(Props.STOPPED.toString(), oldStop, isStopped);
-					} catch (PhidgetException ex) {
-						showError("StepperBoard.stepperPositionChanged", ex);
+					journal.event(Props.POSITION, n, val);
+					synchronized (snapLock) {
+						position[n] = val;			// the table is always up to date
+						positionTime[n] = System.nanoTime();
+						publish(n);
 					}
-					updateMoving();
+					countPosition(n);
+					dispatcher.post(n, val);		// listeners are told on the dispatcher thread
 				}
 			});
 			stepPhidget.addStepperVelocityChangeListener(new StepperVelocityChangeListener() {
 				@Override
 				public void stepperVelocityChanged(StepperVelocityChangeEvent evt) {
 					int n = evt.getIndex();
-					double old = velocity[n];
-					velocity[n] = evt.getValue();
-					pcs.firePropertyChange(Props.VELOCITY.toString(), old, evt.getValue());
+					journal.event(Props.VELOCITY, n, evt.getValue());
+					synchronized (snapLock) {
+						velocity[n] = evt.getValue();
+						publish(n);
+					}
+					sls.fireVelocity(n, evt.getValue());
 				}
 			});
 			stepPhidget.addCurrentChangeListener(new CurrentChangeListener() {
 				@Override
 				public void currentChanged(CurrentChangeEvent evt) {
 					int n = evt.getIndex();
-					double old = current[n];
-					current[n] = evt.getValue();
-					pcs.firePropertyChange(Props.CURRENT.toString(), old, evt.getValue());
+					journal.event(Props.CURRENT, n, evt.getValue());
+					synchronized (snapLock) {
+						current[n] = evt.getValue();
+						publish(n);
+					}
+					sls.fireCurrent(n, evt.getValue());
 				}
 			});
             stepPhidget.addInputChangeListener(new InputChangeListener() {
 				@Override
                 public void inputChanged(InputChangeEvent evt) {
+					journal.event(Props.INPUT, evt.getIndex(), evt.getState() ? 1L : 0L);
 					boolean old = inputState[evt.getIndex()];
 					inputState[evt.getIndex()] = evt.getState();	// save state in array
 					pcs.firePropertyChange(Props.INPUT.toString(), old, evt.getState());
                 }
             });
-
-			stepPhidget.openAny();
 		} catch (PhidgetException ex) {
 			showError("StepperBoard.constructor", ex);
 		}
     }
 
+	/**
+	 * Start looking for the board (any board, or the one with the serial number given to the constructor).
+	 * This doesn't wait for the board: an ATTACH PropertyChangeEvent is fired when it is attached.
+	 * Calling this again does nothing.
+	 */
+	@Override
+	public synchronized void open() {
+		if (opened || (stepPhidget == null)) {
+			return;
+		}
+		opened = true;
+		try {
+			if (openSerial == StepperBoardRegistry.ANY) {
+				stepPhidget.openAny();
+			} else {
+				stepPhidget.open(openSerial);
+			}
+		} catch (PhidgetException ex) {
+			showError("StepperBoard.open", ex);
+		}
+	}
+
+	/**
+	 * Deliver the latest position of a stepper to the listeners (on the dispatcher thread).
+	 * The stopped state is read from the board here rather than on the Phidget thread.
+	 * @param n stepper index
+	 * @param val latest position
+	 * @param nanoTime when the position was reported
+	 */
+	private void deliverPosition(int n, long val, long nanoTime) {
+		sls.firePosition(n, val, nanoTime);
+		try {
+			boolean isStopped = stepPhidget.getStopped(n);
+			if (isStopped != stopped[n]) {
+				journal.event(Props.STOPPED, n, isStopped ? 1L : 0L);
+				synchronized (snapLock) {
+					stopped[n] = isStopped;
+					publish(n);
+				}
+				if (isStopped) {
+					long start = moveStart.getAndSet(n, 0L);
+					if (start != 0L) {
+						moveTime[n].record(nanoTime - start);
+					}
+				}
+				sls.fireStopped(n, isStopped);
+			}
+		} catch (PhidgetException ex) {
+			showError("StepperBoard.stepperPositionChanged", ex);
+		}
+	}
+
+	/**
+	 * Write a command to the board (on the command thread).
+	 * @param kind ENGAGED, POSITION, TARGET, VLIMIT, ALIMIT or CLIMIT
+	 * @param n stepper index
+	 * @param value new value (ENGAGED is 1.0 for true, 0.0 for false)
+	 * @throws PhidgetException 
+	 */
+	private void writeCommand(Props kind, int n, double value) throws PhidgetException {
+		long start = System.nanoTime();
+		switch (kind) {
+			case ENGAGED:
+				stepPhidget.setEngaged(n, value != 0.0);
+				break;
+			case POSITION:
+				stepPhidget.setCurrentPosition(n, (long) value);
+				break;
+			case TARGET:
+				stepPhidget.setTargetPosition(n, (long) value);
+				break;
+			case VLIMIT:
+				stepPhidget.setVelocityLimit(n, value);
+				break;
+			case ALIMIT:
+				stepPhidget.setAcceleration(n, value);
+				break;
+			case CLIMIT:
+				stepPhidget.setCurrentLimit(n, value);
+				break;
+		}
+		long end = System.nanoTime();
+		writeTime.get(kind)[n].record(end - start);
+		if ((kind == Props.TARGET) && ((long) value != position[n])) {
+			firstMoveStart.set(n, end);
+			moveStart.set(n, end);
+		}
+	}
+
+	/**
+	 * Make the latency histograms of this board.
+	 * @param prefix prefix of the histogram names
+	 */
+	private void makeHistograms(String prefix) {
+		Props[] kinds = {Props.ENGAGED, Props.POSITION, Props.TARGET, Props.VLIMIT, Props.ALIMIT, Props.CLIMIT};
+		for (Props kind : kinds) {
+			LatencyHistogram[] h = new LatencyHistogram[MAXSTEPPERS];
+			for (int i = 0; i < MAXSTEPPERS; i++) {
+				h[i] = Latencies.get(prefix + ".S" + i + ".write." + kind);
+			}
+			writeTime.put(kind, h);
+		}
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			firstMoveTime[i] = Latencies.get(prefix + ".S" + i + ".firstMove");
+			moveTime[i] = Latencies.get(prefix + ".S" + i + ".move");
+			positionRate[i] = Latencies.getRate(prefix + ".S" + i + ".positionEvents");
+			positionReadTime[i] = Latencies.get(prefix + ".S" + i + ".read.POSITION");
+			targetReadTime[i] = Latencies.get(prefix + ".S" + i + ".read.TARGET");
+		}
+	}
+
+	/**
+	 * Count a raw position event (on the Phidget thread).
+	 * The first event after a new target gives the first-movement latency,
+	 * and the events are counted over about a second to give the event rate.
+	 * Pauses of more than 2 seconds (the stepper was stopped) are not counted.
+	 * @param n stepper index
+	 */
+	private void countPosition(int n) {
+		long now = System.nanoTime();
+		if (firstMoveStart.get(n) != 0L) {
+			long start = firstMoveStart.getAndSet(n, 0L);
+			if (start != 0L) {
+				firstMoveTime[n].record(now - start);
+			}
+		}
+		long elapsed = now - rateStart[n];
+		if (elapsed > 2000000000L) {
+			rateStart[n] = now;			// start counting again
+			rateCount[n] = 1;
+		} else if (elapsed >= 1000000000L) {
+			positionRate[n].record(Math.round(rateCount[n] * 1.0E9 / elapsed));
+			rateStart[n] = now;
+			rateCount[n] = 1;
+		} else {
+			rateCount[n]++;
+		}
+	}
+
+	/**
+	 * Publish a new snapshot of a stepper from the tables.
+	 * Must be called holding snapLock, right after the tables are changed.
+	 * @param n stepper index
+	 */
+	private void publish(int n) {
+		long seq = snapshot.get(n).getSequence() + 1;
+		snapshot.set(n, new StepperSnapshot(position[n], target[n], velocity[n], stopped[n],
+				engaged[n], current[n], seq, System.nanoTime()));
+	}
+
     /**
      * Check to see if all motors are stopped.
 	 * An ALL_STOPPED PropertyChangeEvent is fired when all are stopped. 
@@ -217,14 +471,16 @@ public class StepperBoardImpl implements StepperBoard {
 	private void updateMoving() {
 		boolean moving = false;
 		for (int i = 0; i < nSteppers; i++) {
-			if (engaged[i] && !stopped[i]) {
+			StepperSnapshot snap = snapshot.get(i);
+			if (snap.isEngaged() && !snap.isStopped()) {
 				moving = true;
 				break;
 			}
 		}
 		if (!moving) {
 //			System.out.println("    Stepperboard: all stopped");
-			this.pcs.firePropertyChange(Props.ALL_STOPPED.toString(), null, null);	// let someone know that all motors have stopped
+			journal.event(Props.ALL_STOPPED, 0, 0L);
+			sls.fireAllStopped();	// let someone know that all motors have stopped
 		}
 	}
 
@@ -237,6 +493,20 @@ public class StepperBoardImpl implements StepperBoard {
 		return stepPhidget;
 	}
 	
+	/**
+	 * Get the serial number of the board.
+	 * @return serial number (or -1 if the board has not been attached yet)
+	 */
+	@Override
+	public int getSerialNumber() {
+		return serial;
+	}
+
+	@Override
+	public String getHistogramPrefix() {
+		return histogramPrefix;
+	}
+	
 	/**
 	 * Get the type of board.
 	 * @return 0 is 1062, 1 is 1063, 2 is 1067
@@ -302,7 +572,11 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public long[] getPositions() {
-		return position;
+		long[] pos = new long[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			pos[i] = snapshot.get(i).getPosition();
+		}
+		return pos;
 	}
 
 	/**
@@ -312,7 +586,11 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public boolean[] getEngaged() {
-		return engaged;
+		boolean[] eng = new boolean[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			eng[i] = snapshot.get(i).isEngaged();
+		}
+		return eng;
 	}
 
 	/**
@@ -322,7 +600,11 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public boolean[] getStopped() {
-		return stopped;
+		boolean[] stop = new boolean[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			stop[i] = snapshot.get(i).isStopped();
+		}
+		return stop;
 	}
 
 	/**
@@ -332,7 +614,11 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public double[] getVelocities() {
-		return velocity;
+		double[] vel = new double[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			vel[i] = snapshot.get(i).getVelocity();
+		}
+		return vel;
 	}
 
 	/**
@@ -362,7 +648,11 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public long[] getTargets() {
-		return target;
+		long[] tar = new long[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			tar[i] = snapshot.get(i).getTarget();
+		}
+		return tar;
 	}
 	
 	/**
@@ -372,7 +662,11 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public double[] getCurrents() {
-		return current;
+		double[] cur = new double[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			cur[i] = snapshot.get(i).getCurrent();
+		}
+		return cur;
 	}
 	
 	/**
@@ -385,6 +679,18 @@ public class StepperBoardImpl implements StepperBoard {
 		return cLimit;
 	}
 
+	/**
+	 * Get the latest snapshot of the state of a motor.
+	 * The values in a snapshot are consistent with each other,
+	 * and getting it does not lock or copy anything.
+	 * @param s Stepper
+	 * @return latest snapshot
+	 */
+	@Override
+	public StepperSnapshot getSnapshot(Stepper s) {
+		return snapshot.get(s.ordinal());
+	}
+
     /**
      * Check to see if the board is attached.
 	 * The board is polled to determine the current status 
@@ -404,13 +710,13 @@ public class StepperBoardImpl implements StepperBoard {
 
     /**
      * Get the state of a motor to see if it is engaged.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * Note that this is retrieved from the latest snapshot to save time.
      * @param s Stepper
      * @return true=engaged, false=not engaged
      */
 	@Override
 	public boolean getEngaged(Stepper s) {
-		return engaged[s.ordinal()];
+		return snapshot.get(s.ordinal()).isEngaged();
 	}
 
     /**
@@ -421,14 +727,14 @@ public class StepperBoardImpl implements StepperBoard {
      */
 	@Override
 	public void setEngaged (Stepper s, boolean state) {
-		try {
-			stepPhidget.setEngaged(s.ordinal(), state);
-			boolean old = engaged[s.ordinal()];
+		journal.command(Props.ENGAGED, s.ordinal(), state ? 1L : 0L);
+		executor.submit(Props.ENGAGED, s.ordinal(), state ? 1.0 : 0.0);
+		boolean old = engaged[s.ordinal()];
+		synchronized (snapLock) {
 			engaged[s.ordinal()] = state;
-			pcs.firePropertyChange(Props.ENGAGED.toString(), old, state);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.setEngaged", ex);
+			publish(s.ordinal());
 		}
+		pcs.firePropertyChange(Props.ENGAGED.toString(), old, state);
 		stopCheck(s);	// make sure the table is updated
 	}
 
@@ -445,9 +751,14 @@ public class StepperBoardImpl implements StepperBoard {
 		try {
 			isStopped = stepPhidget.getStopped(s.ordinal());
 //			System.out.println("stopCheck " + s.ordinal() + " " + stopped);
-			boolean old = stopped[s.ordinal()];
-			stopped[s.ordinal()] = isStopped;
-			pcs.firePropertyChange(Props.STOPPED.toString(), old, isStopped);
+			if (isStopped != stopped[s.ordinal()]) {
+				journal.event(Props.STOPPED, s.ordinal(), isStopped ? 1L : 0L);
+				synchronized (snapLock) {
+					stopped[s.ordinal()] = isStopped;
+					publish(s.ordinal());
+				}
+				sls.fireStopped(s.ordinal(), isStopped);
+			}
 		} catch (PhidgetException ex) {
 			showError("StepperBoard.stopCheck", ex);
 		}
@@ -460,15 +771,15 @@ public class StepperBoardImpl implements StepperBoard {
      */
 	@Override
 	public void disengageAll() {
-		try {
-			for (int i = 0; i < nSteppers; i++) {
-				stepPhidget.setEngaged(i, false);
+		for (int i = 0; i < nSteppers; i++) {
+			journal.command(Props.ENGAGED, i, 0L);
+			executor.submit(Props.ENGAGED, i, 0.0);
+			synchronized (snapLock) {
 				engaged[i] = false;
+				publish(i);
 			}
-			pcs.firePropertyChange(Props.ENGAGED.toString(), null, false);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.disengageAll", ex);
 		}
+		pcs.firePropertyChange(Props.ENGAGED.toString(), null, false);
 	}
 
     /**
@@ -525,19 +836,18 @@ public class StepperBoardImpl implements StepperBoard {
 	 * A ALIMIT PropertyChangeEvent is fired with the old and new values. 
      * @param s Stepper
      * @param val acceleration
+	 * @return future that is true when the value has been written to the board
      */
 	@Override
-	public void setAcceleration(Stepper s, double val) {
-		try {
-//			System.out.println("    setAcceleration: " + s.toString() + " " + val);
-			double a = Math.max(Math.min(val, maxAccel), minAccel);
-			stepPhidget.setAcceleration(s.ordinal(), a);
-			double old = aLimit[s.ordinal()];
-			aLimit[s.ordinal()] = a;
-			pcs.firePropertyChange(Props.ALIMIT.toString(), old, a);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.setAcceleration", ex);
-		}
+	public Future<Boolean> setAcceleration(Stepper s, double val) {
+//		System.out.println("    setAcceleration: " + s.toString() + " " + val);
+		double a = Math.max(Math.min(val, maxAccel), minAccel);
+		journal.command(Props.ALIMIT, s.ordinal(), a);
+		Future<Boolean> f = executor.submit(Props.ALIMIT, s.ordinal(), a);
+		double old = aLimit[s.ordinal()];
+		aLimit[s.ordinal()] = a;
+		pcs.firePropertyChange(Props.ALIMIT.toString(), old, a);
+		return f;
 	}
 
     /**
@@ -546,19 +856,18 @@ public class StepperBoardImpl implements StepperBoard {
 	 * A VLIMIT PropertyChangeEvent is fired with the old and new values. 
      * @param s Stepper
      * @param val Velocity limit
+	 * @return future that is true when the value has been written to the board
      */
 	@Override
-	public void setVelocityLimit(Stepper s, double val) {
-		try {
-//			System.out.println("    setVelocity: " + Step.values()[n] + " " + val);
-			double v = Math.max(Math.min(val, maxVelocity), minVelocity);
-			stepPhidget.setVelocityLimit(s.ordinal(), v);
-			double old = vLimit[s.ordinal()];
-			vLimit[s.ordinal()] = v;
-			pcs.firePropertyChange(Props.VLIMIT.toString(), old, v);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.setVelocityLimit", ex);
-		}
+	public Future<Boolean> setVelocityLimit(Stepper s, double val) {
+//		System.out.println("    setVelocity: " + Step.values()[n] + " " + val);
+		double v = Math.max(Math.min(val, maxVelocity), minVelocity);
+		journal.command(Props.VLIMIT, s.ordinal(), v);
+		Future<Boolean> f = executor.submit(Props.VLIMIT, s.ordinal(), v);
+		double old = vLimit[s.ordinal()];
+		vLimit[s.ordinal()] = v;
+		pcs.firePropertyChange(Props.VLIMIT.toString(), old, v);
+		return f;
 	}
 
 	/**
@@ -576,10 +885,11 @@ public class StepperBoardImpl implements StepperBoard {
      * Set the motor velocity limit to the maximum.
 	 * A VLIMIT PropertyChangeEvent is fired with the old and new values. 
      * @param s Stepper
+	 * @return future that is true when the value has been written to the board
      */
 	@Override
-    public void setVelocityToMax(Stepper s) {
-        setVelocityLimit(s, maxVelocity);
+    public Future<Boolean> setVelocityToMax(Stepper s) {
+        return setVelocityLimit(s, maxVelocity);
     }
 
     /**
@@ -591,25 +901,67 @@ public class StepperBoardImpl implements StepperBoard {
      */
 	@Override
 	public long getCurrentPosition(Stepper s) {
+		int n = s.ordinal();
 		long pos = 0;
 		try {
-			pos = stepPhidget.getCurrentPosition(s.ordinal());	// *** This takes longer than just returning
-		} catch (PhidgetException ex) {					// *** the table value!
+			long start = System.nanoTime();
+			pos = stepPhidget.getCurrentPosition(n);	// *** This takes longer than just returning
+			long end = System.nanoTime();				// *** the table value!
+			positionReadTime[n].record(end - start);
+			if (!executor.isPending(Props.POSITION, n)) {	// else the board has the old position
+				synchronized (snapLock) {
+					if (position[n] != pos) {
+						position[n] = pos;
+						publish(n);
+					}
+					positionTime[n] = end;
+				}
+			}
+		} catch (PhidgetException ex) {
 			showError("StepperBoard.getCurrentPosition", ex);
 		}
 		return pos;
 	}
 
     /**
-     * Get the current position from the array.
-	 * Note that this is retrieved from an array of saved states to save time,
+     * Get the current position, from the board only if the table value could be too old.
+	 * The table value is used when the stepper is stopped at its target (it can't change 
+	 * without a position event), when the last position event is no older than maxAge,
+	 * or when a new position is waiting to be written to the board (the board has the old one).
+	 * Otherwise (or if maxAge is AUTHORITATIVE) the board is polled, and the table is updated.
+     * @param s Stepper
+	 * @param maxAge how old the value may be (for example 5 msec)
+	 * @param unit unit of maxAge
+     * @return Current position
+     */
+	@Override
+	public long getCurrentPosition(Stepper s, long maxAge, TimeUnit unit) {
+		int n = s.ordinal();
+		long max = unit.toNanos(maxAge);
+		if (max > 0) {
+			boolean pending = executor.isPending(Props.POSITION, n);
+			synchronized (snapLock) {
+				if ((positionTime[n] != 0L) && (pending || (stopped[n] && (position[n] == target[n]))
+						|| (System.nanoTime() - positionTime[n] <= max))) {
+					readHits.incrementAndGet();
+					return position[n];
+				}
+			}
+			readMisses.incrementAndGet();
+		}
+		return getCurrentPosition(s);
+	}
+
+    /**
+     * Get the current position from the latest snapshot.
+	 * Note that this is retrieved from the saved states to save time,
 	 * and doesn't run the risk of generating another stopped motor indication.
      * @param s Stepper
      * @return Current position
      */
 	@Override
 	public long getPosition(Stepper s) {
-		return position[s.ordinal()];
+		return snapshot.get(s.ordinal()).getPosition();
 	}
 
     /**
@@ -620,14 +972,14 @@ public class StepperBoardImpl implements StepperBoard {
      */
 	@Override
 	public void setCurrentPosition(Stepper s, int val) {
-		try {
-			long old = position[s.ordinal()];
+		journal.command(Props.POSITION, s.ordinal(), (long) val);
+		executor.submit(Props.POSITION, s.ordinal(), val);
+		synchronized (snapLock) {
 			position[s.ordinal()] = val;
-			pcs.firePropertyChange(Props.POSITION.toString(), old, val);
-			stepPhidget.setCurrentPosition(s.ordinal(), val);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.setCurrentPosition", ex);
+			positionTime[s.ordinal()] = System.nanoTime();
+			publish(s.ordinal());
 		}
+		dispatcher.post(s.ordinal(), val);		// in order with the Phidget position events
 	}
 
     /**
@@ -641,13 +993,59 @@ public class StepperBoardImpl implements StepperBoard {
 	public long getTargetPosition(Stepper s) {
 		long tar = 0;
 		try {
+			long start = System.nanoTime();
 			tar = stepPhidget.getTargetPosition(s.ordinal());		// *** This takes longer than just returning
-		} catch (PhidgetException ex) {					// *** the table value!
+			targetReadTime[s.ordinal()].recordSince(start);		// *** the table value!
+		} catch (PhidgetException ex) {
 			showError("StepperBoard.getTargetPosition", ex);
 		}
 		return tar;
 	}
 
+    /**
+     * Get the target position, from the board only if the table value might not be on the board yet.
+	 * The table value is used when it is the last target written to the board,
+	 * unless maxAge is AUTHORITATIVE.
+     * @param s Stepper
+	 * @param maxAge AUTHORITATIVE to always poll the board, otherwise anything greater than 0
+	 * @param unit unit of maxAge
+     * @return Target position
+     */
+	@Override
+	public long getTargetPosition(Stepper s, long maxAge, TimeUnit unit) {
+		int n = s.ordinal();
+		if (unit.toNanos(maxAge) > 0) {
+			long tar;
+			synchronized (snapLock) {
+				tar = target[n];		// the snapshot's target can be behind a streamed target
+			}
+			if (executor.isAcknowledged(Props.TARGET, n, tar)) {
+				readHits.incrementAndGet();
+				return tar;
+			}
+			readMisses.incrementAndGet();
+		}
+		return getTargetPosition(s);
+	}
+
+	/**
+	 * Get the number of reads with a maximum age that used the table values.
+	 * @return number of reads that didn't poll the board
+	 */
+	@Override
+	public long getReadHits() {
+		return readHits.get();
+	}
+
+	/**
+	 * Get the number of reads with a maximum age that had to poll the board.
+	 * @return number of reads that polled the board
+	 */
+	@Override
+	public long getReadMisses() {
+		return readMisses.get();
+	}
+
     /**
      * Set the target position of a motor.
 	 * A TARGET PropertyChangeEvent is fired with the old and new values.
@@ -655,23 +1053,48 @@ public class StepperBoardImpl implements StepperBoard {
 	 * a STOPPED PropertyChangeEvent is fired with the old state and 'false' for the new.
      * @param s Stepper
      * @param val Target position
+	 * @return future that is true when the value has been written to the board
      */
 	@Override
-	public void setTargetPosition(Stepper s, long val) {
-		try {
-//			System.out.println("    setTarget: " + Step.values()[n] + " " + val);
-			long old = target[s.ordinal()];
+	public Future<Boolean> setTargetPosition(Stepper s, long val) {
+//		System.out.println("    setTarget: " + Step.values()[n] + " " + val);
+		long old = target[s.ordinal()];
+		boolean starting = false;
+		synchronized (snapLock) {
 			target[s.ordinal()] = val;
-			pcs.firePropertyChange(Props.TARGET.toString(), old, val);
-			if (val != position[s.ordinal()]) {					// force NOT STOPPED
-				boolean oldStop = stopped[s.ordinal()];			// so that we must get a positionChange
-				stopped[s.ordinal()] = false;					// event to insure the motor is stopped
-				pcs.firePropertyChange(Props.STOPPED.toString(), oldStop, false);
-			}													
-			stepPhidget.setTargetPosition(s.ordinal(), val);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.setTargetPosition", ex);
+			if ((val != position[s.ordinal()]) && stopped[s.ordinal()]) {	// force NOT STOPPED
+				stopped[s.ordinal()] = false;				// so that we must get a positionChange
+				starting = true;							// event to insure the motor is stopped
+			}
+			publish(s.ordinal());
 		}
+		pcs.firePropertyChange(Props.TARGET.toString(), old, val);
+		if (starting) {
+			sls.fireStopped(s.ordinal(), false);
+		}
+		journal.command(Props.TARGET, s.ordinal(), val);
+		return executor.submit(Props.TARGET, s.ordinal(), val);
+	}
+
+	@Override
+	public void streamTargetPosition(Stepper s, long val) {
+		int n = s.ordinal();
+		boolean starting = false;
+		synchronized (snapLock) {
+			target[n] = val;
+			if (stopped[n]) {		// a moving motor publishes the target with its next position change
+				if (val != position[n]) {		// force NOT STOPPED (like setTargetPosition)
+					stopped[n] = false;
+					starting = true;
+				}
+				publish(n);
+			}
+		}
+		if (starting) {
+			sls.fireStopped(n, false);
+		}
+		journal.command(Props.TARGET, n, val);
+		executor.post(Props.TARGET, n, val);
 	}
 	
 	/**
@@ -692,48 +1115,55 @@ public class StepperBoardImpl implements StepperBoard {
 	 * A CLIMIT PropertyChangeEvent is fired with the old and new values.
      * @param s Stepper
      * @param cur Current limit
+	 * @return future that is true when the value has been written to the board
 	 */
 	@Override
-	public void setCurrentLimit(Stepper s, double cur) {
-		try {
-//			System.out.println("    setCurrentLimit: " + Step.values()[n] + " " + cur);
-			double c = Math.min(cur, MAX_CURRENT[type]);
-			stepPhidget.setCurrentLimit(s.ordinal(), c);
-			double old = cLimit[s.ordinal()];
-			cLimit[s.ordinal()] = c;
-			pcs.firePropertyChange(Props.CLIMIT.toString(), old, c);
-		} catch (PhidgetException ex) {
-			showError("StepperBoard.setCurrentLimit", ex);
-		}
+	public Future<Boolean> setCurrentLimit(Stepper s, double cur) {
+//		System.out.println("    setCurrentLimit: " + Step.values()[n] + " " + cur);
+		double c = Math.min(cur, MAX_CURRENT[type]);
+		journal.command(Props.CLIMIT, s.ordinal(), c);
+		Future<Boolean> f = executor.submit(Props.CLIMIT, s.ordinal(), c);
+		double old = cLimit[s.ordinal()];
+		cLimit[s.ordinal()] = c;
+		pcs.firePropertyChange(Props.CLIMIT.toString(), old, c);
+		return f;
 	}
 
 	/**
 	 * Disengage all steppers and close the Phidget.
+	 * Commands that are waiting to be written are written first.
 	 */
 	@Override
 	public void close() {
+		executor.flush(CLOSE_TIMEOUT);		// finish the waiting commands first
+		executor.stop();
+		journal.force();
 		try {
 			for (int i = 0; i < nSteppers; i++) {
 				 stepPhidget.setEngaged(i, false);
 			}
 			stepPhidget.close();      //close the phidget
-			stepPhidget = null;
 		} catch (PhidgetException ex) {
 			showError("StepperBoard.close", ex);
+		} finally {
+			dispatcher.stop();		// no more deliveries use the handle
+			stepPhidget = null;
+			errors.stop();
 		}
 	}
 
     /**
      * Show an error from a try-catch.
-	 * @param st String to display
+	 * The error is counted and shown later by the ErrorReporter (not in a dialog),
+	 * so this returns right away and can be called on any thread.
+	 * @param st call site (for example "StepperBoard.getCurrentPosition")
      * @param ex PhidgetException
      */
 	private void showError(String st, PhidgetException ex) {
 		if (ex.getErrorNumber() == PhidgetException.EPHIDGET_UNKNOWNVAL) {
 			return;		// don't show this
 		}
-		NotifyDescriptor d = new NotifyDescriptor.Message(boardName[type] + " " + st + "\n" + ex.getDescription(), NotifyDescriptor.ERROR_MESSAGE);
-		DialogDisplayer.getDefault().notify(d);
+		errors.report(st, boardName[type] + ": " + ex.getDescription());
 	}
 
 	/**
@@ -742,7 +1172,7 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
-		this.pcs.addPropertyChangeListener(listener);
+		sls.addPropertyChangeListener(listener);
 	}
 
 	/**
@@ -751,7 +1181,43 @@ public class StepperBoardImpl implements StepperBoard {
 	 */
 	@Override
 	public synchronized void removePropertyChangeListener(PropertyChangeListener listener) {
-		this.pcs.removePropertyChangeListener(listener);
+		sls.removePropertyChangeListener(listener);
+	}
+
+	/**
+	 * Add a StepperListener.
+	 * @param listener
+	 */
+	@Override
+	public void addStepperListener(StepperListener listener) {
+		sls.addStepperListener(listener);
+	}
+
+	/**
+	 * Remove a StepperListener.
+	 * @param listener
+	 */
+	@Override
+	public void removeStepperListener(StepperListener listener) {
+		sls.removeStepperListener(listener);
+	}
+
+	/**
+	 * Add a control listener (it gets every position, see PositionDispatcher).
+	 * @param listener
+	 */
+	@Override
+	public void addControlListener(StepperListener listener) {
+		sls.addControlListener(listener);
+	}
+
+	/**
+	 * Remove a control listener.
+	 * @param listener
+	 */
+	@Override
+	public void removeControlListener(StepperListener listener) {
+		sls.removeControlListener(listener);
 	}
 
 }
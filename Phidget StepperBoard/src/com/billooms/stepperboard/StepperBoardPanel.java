@@ -2,6 +2,8 @@
 package com.billooms.stepperboard;
 
 import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.StepperSnapshot;
 import com.phidgets.PhidgetException;
 import com.phidgets.StepperPhidget;
 import java.beans.PropertyChangeEvent;
@@ -34,6 +36,7 @@ import org.openide.NotifyDescriptor;
 public class StepperBoardPanel extends JPanel implements PropertyChangeListener {
 	private final static int STEPPER=0, ENGAGED=1,  STOPPED=2,  POSITION=3,
 							 TARGET=4, VELOCITY=5, V_LIMIT=6, ACCEL=7;	// table column definitions
+	private final static Stepper[] STEPPERS = Stepper.values();
 	
 	private StepperBoard stepBoard;
 	private TableModel table;
@@ -112,48 +115,44 @@ public class StepperBoardPanel extends JPanel implements PropertyChangeListener
 	}
 
 	/**
-	 * Update the table with the saved position data.
+	 * Update the table with the latest position data.
 	 */
 	private void updatePositions() {
-		long[] pos = stepBoard.getPositions();
-		for (int i = 0; i < pos.length; i++) {
-			table.setValueAt(pos[i], i, POSITION);
+		for (int i = 0; i < STEPPERS.length; i++) {
+			table.setValueAt(stepBoard.getSnapshot(STEPPERS[i]).getPosition(), i, POSITION);
 		}
 	}
 
 	/**
-	 * Update the table with the saved stopped data.
+	 * Update the table with the latest stopped data.
 	 */
 	private void updateStopped() {
-		boolean[] stopped = stepBoard.getStopped();
 		boolean moving = false;
-		for (int i = 0; i < stopped.length; i++) {
-			table.setValueAt(stopped[i], i, STOPPED);
-			if ((Boolean)table.getValueAt(i, ENGAGED) && !stopped[i]) {
+		for (int i = 0; i < STEPPERS.length; i++) {
+			StepperSnapshot snap = stepBoard.getSnapshot(STEPPERS[i]);
+			table.setValueAt(snap.isStopped(), i, STOPPED);
+			if (snap.isEngaged() && !snap.isStopped()) {
 				moving = true;
-				break;
 			}
 		}
 		movingLabel.setEnabled(moving);		// yellow light when moving
 	}
 
 	/**
-	 * Update the table with the saved velocity data.
+	 * Update the table with the latest velocity data.
 	 */
 	private void updateVelocities() {
-		double[] vels = stepBoard.getVelocities();
-		for (int i = 0; i < vels.length; i++) {
-			table.setValueAt(vels[i], i, VELOCITY);
+		for (int i = 0; i < STEPPERS.length; i++) {
+			table.setValueAt(stepBoard.getSnapshot(STEPPERS[i]).getVelocity(), i, VELOCITY);
 		}
 	}
 
 	/**
-	 * Update the table with the saved engaged data.
+	 * Update the table with the latest engaged data.
 	 */
 	private void updateEngaged() {
-		boolean[] eng = stepBoard.getEngaged();
-		for (int i = 0; i < eng.length; i++) {
-			table.setValueAt(eng[i], i, ENGAGED);
+		for (int i = 0; i < STEPPERS.length; i++) {
+			table.setValueAt(stepBoard.getSnapshot(STEPPERS[i]).isEngaged(), i, ENGAGED);
 		}
 	}
 
@@ -178,12 +177,11 @@ public class StepperBoardPanel extends JPanel implements PropertyChangeListener
 	}
 
 	/**
-	 * Update the table with the saved target data.
+	 * Update the table with the latest target data.
 	 */
 	private void updateTargets() {
-		long[] tar = stepBoard.getTargets();
-		for (int i = 0; i < tar.length; i++) {
-			table.setValueAt(tar[i], i, TARGET);
+		for (int i = 0; i < STEPPERS.length; i++) {
+			table.setValueAt(stepBoard.getSnapshot(STEPPERS[i]).getTarget(), i, TARGET);
 		}
 	}
 
@@ -198,13 +196,10 @@ public class StepperBoardPanel extends JPanel implements PropertyChangeListener
 	}
 
 	/**
-	 * Update the table with the saved current data.
+	 * Update the table with the latest current data.
 	 */
 	private void updateCurrents() {
-		double[] cur = stepBoard.getCurrents();
-		if (cur.length > 0) {
-			curField.setText(Double.toString(cur[0]));
-		}
+		curField.setText(Double.toString(stepBoard.getSnapshot(Stepper.S0).getCurrent()));
 	}
 
 	/**
@@ -0,0 +1,222 @@
+package com.billooms.stepperboard;
+
+import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperBoardRegistry;
+import com.billooms.stepperboard.sim.SimulatedStepperBoard;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openide.util.Lookup;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Keeps track of all the StepperBoards that are open, by serial number.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = StepperBoardRegistry.class)
+public class StepperBoardRegistryImpl implements StepperBoardRegistry {
+
+	/** Time to wait for the default board to attach before opening another board (msec) */
+	public final static long ATTACH_TIMEOUT = 3000L;
+
+	private final Map<Integer, StepperBoard> boards = new LinkedHashMap<Integer, StepperBoard>();
+	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+
+	/**
+	 * Get the default board (the one found with Lookup), opening it if it hasn't been already.
+	 * @return default StepperBoard
+	 */
+	@Override
+	public StepperBoard getDefault() {
+		StepperBoard def = Lookup.getDefault().lookup(StepperBoard.class);
+		if (def != null) {
+			def.open();
+		}
+		return def;
+	}
+
+	/**
+	 * Open the Phidget board with the given serial number.
+	 * If it is already open (including as the default board), the open board is returned.
+	 * The default board opens any board, so its serial number isn't known until it is attached:
+	 * this waits (up to ATTACH_TIMEOUT) for it to attach, so the same board is never opened twice.
+	 * This fires a PROP_OPEN property change with the new board.
+	 * @param serial serial number of the board
+	 * @return the StepperBoard
+	 * @throws IllegalStateException if the default board didn't attach (it might be this board)
+	 */
+	@Override
+	public StepperBoard open(int serial) {
+		StepperBoard board;
+		synchronized (boards) {
+			board = boards.get(serial);
+			if (board != null) {
+				return board;
+			}
+		}
+		StepperBoard def = getDefault();
+		if ((def != null) && !waitForAttach(def, ATTACH_TIMEOUT)) {
+			throw new IllegalStateException("The default StepperBoard is not attached, so board " + serial
+					+ " can't be opened (they might be the same board)");
+		}
+		synchronized (boards) {
+			board = boards.get(serial);
+			if (board != null) {
+				return board;
+			}
+			if ((def != null) && (def.getSerialNumber() == serial)) {
+				board = def;			// the default board is this one
+			} else {
+				board = new StepperBoardImpl(serial);
+				board.open();
+			}
+			boards.put(serial, board);
+		}
+		pcs.firePropertyChange(PROP_OPEN, null, board);
+		return board;
+	}
+
+	/**
+	 * Wait for a board to be attached.
+	 * @param board StepperBoard
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return true = attached, false = timed out
+	 */
+	private static boolean waitForAttach(StepperBoard board, long timeout) {
+		if (board.isAttached()) {
+			return true;
+		}
+		final CountDownLatch attached = new CountDownLatch(1);
+		PropertyChangeListener listener = new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (evt.getPropertyName().equals(StepperBoard.Props.ATTACH.toString())) {
+					attached.countDown();
+				}
+			}
+		};
+		board.addPropertyChangeListener(listener);
+		try {
+			if (!board.isAttached()) {		// it might have attached before the listener was added
+				attached.await(timeout, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			board.removePropertyChangeListener(listener);
+		}
+		return board.isAttached();
+	}
+
+	/**
+	 * Open a simulated board with the given serial number.
+	 * If a board with this serial number is already open, the open board is returned.
+	 * This fires a PROP_OPEN property change with the new board.
+	 * @param serial serial number for the simulated board
+	 * @param type 0 is 1062, 1 is 1063, 2 is 1067
+	 * @param realTime true = motors move in real time, false = virtual clock
+	 * @return the StepperBoard
+	 */
+	@Override
+	public StepperBoard openSimulated(int serial, int type, boolean realTime) {
+		StepperBoard board;
+		synchronized (boards) {
+			board = boards.get(serial);
+			if (board != null) {
+				return board;
+			}
+			board = new SimulatedStepperBoard(type, realTime, serial);
+			boards.put(serial, board);
+		}
+		pcs.firePropertyChange(PROP_OPEN, null, board);
+		return board;
+	}
+
+	/**
+	 * Get an open board.
+	 * @param serial serial number of the board
+	 * @return the StepperBoard (or null if no board with this serial number is open)
+	 */
+	@Override
+	public StepperBoard get(int serial) {
+		synchronized (boards) {
+			return boards.get(serial);
+		}
+	}
+
+	/**
+	 * Get the serial numbers of all the open boards.
+	 * @return unmodifiable list of serial numbers
+	 */
+	@Override
+	public List<Integer> getSerialNumbers() {
+		synchronized (boards) {
+			return Collections.unmodifiableList(new ArrayList<Integer>(boards.keySet()));
+		}
+	}
+
+	/**
+	 * Close a board and remove it from the registry.
+	 * This fires a PROP_CLOSE property change with the old board.
+	 * @param serial serial number of the board
+	 */
+	@Override
+	public void close(int serial) {
+		StepperBoard board;
+		synchronized (boards) {
+			board = boards.remove(serial);
+		}
+		if (board != null) {
+			board.close();
+			pcs.firePropertyChange(PROP_CLOSE, board, null);
+		}
+	}
+
+	/**
+	 * Close all the boards in the registry.
+	 */
+	@Override
+	public void closeAll() {
+		for (Integer serial : getSerialNumbers()) {
+			close(serial);
+		}
+	}
+
+	/**
+	 * Add the given PropertyChangeListener to this object.
+	 * @param listener
+	 */
+	@Override
+	public void addPropertyChangeListener(PropertyChangeListener listener) {
+		pcs.addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * Remove the given PropertyChangeListener from this object.
+	 * @param listener
+	 */
+	@Override
+	public void removePropertyChangeListener(PropertyChangeListener listener) {
+		pcs.removePropertyChangeListener(listener);
+	}
+}
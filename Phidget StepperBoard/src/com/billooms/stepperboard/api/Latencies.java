@@ -0,0 +1,106 @@
+package com.billooms.stepperboard.api;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * All the LatencyHistograms of the program, by name, 
+ * so that they can be looked at while running and printed on shutdown.
+ * Names are like "board.S0.firstMove" or "board.S0.stage.move".
+ * Get a histogram once and keep it: the lookup by name is not meant for every event.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class Latencies {
+
+	private final static ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	private Latencies() {
+	}
+
+	/**
+	 * Get (or create) a histogram of times in nanoseconds (printed in msec).
+	 * @param name name of the histogram
+	 * @return histogram
+	 */
+	public static LatencyHistogram get(String name) {
+		return get(name, "ms", 1.0E6);
+	}
+
+	/**
+	 * Get (or create) a histogram of rates in events per second.
+	 * @param name name of the histogram
+	 * @return histogram
+	 */
+	public static LatencyHistogram getRate(String name) {
+		return get(name, "/s", 1.0);
+	}
+
+	/**
+	 * Get (or create) a histogram.
+	 * @param name name of the histogram
+	 * @param unit unit used when printing
+	 * @param divisor values are divided by this when printing
+	 * @return histogram
+	 */
+	private static LatencyHistogram get(String name, String unit, double divisor) {
+		LatencyHistogram h = histograms.get(name);
+		if (h == null) {
+			LatencyHistogram created = new LatencyHistogram(name, unit, divisor);
+			h = histograms.putIfAbsent(name, created);
+			if (h == null) {
+				h = created;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Get the names of all the histograms.
+	 * @return sorted list of names
+	 */
+	public static List<String> getNames() {
+		List<String> names = new ArrayList<String>(histograms.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Clear all the histograms.
+	 */
+	public static void resetAll() {
+		for (LatencyHistogram h : histograms.values()) {
+			h.reset();
+		}
+	}
+
+	/**
+	 * Print all the histograms that have something recorded.
+	 * @param out where to print
+	 */
+	public static void dump(PrintStream out) {
+		out.println("Latencies:");
+		for (String name : getNames()) {
+			LatencyHistogram h = histograms.get(name);
+			if (h.getCount() > 0) {
+				out.println("  " + h);
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.billooms.stepperboard.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies (or other positive values) in the style of HdrHistogram.
+ * Values are counted in log-linear buckets: exact below 128, and within 1/64 (about 1.5%) above that,
+ * for any value up to Long.MAX_VALUE, in a fixed table of about 3800 counters.
+ * Recording is thread-safe, doesn't lock and doesn't allocate, so it can be done on any thread.
+ * Get the histograms by name from Latencies.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class LatencyHistogram {
+
+	private final static int SUB_BITS = 7;						// 128 sub-buckets
+	private final static int HALF = 1 << (SUB_BITS - 1);		// 64
+	private final static int BUCKETS = (64 - SUB_BITS + 1) * HALF + HALF;
+
+	private final String name;
+	private final String unit;
+	private final double divisor;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(0L);
+
+	/**
+	 * Create a new histogram.
+	 * @param name name of the histogram
+	 * @param unit unit used when printing (for example "ms")
+	 * @param divisor recorded values are divided by this when printing (for example 1.0E6 for ns to ms)
+	 */
+	public LatencyHistogram(String name, String unit, double divisor) {
+		this.name = name;
+		this.unit = unit;
+		this.divisor = divisor;
+	}
+
+	/**
+	 * Get the name of the histogram.
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Record a value.
+	 * @param value value (negative values are counted as 0)
+	 */
+	public void record(long value) {
+		long v = Math.max(value, 0L);
+		counts.incrementAndGet(indexOf(v));
+		total.incrementAndGet();
+		sum.addAndGet(v);
+		long m = min.get();
+		while ((v < m) && !min.compareAndSet(m, v)) {
+			m = min.get();
+		}
+		m = max.get();
+		while ((v > m) && !max.compareAndSet(m, v)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Record the time since a start time.
+	 * @param startNanos System.nanoTime() at the start
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get the number of recorded values.
+	 * @return count
+	 */
+	public long getCount() {
+		return total.get();
+	}
+
+	/**
+	 * Get the smallest recorded value.
+	 * @return minimum (or 0 if nothing was recorded)
+	 */
+	public long getMin() {
+		return (total.get() == 0) ? 0L : min.get();
+	}
+
+	/**
+	 * Get the largest recorded value.
+	 * @return maximum
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the mean of the recorded values.
+	 * @return mean (or 0 if nothing was recorded)
+	 */
+	public double getMean() {
+		long n = total.get();
+		return (n == 0) ? 0.0 : ((double) sum.get() / n);
+	}
+
+	/**
+	 * Get the value at a percentile.
+	 * @param percentile 0.0 to 100.0
+	 * @return value that this percentage of the recorded values are at or below
+	 * (within the precision of the buckets)
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = total.get();
+		if (n == 0) {
+			return 0L;
+		}
+		long wanted = Math.max(1L, (long) Math.ceil(n * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= wanted) {
+				return Math.min(highestOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clear all the recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0L);
+		}
+		total.set(0L);
+		sum.set(0L);
+		min.set(Long.MAX_VALUE);
+		max.set(0L);
+	}
+
+	/**
+	 * Get the bucket of a value.
+	 * @param v value (not negative)
+	 * @return bucket index
+	 */
+	private static int indexOf(long v) {
+		int msb = 63 - Long.numberOfLeadingZeros(v | 1L);
+		if (msb < SUB_BITS) {
+			return (int) v;
+		}
+		int shift = msb - SUB_BITS + 1;
+		return shift * HALF + (int) (v >>> shift);
+	}
+
+	/**
+	 * Get the highest value that is counted in a bucket.
+	 * @param i bucket index
+	 * @return highest value
+	 */
+	private static long highestOf(int i) {
+		if (i < 2 * HALF) {
+			return i;
+		}
+		int shift = i / HALF - 1;
+		long m = i - (long) shift * HALF;
+		return ((m + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-36s n=%-8d min=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f %s",
+				name, getCount(), getMin() / divisor, getValueAtPercentile(50.0) / divisor,
+				getValueAtPercentile(90.0) / divisor, getValueAtPercentile(99.0) / divisor,
+				getMax() / divisor, unit);
+	}
+}
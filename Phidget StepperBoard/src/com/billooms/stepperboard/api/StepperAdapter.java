@@ -0,0 +1,44 @@
+package com.billooms.stepperboard.api;
+
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+
+/**
+ * A StepperListener that does nothing.
+ * Extend this and override only the callbacks of interest.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public abstract class StepperAdapter implements StepperListener {
+
+	@Override
+	public void onPosition(Stepper s, long position, long nanoTime) {
+	}
+
+	@Override
+	public void onStopped(Stepper s, boolean stopped) {
+	}
+
+	@Override
+	public void onVelocity(Stepper s, double velocity) {
+	}
+
+	@Override
+	public void onCurrent(Stepper s, double current) {
+	}
+
+	@Override
+	public void onAllStopped() {
+	}
+}
@@ -3,6 +3,8 @@ package com.billooms.stepperboard.api;
 
 import com.phidgets.StepperPhidget;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * StepperBoard is used to monitor the state of a Phidgets stepper board.
@@ -35,6 +37,8 @@ public interface StepperBoard {
 	int[] MICRO_STEP = {2, 16, 16};
 	/** Max current for 1063 is 2.5, but I'm using 2.0 because of power supply limits */
 	double[] MAX_CURRENT = {1.0, 2.5, 4.0};
+	/** Maximum age for a read that must come from the board */
+	long AUTHORITATIVE = 0L;
 	
 	/** 
 	 * Names for the 4 steppers for 1062 board. 
@@ -87,6 +91,27 @@ public interface StepperBoard {
      */
 	StepperPhidget getPhidget();
 	
+	/**
+	 * Get the serial number of the board.
+	 * @return serial number (or -1 if the board has not been attached yet)
+	 */
+	int getSerialNumber();
+
+	/**
+	 * Get the prefix of the names of this board's latency histograms (see Latencies).
+	 * This doesn't change when a board is attached, so histograms named from it
+	 * can be looked up before the board is attached.
+	 * @return prefix like "board.12345" ("board" for a board that opens any board)
+	 */
+	String getHistogramPrefix();
+
+	/**
+	 * Start looking for the board.
+	 * This doesn't wait for the board: an ATTACH PropertyChangeEvent is fired when it is attached.
+	 * Calling this again does nothing.
+	 */
+	void open();
+	
 	/**
 	 * Get the type of board.
 	 * @return 0 is 1062, 1 is 1063, 2 is 1067
@@ -129,28 +154,28 @@ public interface StepperBoard {
 
 	/**
 	 * Get an array of positions of all motors.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * This is a new array made from the latest snapshots (see getSnapshot).
 	 * @return position array
 	 */
 	long[] getPositions();
 
 	/**
 	 * Get an array of the engaged status of all motors.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * This is a new array made from the latest snapshots (see getSnapshot).
 	 * @return engaged array
 	 */
 	boolean[] getEngaged();
 
 	/**
 	 * Get an array of the stopped status of all motors.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * This is a new array made from the latest snapshots (see getSnapshot).
 	 * @return stopped array
 	 */
 	boolean[] getStopped();
 
 	/**
 	 * Get an array of velocities of all motors.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * This is a new array made from the latest snapshots (see getSnapshot).
 	 * @return velocity array
 	 */
 	double[] getVelocities();
@@ -171,14 +196,14 @@ public interface StepperBoard {
 
 	/**
 	 * Get an array of target positions of all motors.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * This is a new array made from the latest snapshots (see getSnapshot).
 	 * @return target array
 	 */
 	long[] getTargets();
 	
 	/**
 	 * Get an array of motor currents.
-	 * Note that this is retrieved from an array of saved states to save time.
+	 * This is a new array made from the latest snapshots (see getSnapshot).
 	 * @return current array
 	 */
 	double[] getCurrents();
@@ -190,6 +215,15 @@ public interface StepperBoard {
 	 */
 	double[] getCLimits();
 
+	/**
+	 * Get the latest snapshot of the state of a motor.
+	 * The values in a snapshot are consistent with each other,
+	 * and getting it does not lock or copy anything.
+	 * @param s Stepper
+	 * @return latest snapshot
+	 */
+	StepperSnapshot getSnapshot(Stepper s);
+
     /**
      * Check to see if the board is attached.
 	 * The board is polled to determine the current status 
@@ -209,6 +243,7 @@ public interface StepperBoard {
     /**
      * Set the engaged state of a motor.
 	 * An ENGAGED PropertyChangeEvent is fired with the old and new state. 
+	 * The command is written to the board on a separate thread, in order with the other commands.
      * @param s Stepper
      * @param state true=engaged, false=disengaged
      */
@@ -226,6 +261,7 @@ public interface StepperBoard {
     /**
      * Disengage all motors.
 	 * An ENGAGED PropertyChangeEvent is fired (with null for old and 'false' for new). 
+	 * The command is written to the board on a separate thread, in order with the other commands.
      */
 	void disengageAll();
 
@@ -259,10 +295,14 @@ public interface StepperBoard {
      * Set the velocity limit of a motor.
 	 * Note: this will limited by min resolution and max limit.
 	 * A VLIMIT PropertyChangeEvent is fired with the old and new values. 
+	 * The command is written to the board on a separate thread, so this returns right away.
+	 * A waiting command for the same stepper is replaced, and a value the board already has is not written.
      * @param s Stepper
      * @param val Velocity limit
+	 * @return future that is true when the value has been written to the board,
+	 * false if it didn't need to be written
      */
-	void setVelocityLimit(Stepper s, double val);
+	Future<Boolean> setVelocityLimit(Stepper s, double val);
 	
 	/**
 	 * Get the acceleration setting of the motor
@@ -275,10 +315,14 @@ public interface StepperBoard {
      * Set the acceleration of a motor.
 	 * Note: this will limited by min resolution and max limit.
 	 * A ALIMIT PropertyChangeEvent is fired with the old and new values. 
+	 * The command is written to the board on a separate thread, so this returns right away.
+	 * A waiting command for the same stepper is replaced, and a value the board already has is not written.
      * @param s Stepper
      * @param val acceleration
+	 * @return future that is true when the value has been written to the board,
+	 * false if it didn't need to be written
      */
-	void setAcceleration(Stepper s, double val);
+	Future<Boolean> setAcceleration(Stepper s, double val);
 
 	/**
 	 * Get the previously set velocity limit of a motor.
@@ -292,8 +336,10 @@ public interface StepperBoard {
      * Set the motor velocity limit to the maximum.
 	 * A VLIMIT PropertyChangeEvent is fired with the old and new values. 
      * @param s Stepper
+	 * @return future that is true when the value has been written to the board,
+	 * false if it didn't need to be written
      */
-    void setVelocityToMax(Stepper s);
+    Future<Boolean> setVelocityToMax(Stepper s);
 
     /**
      * Get the current position from the board.
@@ -304,6 +350,18 @@ public interface StepperBoard {
      */
 	long getCurrentPosition(Stepper s);
 
+    /**
+     * Get the current position, from the board only if the saved value could be too old.
+	 * The saved value is used when the stepper is stopped at its target (it can't change 
+	 * without a position event), or when the last position event is no older than maxAge.
+	 * Otherwise (or if maxAge is AUTHORITATIVE) the board is polled, and the saved value is updated.
+     * @param s Stepper
+	 * @param maxAge how old the value may be (for example 5 msec)
+	 * @param unit unit of maxAge
+     * @return Current position
+     */
+	long getCurrentPosition(Stepper s, long maxAge, TimeUnit unit);
+
     /**
      * Get the current position from the array.
 	 * Note that this is retrieved from an array of saved states to save time,
@@ -316,6 +374,7 @@ public interface StepperBoard {
     /**
      * Set the current position of a motor.
 	 * A POSITION PropertyChangeEvent is fired with the old and new values.
+	 * The command is written to the board on a separate thread, in order with the other commands.
      * @param s Stepper
      * @param val New current position
      */
@@ -330,15 +389,56 @@ public interface StepperBoard {
      */
 	long getTargetPosition(Stepper s);
 
+    /**
+     * Get the target position, from the board only if the saved value might not be on the board yet.
+	 * The saved value is used when it has been written to the board (or read from it),
+	 * unless maxAge is AUTHORITATIVE.
+     * @param s Stepper
+	 * @param maxAge AUTHORITATIVE to always poll the board, otherwise anything greater than 0
+	 * @param unit unit of maxAge
+     * @return Target position
+     */
+	long getTargetPosition(Stepper s, long maxAge, TimeUnit unit);
+
+	/**
+	 * Get the number of reads with a maximum age that used a saved value.
+	 * @return number of reads that didn't poll the board
+	 */
+	long getReadHits();
+
+	/**
+	 * Get the number of reads with a maximum age that had to poll the board
+	 * (AUTHORITATIVE reads always poll, and are not counted as hits or misses).
+	 * @return number of reads that polled the board
+	 */
+	long getReadMisses();
+
     /**
      * Set the target position of a motor.
 	 * A TARGET PropertyChangeEvent is fired with the old and new values.
 	 * Also, if the new target position is different than the current position,
 	 * a STOPPED PropertyChangeEvent is fired with the old state and 'false' for the new.
+	 * The command is written to the board on a separate thread, so this returns right away.
+	 * A waiting command for the same stepper is replaced, and a value the board already has is not written.
      * @param s Stepper
      * @param val Target position
+	 * @return future that is true when the value has been written to the board,
+	 * false if it didn't need to be written
      */
-	void setTargetPosition(Stepper s, long val);
+	Future<Boolean> setTargetPosition(Stepper s, long val);
+
+    /**
+     * Set the target position of a motor that is fed a new target every few msec
+	 * (see TrajectoryStreamer and Coordinator).
+	 * This is like setTargetPosition, but nothing is allocated for each target:
+	 * no TARGET PropertyChangeEvent is fired, there is no future to wait for,
+	 * and while the motor is moving the snapshot's target is updated with the next position change
+	 * (getTargetPosition has the new target right away).
+	 * A STOPPED PropertyChangeEvent is still fired if the new target starts the motor.
+     * @param s Stepper
+     * @param val Target position
+     */
+	void streamTargetPosition(Stepper s, long val);
 	
 	/**
 	 * Get the current limit of a motor.
@@ -353,13 +453,18 @@ public interface StepperBoard {
 	 * Set the current limit of a motor.
 	 * Note: this will limited by the max limit.
 	 * A CLIMIT PropertyChangeEvent is fired with the old and new values.
+	 * The command is written to the board on a separate thread, so this returns right away.
+	 * A waiting command for the same stepper is replaced, and a value the board already has is not written.
      * @param s Stepper
      * @param cur Current limit
+	 * @return future that is true when the value has been written to the board,
+	 * false if it didn't need to be written
 	 */
-	void setCurrentLimit(Stepper s, double cur);
+	Future<Boolean> setCurrentLimit(Stepper s, double cur);
 
 	/**
 	 * Disengage all steppers and close the Phidget.
+	 * Commands that are waiting to be written are written first.
 	 */
 	void close();
 
@@ -374,5 +479,37 @@ public interface StepperBoard {
 	 * @param listener
 	 */
 	void removePropertyChangeListener(PropertyChangeListener listener);
+
+	/**
+	 * Add a StepperListener.
+	 * This gets POSITION, STOPPED, VELOCITY, CURRENT and ALL_STOPPED changes
+	 * without the cost of PropertyChangeEvents.
+	 * Positions are coalesced to a rate that is plenty for a display (about 30 per second);
+	 * something that drives a motor from the positions should be a control listener.
+	 * @param listener
+	 */
+	void addStepperListener(StepperListener listener);
+
+	/**
+	 * Remove a StepperListener.
+	 * @param listener
+	 */
+	void removeStepperListener(StepperListener listener);
+
+	/**
+	 * Add a StepperListener for control (for example a stage that follows another).
+	 * This gets every position as soon as the board reports it (positions are only coalesced
+	 * while the listener is busy), instead of at the display rate of addStepperListener.
+	 * The other changes are the same as for a StepperListener.
+	 * Listeners are called on the board's event thread, so they must be quick.
+	 * @param listener
+	 */
+	void addControlListener(StepperListener listener);
+
+	/**
+	 * Remove a control listener.
+	 * @param listener
+	 */
+	void removeControlListener(StepperListener listener);
 	
 }
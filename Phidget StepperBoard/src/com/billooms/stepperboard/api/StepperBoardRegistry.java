@@ -0,0 +1,99 @@
+package com.billooms.stepperboard.api;
+
+import java.beans.PropertyChangeListener;
+import java.util.List;
+
+/**
+ * Keeps track of all the StepperBoards that are open, by serial number,
+ * so that one Indexer can drive several Phidget controllers.
+ * Each board has its own event and command threads, 
+ * so commands to different boards run in parallel.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface StepperBoardRegistry {
+	/** Property name used when a board is opened */
+	String PROP_OPEN = "open";
+	/** Property name used when a board is closed */
+	String PROP_CLOSE = "close";
+	/** Serial number meaning "any board" */
+	int ANY = -1;
+
+	/**
+	 * Get the default board (the one found with Lookup), opening it if it hasn't been already.
+	 * @return default StepperBoard
+	 */
+	StepperBoard getDefault();
+
+	/**
+	 * Open the Phidget board with the given serial number.
+	 * If it is already open (including as the default board), the open board is returned.
+	 * This waits for the default board to attach, so that the same board isn't opened twice.
+	 * This fires a PROP_OPEN property change with the new board.
+	 * @param serial serial number of the board
+	 * @return the StepperBoard
+	 * @throws IllegalStateException if the default board didn't attach (it might be this board)
+	 */
+	StepperBoard open(int serial);
+
+	/**
+	 * Open a simulated board with the given serial number
+	 * (for example to stand in for several boards during tests).
+	 * If a board with this serial number is already open, the open board is returned.
+	 * This fires a PROP_OPEN property change with the new board.
+	 * @param serial serial number for the simulated board
+	 * @param type 0 is 1062, 1 is 1063, 2 is 1067
+	 * @param realTime true = motors move in real time, false = virtual clock
+	 * @return the StepperBoard
+	 */
+	StepperBoard openSimulated(int serial, int type, boolean realTime);
+
+	/**
+	 * Get an open board.
+	 * @param serial serial number of the board
+	 * @return the StepperBoard (or null if no board with this serial number is open)
+	 */
+	StepperBoard get(int serial);
+
+	/**
+	 * Get the serial numbers of all the open boards.
+	 * @return unmodifiable list of serial numbers
+	 */
+	List<Integer> getSerialNumbers();
+
+	/**
+	 * Close a board and remove it from the registry.
+	 * This fires a PROP_CLOSE property change with the old board.
+	 * @param serial serial number of the board
+	 */
+	void close(int serial);
+
+	/**
+	 * Close all the boards in the registry.
+	 */
+	void closeAll();
+
+	/**
+	 * Add the given PropertyChangeListener to this object.
+	 * @param listener
+	 */
+	void addPropertyChangeListener(PropertyChangeListener listener);
+
+	/**
+	 * Remove the given PropertyChangeListener from this object.
+	 * @param listener
+	 */
+	void removePropertyChangeListener(PropertyChangeListener listener);
+}
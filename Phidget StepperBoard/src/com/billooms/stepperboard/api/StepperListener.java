@@ -0,0 +1,63 @@
+package com.billooms.stepperboard.api;
+
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+
+/**
+ * Listener for changes in the state of the steppers on a StepperBoard.
+ * This is the fast alternative to a PropertyChangeListener: values are passed as
+ * primitives, so nothing is boxed or allocated for each event, and there is no
+ * property name to look up.
+ * Callbacks are made on the board's event thread (not the EDT) and should return quickly.
+ * Extend StepperAdapter to implement only some of the callbacks.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface StepperListener {
+
+	/**
+	 * The position of a stepper changed.
+	 * @param s Stepper
+	 * @param position new position
+	 * @param nanoTime System.nanoTime() when the board reported the position
+	 * (the virtual time for a simulated board)
+	 */
+	void onPosition(Stepper s, long position, long nanoTime);
+
+	/**
+	 * A stepper started or stopped.
+	 * @param s Stepper
+	 * @param stopped true=stopped, false=moving
+	 */
+	void onStopped(Stepper s, boolean stopped);
+
+	/**
+	 * The velocity of a stepper changed.
+	 * @param s Stepper
+	 * @param velocity new velocity
+	 */
+	void onVelocity(Stepper s, double velocity);
+
+	/**
+	 * The current of a stepper changed.
+	 * @param s Stepper
+	 * @param current new current
+	 */
+	void onCurrent(Stepper s, double current);
+
+	/**
+	 * All the engaged steppers are stopped.
+	 */
+	void onAllStopped();
+}
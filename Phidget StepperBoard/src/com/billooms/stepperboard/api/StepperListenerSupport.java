@@ -0,0 +1,294 @@
+package com.billooms.stepperboard.api;
+
+import com.billooms.stepperboard.api.StepperBoard.Props;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+
+/**
+ * Keeps the StepperListeners of a StepperBoard and fires events to them
+ * (like PropertyChangeSupport does for PropertyChangeListeners).
+ * Firing an event does not allocate anything.
+ * Control listeners (see StepperBoard.addControlListener) are kept apart, because the board
+ * gives them positions at a higher rate (firePositionToControls) than the others (firePosition).
+ * All the other events go to both.
+ *
+ * For compatibility, POSITION, STOPPED, VELOCITY, CURRENT and ALL_STOPPED events are
+ * also passed on to the board's PropertyChangeListeners, but only while there are some:
+ * the conversion (and the boxing of values) is done by an internal listener that is
+ * added when the first PropertyChangeListener is added and removed with the last.
+ * The first event of each kind for a stepper has a null old value (the board only fires
+ * when a value changes, so it is always passed on).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class StepperListenerSupport {
+
+	private final static Stepper[] STEPPERS = Stepper.values();	// values() makes a new array every time
+	private final static StepperListener[] NONE = new StepperListener[0];
+
+	private final PropertyChangeSupport pcs;
+	private final PropertyChangeBridge bridge = new PropertyChangeBridge();
+	private volatile StepperListener[] listeners = NONE;	// copied on add/remove, never changed
+	private volatile StepperListener[] controls = NONE;		// control listeners (the same way)
+	private volatile StepperListener[] all = NONE;			// both, for the events other than positions
+
+	/**
+	 * Create support for StepperListeners.
+	 * @param pcs the board's PropertyChangeSupport
+	 */
+	public StepperListenerSupport(PropertyChangeSupport pcs) {
+		this.pcs = pcs;
+	}
+
+	/**
+	 * Add a StepperListener.
+	 * @param listener
+	 */
+	public synchronized void addStepperListener(StepperListener listener) {
+		listeners = with(listeners, listener);
+		all = with(all, listener);
+	}
+
+	/**
+	 * Remove a StepperListener.
+	 * @param listener
+	 */
+	public synchronized void removeStepperListener(StepperListener listener) {
+		StepperListener[] list = without(listeners, listener);
+		if (list != listeners) {
+			listeners = list;
+			all = without(all, listener);
+		}
+	}
+
+	/**
+	 * Add a control listener (see StepperBoard.addControlListener).
+	 * @param listener
+	 */
+	public synchronized void addControlListener(StepperListener listener) {
+		controls = with(controls, listener);
+		all = with(all, listener);
+	}
+
+	/**
+	 * Remove a control listener.
+	 * @param listener
+	 */
+	public synchronized void removeControlListener(StepperListener listener) {
+		StepperListener[] list = without(controls, listener);
+		if (list != controls) {
+			controls = list;
+			all = without(all, listener);
+		}
+	}
+
+	/**
+	 * Copy a list of listeners with one more.
+	 * @param list listeners
+	 * @param listener listener to add
+	 * @return new list
+	 */
+	private static StepperListener[] with(StepperListener[] list, StepperListener listener) {
+		StepperListener[] l = new StepperListener[list.length + 1];
+		System.arraycopy(list, 0, l, 0, list.length);
+		l[list.length] = listener;
+		return l;
+	}
+
+	/**
+	 * Copy a list of listeners without one.
+	 * @param list listeners
+	 * @param listener listener to remove
+	 * @return new list (or the same list if the listener isn't in it)
+	 */
+	private static StepperListener[] without(StepperListener[] list, StepperListener listener) {
+		for (int i = 0; i < list.length; i++) {
+			if (list[i] == listener) {
+				StepperListener[] l = new StepperListener[list.length - 1];
+				System.arraycopy(list, 0, l, 0, i);
+				System.arraycopy(list, i + 1, l, i, list.length - i - 1);
+				return l;
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Add a PropertyChangeListener to the board.
+	 * @param listener
+	 */
+	public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
+		if (pcs.getPropertyChangeListeners().length == 0) {
+			bridge.forget();
+			addStepperListener(bridge);
+		}
+		pcs.addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * Remove a PropertyChangeListener from the board.
+	 * @param listener
+	 */
+	public synchronized void removePropertyChangeListener(PropertyChangeListener listener) {
+		pcs.removePropertyChangeListener(listener);
+		if (pcs.getPropertyChangeListeners().length == 0) {
+			removeStepperListener(bridge);
+		}
+	}
+
+	/**
+	 * Fire a position change to the StepperListeners (and PropertyChangeListeners),
+	 * but not to the control listeners.
+	 * @param n stepper index
+	 * @param position new position
+	 * @param nanoTime time of the position
+	 */
+	public void firePosition(int n, long position, long nanoTime) {
+		StepperListener[] list = listeners;
+		for (int i = 0; i < list.length; i++) {
+			list[i].onPosition(STEPPERS[n], position, nanoTime);
+		}
+	}
+
+	/**
+	 * Fire a position change to the control listeners only.
+	 * @param n stepper index
+	 * @param position new position
+	 * @param nanoTime time of the position
+	 */
+	public void firePositionToControls(int n, long position, long nanoTime) {
+		StepperListener[] list = controls;
+		for (int i = 0; i < list.length; i++) {
+			list[i].onPosition(STEPPERS[n], position, nanoTime);
+		}
+	}
+
+	/**
+	 * Fire a change of the stopped state.
+	 * @param n stepper index
+	 * @param stopped true=stopped
+	 */
+	public void fireStopped(int n, boolean stopped) {
+		StepperListener[] list = all;
+		for (int i = 0; i < list.length; i++) {
+			list[i].onStopped(STEPPERS[n], stopped);
+		}
+	}
+
+	/**
+	 * Fire a velocity change.
+	 * @param n stepper index
+	 * @param velocity new velocity
+	 */
+	public void fireVelocity(int n, double velocity) {
+		StepperListener[] list = all;
+		for (int i = 0; i < list.length; i++) {
+			list[i].onVelocity(STEPPERS[n], velocity);
+		}
+	}
+
+	/**
+	 * Fire a current change.
+	 * @param n stepper index
+	 * @param current new current
+	 */
+	public void fireCurrent(int n, double current) {
+		StepperListener[] list = all;
+		for (int i = 0; i < list.length; i++) {
+			list[i].onCurrent(STEPPERS[n], current);
+		}
+	}
+
+	/**
+	 * Fire that all engaged steppers are stopped.
+	 */
+	public void fireAllStopped() {
+		StepperListener[] list = all;
+		for (int i = 0; i < list.length; i++) {
+			list[i].onAllStopped();
+		}
+	}
+
+	/**
+	 * Passes the typed events on to the PropertyChangeListeners
+	 * with the old and new values.
+	 * The old value is null until the bridge has seen a value, so the first event
+	 * isn't dropped by PropertyChangeSupport (for example STOPPED=false or POSITION=0).
+	 */
+	private class PropertyChangeBridge implements StepperListener {
+		private long[] position = new long[STEPPERS.length];
+		private boolean[] stopped = new boolean[STEPPERS.length];
+		private double[] velocity = new double[STEPPERS.length];
+		private double[] current = new double[STEPPERS.length];
+		private boolean[] knownPosition = new boolean[STEPPERS.length];	// true = the old value is known
+		private boolean[] knownStopped = new boolean[STEPPERS.length];
+		private boolean[] knownVelocity = new boolean[STEPPERS.length];
+		private boolean[] knownCurrent = new boolean[STEPPERS.length];
+
+		/**
+		 * Forget the old values (when the bridge is added again).
+		 */
+		void forget() {
+			for (int i = 0; i < STEPPERS.length; i++) {
+				knownPosition[i] = false;
+				knownStopped[i] = false;
+				knownVelocity[i] = false;
+				knownCurrent[i] = false;
+			}
+		}
+
+		@Override
+		public void onPosition(Stepper s, long pos, long nanoTime) {
+			int n = s.ordinal();
+			Long old = knownPosition[n] ? position[n] : null;
+			position[n] = pos;
+			knownPosition[n] = true;
+			pcs.firePropertyChange(Props.POSITION.toString(), old, pos);
+		}
+
+		@Override
+		public void onStopped(Stepper s, boolean stop) {
+			int n = s.ordinal();
+			Boolean old = knownStopped[n] ? stopped[n] : null;
+			stopped[n] = stop;
+			knownStopped[n] = true;
+			pcs.firePropertyChange(Props.STOPPED.toString(), (Object) old, stop);
+		}
+
+		@Override
+		public void onVelocity(Stepper s, double vel) {
+			int n = s.ordinal();
+			Double old = knownVelocity[n] ? velocity[n] : null;
+			velocity[n] = vel;
+			knownVelocity[n] = true;
+			pcs.firePropertyChange(Props.VELOCITY.toString(), old, vel);
+		}
+
+		@Override
+		public void onCurrent(Stepper s, double cur) {
+			int n = s.ordinal();
+			Double old = knownCurrent[n] ? current[n] : null;
+			current[n] = cur;
+			knownCurrent[n] = true;
+			pcs.firePropertyChange(Props.CURRENT.toString(), old, cur);
+		}
+
+		@Override
+		public void onAllStopped() {
+			pcs.firePropertyChange(Props.ALL_STOPPED.toString(), null, null);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.billooms.stepperboard.api;
+
+/**
+ * An immutable snapshot of the state of one stepper.
+ * All the values in a snapshot were saved together, so (unlike reading the
+ * separate arrays of saved states) the position, stopped flag, etc. always agree.
+ * A board publishes a new snapshot each time the state of a stepper changes,
+ * and readers get the latest one with no locking.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public final class StepperSnapshot {
+
+	/** Snapshot of a stepper that has never reported anything */
+	public final static StepperSnapshot EMPTY = new StepperSnapshot(0L, 0L, 0.0, false, false, 0.0, 0L, 0L);
+
+	private final long position;
+	private final long target;
+	private final double velocity;
+	private final boolean stopped;
+	private final boolean engaged;
+	private final double current;
+	private final long sequence;
+	private final long nanoTime;
+
+	/**
+	 * Create a new snapshot.
+	 * @param position current position
+	 * @param target target position
+	 * @param velocity velocity
+	 * @param stopped true=stopped
+	 * @param engaged true=engaged
+	 * @param current motor current
+	 * @param sequence sequence number (counts up by one for each snapshot of this stepper)
+	 * @param nanoTime System.nanoTime() when the state was saved
+	 */
+	public StepperSnapshot(long position, long target, double velocity, boolean stopped,
+			boolean engaged, double current, long sequence, long nanoTime) {
+		this.position = position;
+		this.target = target;
+		this.velocity = velocity;
+		this.stopped = stopped;
+		this.engaged = engaged;
+		this.current = current;
+		this.sequence = sequence;
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * Get the current position.
+	 * @return position
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Get the target position.
+	 * @return target position
+	 */
+	public long getTarget() {
+		return target;
+	}
+
+	/**
+	 * Get the velocity.
+	 * @return velocity
+	 */
+	public double getVelocity() {
+		return velocity;
+	}
+
+	/**
+	 * Check if the stepper is stopped.
+	 * @return true=stopped
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Check if the stepper is engaged.
+	 * @return true=engaged
+	 */
+	public boolean isEngaged() {
+		return engaged;
+	}
+
+	/**
+	 * Get the motor current.
+	 * @return current
+	 */
+	public double getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Get the sequence number of this snapshot.
+	 * A later snapshot of the same stepper always has a larger number.
+	 * @return sequence number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the time this snapshot was saved.
+	 * @return System.nanoTime() (the virtual time for a simulated board)
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
+	@Override
+	public String toString() {
+		return "StepperSnapshot #" + sequence + " pos=" + position + " target=" + target
+				+ " vel=" + velocity + " stopped=" + stopped + " engaged=" + engaged
+				+ " current=" + current;
+	}
+}
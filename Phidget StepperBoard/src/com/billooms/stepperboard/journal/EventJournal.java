@@ -0,0 +1,233 @@
+package com.billooms.stepperboard.journal;
+
+import com.billooms.stepperboard.api.StepperBoard.Props;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always-on recorder of board events and commands.
+ * Records are written to a memory-mapped ring file, so recording costs only a few
+ * stores into memory (no system call, no allocation, no lock) and the last records
+ * survive a crash of the program.
+ * 
+ * The file has a header followed by a ring of fixed-size records:
+ * <pre>
+ * header:  int magic, int version, int record size, int capacity (then padding)
+ * record:  long nanoTime, long index+1 (0 = empty), byte stepper, byte kind, 6 bytes padding, long value
+ * </pre>
+ * The kind is the ordinal of StepperBoard.Props, plus COMMAND for commands sent to the board.
+ * Doubles are stored as their raw long bits, booleans as 0 or 1.
+ * Each time a journal is opened a MARK record is written, so sessions can be told apart.
+ * Use JournalReader to read the file back.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class EventJournal {
+
+	/** System property for the directory of the journal files (empty to turn off recording) */
+	public final static String PROP_DIR = "com.billooms.stepperboard.journal";
+	/** Default number of records in the ring */
+	public final static int DEFAULT_CAPACITY = 65536;
+	/** Size of the header in bytes */
+	public final static int HEADER_SIZE = 32;
+	/** Size of a record in bytes */
+	public final static int RECORD_SIZE = 32;
+	/** Magic number at the start of the file ("IDXJ") */
+	public final static int MAGIC = 0x4944584A;
+	/** File format version */
+	public final static int VERSION = 1;
+	/** Added to the kind of a command sent to the board */
+	public final static int COMMAND = 0x40;
+	/** Kind of the record written when a journal is opened (value is System.currentTimeMillis()) */
+	public final static int MARK = 0x3F;
+
+	/** A journal that records nothing (when the file can't be opened) */
+	public final static EventJournal NONE = new EventJournal();
+
+	private final MappedByteBuffer buf;
+	private final int capacity;
+	private final AtomicLong next;
+
+	/**
+	 * Create a journal that records nothing.
+	 */
+	private EventJournal() {
+		buf = null;
+		capacity = 0;
+		next = null;
+	}
+
+	/**
+	 * Open (or create) a journal file.
+	 * Recording continues after the newest record already in the file.
+	 * @param file journal file
+	 * @param capacity number of records in the ring (ignored if the file already exists)
+	 * @throws IOException if the file can't be opened or isn't a journal file
+	 */
+	public EventJournal(File file, int capacity) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() >= HEADER_SIZE) {
+				raf.seek(0);
+				if ((raf.readInt() != MAGIC) || (raf.readInt() != VERSION) || (raf.readInt() != RECORD_SIZE)) {
+					throw new IOException("Not a stepper board journal: " + file);
+				}
+				capacity = raf.readInt();
+			}
+			this.capacity = capacity;
+			long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+			buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();		// the mapping stays valid
+		}
+		buf.putInt(0, MAGIC);
+		buf.putInt(4, VERSION);
+		buf.putInt(8, RECORD_SIZE);
+		buf.putInt(12, capacity);
+		long newest = -1;
+		for (int i = 0; i < capacity; i++) {
+			newest = Math.max(newest, buf.getLong(HEADER_SIZE + i * RECORD_SIZE + 8) - 1);
+		}
+		next = new AtomicLong(newest + 1);
+		write(MARK, 0, System.currentTimeMillis());
+	}
+
+	/**
+	 * Open the journal for a board in the journal directory.
+	 * The directory is given by the PROP_DIR system property, 
+	 * else it is var/log in the NetBeans user directory (or the temp directory).
+	 * @param name name of the journal (for example the board's serial number)
+	 * @return the journal (or NONE if recording is turned off or the file can't be opened)
+	 */
+	public static EventJournal openDefault(String name) {
+		String dir = System.getProperty(PROP_DIR);
+		if (dir == null) {
+			String user = System.getProperty("netbeans.user");
+			dir = (user != null) ? (user + File.separator + "var" + File.separator + "log") 
+					: System.getProperty("java.io.tmpdir");
+		}
+		if (dir.isEmpty()) {
+			return NONE;
+		}
+		try {
+			File d = new File(dir);
+			d.mkdirs();
+			return new EventJournal(new File(d, "stepperboard-" + name + ".journal"), DEFAULT_CAPACITY);
+		} catch (IOException ex) {
+			System.out.println("Warning: can't open the stepper board journal: " + ex.getMessage());
+			return NONE;
+		}
+	}
+
+	/**
+	 * Check if this journal records anything.
+	 * @return true = recording
+	 */
+	public boolean isRecording() {
+		return buf != null;
+	}
+
+	/**
+	 * Record an event with a long (or boolean as 0/1) value.
+	 * @param kind kind of event
+	 * @param n stepper index (or input index)
+	 * @param value value
+	 */
+	public void event(Props kind, int n, long value) {
+		write(kind.ordinal(), n, value);
+	}
+
+	/**
+	 * Record an event with a double value.
+	 * @param kind kind of event
+	 * @param n stepper index
+	 * @param value value
+	 */
+	public void event(Props kind, int n, double value) {
+		write(kind.ordinal(), n, Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * Record a command with a long (or boolean as 0/1) value.
+	 * @param kind kind of command
+	 * @param n stepper index
+	 * @param value value
+	 */
+	public void command(Props kind, int n, long value) {
+		write(COMMAND + kind.ordinal(), n, value);
+	}
+
+	/**
+	 * Record a command with a double value.
+	 * @param kind kind of command
+	 * @param n stepper index
+	 * @param value value
+	 */
+	public void command(Props kind, int n, double value) {
+		write(COMMAND + kind.ordinal(), n, Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * Write a record into the next slot of the ring.
+	 * Each writer claims its own slot, so writers on different threads don't wait for each other.
+	 * @param kind kind (with COMMAND added for commands)
+	 * @param n stepper index
+	 * @param value value bits
+	 */
+	private void write(int kind, int n, long value) {
+		if (buf == null) {
+			return;
+		}
+		long index = next.getAndIncrement();
+		int pos = HEADER_SIZE + (int) (index % capacity) * RECORD_SIZE;
+		buf.putLong(pos + 8, 0L);				// slot is not valid while it is being written
+		buf.putLong(pos, System.nanoTime());
+		buf.put(pos + 16, (byte) n);
+		buf.put(pos + 17, (byte) kind);
+		buf.putLong(pos + 24, value);
+		buf.putLong(pos + 8, index + 1);		// now it is
+	}
+
+	/**
+	 * Write the records to the disk now (this is also done by the OS from time to time).
+	 */
+	public void force() {
+		if (buf != null) {
+			buf.force();
+		}
+	}
+
+	/**
+	 * Check if a kind of event or command has a double value.
+	 * @param kind kind
+	 * @return true = double, false = long or boolean
+	 */
+	public static boolean isDouble(Props kind) {
+		switch (kind) {
+			case VELOCITY:
+			case VLIMIT:
+			case ALIMIT:
+			case CURRENT:
+			case CLIMIT:
+				return true;
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package com.billooms.stepperboard.journal;
+
+import com.billooms.stepperboard.api.StepperBoard.Props;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.StepperListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a journal file written by EventJournal, 
+ * and replays the recorded events through the StepperListener API
+ * at real or accelerated speed (to reproduce timing problems and to benchmark listeners).
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class JournalReader {
+
+	private final static Stepper[] STEPPERS = Stepper.values();
+	private final static Props[] PROPS = Props.values();
+
+	// records in order, oldest first
+	private final int size;
+	private final long[] nanoTime;
+	private final byte[] stepper;
+	private final byte[] kind;
+	private final long[] value;
+
+	/**
+	 * Read all the records of a journal file.
+	 * @param file journal file
+	 * @throws IOException if the file can't be read or isn't a journal file
+	 */
+	public JournalReader(File file) throws IOException {
+		ByteBuffer buf;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		if ((buf.limit() < EventJournal.HEADER_SIZE) || (buf.getInt(0) != EventJournal.MAGIC) 
+				|| (buf.getInt(4) != EventJournal.VERSION) || (buf.getInt(8) != EventJournal.RECORD_SIZE)) {
+			throw new IOException("Not a stepper board journal: " + file);
+		}
+		int capacity = Math.min(buf.getInt(12), (buf.limit() - EventJournal.HEADER_SIZE) / EventJournal.RECORD_SIZE);
+		
+		long[] order = new long[capacity];		// index in the high bits, slot in the low bits
+		int n = 0;
+		for (int i = 0; i < capacity; i++) {
+			long index = buf.getLong(EventJournal.HEADER_SIZE + i * EventJournal.RECORD_SIZE + 8) - 1;
+			if (index >= 0) {
+				order[n++] = (index * capacity) + i;
+			}
+		}
+		Arrays.sort(order, 0, n);
+		size = n;
+		nanoTime = new long[n];
+		stepper = new byte[n];
+		kind = new byte[n];
+		value = new long[n];
+		for (int i = 0; i < n; i++) {
+			int pos = EventJournal.HEADER_SIZE + (int) (order[i] % capacity) * EventJournal.RECORD_SIZE;
+			nanoTime[i] = buf.getLong(pos);
+			stepper[i] = buf.get(pos + 16);
+			kind[i] = buf.get(pos + 17);
+			value[i] = buf.getLong(pos + 24);
+		}
+	}
+
+	/**
+	 * Get the number of records.
+	 * @return number of records
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the time of a record.
+	 * @param i record number (0 is the oldest)
+	 * @return System.nanoTime() when the record was written
+	 */
+	public long getNanoTime(int i) {
+		return nanoTime[i];
+	}
+
+	/**
+	 * Get the stepper (or input) index of a record.
+	 * @param i record number
+	 * @return stepper index
+	 */
+	public int getStepper(int i) {
+		return stepper[i];
+	}
+
+	/**
+	 * Check if a record is a MARK (the start of a session).
+	 * @param i record number
+	 * @return true = MARK
+	 */
+	public boolean isMark(int i) {
+		return kind[i] == EventJournal.MARK;
+	}
+
+	/**
+	 * Check if a record is a command sent to the board.
+	 * @param i record number
+	 * @return true = command, false = event from the board (or a MARK)
+	 */
+	public boolean isCommand(int i) {
+		return (kind[i] & EventJournal.COMMAND) != 0;
+	}
+
+	/**
+	 * Get the kind of a record.
+	 * @param i record number
+	 * @return kind (or null for a MARK)
+	 */
+	public Props getKind(int i) {
+		if (isMark(i)) {
+			return null;
+		}
+		return PROPS[kind[i] & ~EventJournal.COMMAND];
+	}
+
+	/**
+	 * Get the value of a record as a long (positions, targets, MARK time).
+	 * @param i record number
+	 * @return value
+	 */
+	public long getLong(int i) {
+		return value[i];
+	}
+
+	/**
+	 * Get the value of a record as a double (velocities, currents and limits).
+	 * @param i record number
+	 * @return value
+	 */
+	public double getDouble(int i) {
+		return Double.longBitsToDouble(value[i]);
+	}
+
+	/**
+	 * Get the value of a record as a boolean (stopped, engaged, input).
+	 * @param i record number
+	 * @return value
+	 */
+	public boolean getBoolean(int i) {
+		return value[i] != 0L;
+	}
+
+	/**
+	 * Find the start of the last session in the journal.
+	 * @return record number of the last MARK (or 0 if there is none)
+	 */
+	public int lastSession() {
+		for (int i = size - 1; i >= 0; i--) {
+			if (isMark(i)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Feed the recorded events to a listener, keeping the recorded timing.
+	 * Commands and MARKs are skipped.
+	 * The nanoTime given with a position is the time it is replayed.
+	 * This returns when the replay is finished (or the thread is interrupted).
+	 * @param listener StepperListener
+	 * @param from first record number
+	 * @param to one past the last record number
+	 * @param speed 1.0 = real time, 10.0 = ten times as fast, 0.0 = as fast as possible
+	 * @return number of events replayed
+	 */
+	public int replay(StepperListener listener, int from, int to, double speed) {
+		if (from >= to) {
+			return 0;
+		}
+		long t0 = nanoTime[from];
+		long start = System.nanoTime();
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (isMark(i) || isCommand(i)) {
+				continue;
+			}
+			long when;
+			if (speed > 0.0) {
+				when = start + (long) ((nanoTime[i] - t0) / speed);
+				long wait = when - System.nanoTime();
+				if (wait > 0) {
+					try {
+						Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return count;
+					}
+				}
+			} else {
+				when = System.nanoTime();
+			}
+			Stepper s = STEPPERS[stepper[i] & (STEPPERS.length - 1)];
+			switch (PROPS[kind[i]]) {
+				case POSITION:
+					listener.onPosition(s, value[i], when);
+					break;
+				case STOPPED:
+					listener.onStopped(s, value[i] != 0L);
+					break;
+				case VELOCITY:
+					listener.onVelocity(s, Double.longBitsToDouble(value[i]));
+					break;
+				case CURRENT:
+					listener.onCurrent(s, Double.longBitsToDouble(value[i]));
+					break;
+				case ALL_STOPPED:
+					listener.onAllStopped();
+					break;
+				default:
+					continue;		// not a StepperListener event
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Feed the events of the last session to a listener.
+	 * @param listener StepperListener
+	 * @param speed 1.0 = real time, 10.0 = ten times as fast, 0.0 = as fast as possible
+	 * @return number of events replayed
+	 */
+	public int replay(StepperListener listener, double speed) {
+		return replay(listener, lastSession(), size, speed);
+	}
+
+	/**
+	 * Print the records in readable form.
+	 * @param out where to print
+	 * @param from first record number
+	 * @param to one past the last record number
+	 */
+	public void print(PrintStream out, int from, int to) {
+		long t0 = (from < to) ? nanoTime[from] : 0L;
+		for (int i = from; i < to; i++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%12.6f ", (nanoTime[i] - t0) * 1.0E-9));
+			if (isMark(i)) {
+				sb.append("---- session started ").append(new java.util.Date(value[i]));
+			} else {
+				Props k = getKind(i);
+				sb.append(isCommand(i) ? "cmd " : "evt ").append(k).append(" ").append(stepper[i]).append(" ");
+				if (EventJournal.isDouble(k)) {
+					sb.append(getDouble(i));
+				} else {
+					sb.append(value[i]);
+				}
+			}
+			out.println(sb);
+		}
+	}
+}
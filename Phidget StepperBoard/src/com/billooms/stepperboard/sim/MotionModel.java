@@ -0,0 +1,160 @@
+package com.billooms.stepperboard.sim;
+
+/**
+ * Trapezoidal motion model of one stepper on a simulated board.
+ * The motor accelerates at a constant rate up to the velocity limit,
+ * cruises, and then decelerates at the same rate so that it arrives at
+ * the target with zero velocity (as the Phidget controller does).
+ * Positions are kept as doubles internally and reported as whole micro-steps.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+class MotionModel {
+
+	private double position = 0.0;		// micro-steps
+	private double velocity = 0.0;		// micro-steps/sec (signed)
+	private long target = 0;			// micro-steps
+	private double vLimit;				// micro-steps/sec
+	private double accel;				// micro-steps/sec^2
+	private boolean engaged = false;
+
+	/**
+	 * Create a motion model with the given limits.
+	 * @param vLimit velocity limit in micro-steps/sec
+	 * @param accel acceleration in micro-steps/sec^2
+	 */
+	MotionModel(double vLimit, double accel) {
+		this.vLimit = vLimit;
+		this.accel = accel;
+	}
+
+	/**
+	 * Advance the model by the given time.
+	 * Nothing moves while the motor is disengaged.
+	 * @param dt time in seconds
+	 */
+	void step(double dt) {
+		if (!engaged) {
+			velocity = 0.0;
+			return;
+		}
+		double togo = target - position;
+		if ((togo == 0.0) && (velocity == 0.0)) {
+			return;
+		}
+		double dir = Math.signum(togo);
+		// fastest velocity that can still stop at the target
+		double vWanted = dir * Math.min(vLimit, Math.sqrt(2.0 * accel * Math.abs(togo)));
+		double dv = accel * dt;
+		if (velocity < vWanted) {
+			velocity = Math.min(velocity + dv, vWanted);
+		} else {
+			velocity = Math.max(velocity - dv, vWanted);
+		}
+		double next = position + velocity * dt;
+		if (((target - next) * dir <= 0.0) && (Math.abs(velocity) <= dv)) {
+			position = target;		// arrived (slow enough to stop in this tick)
+			velocity = 0.0;
+		} else {
+			position = next;		// might overshoot if the target was moved closer
+		}
+	}
+
+	/**
+	 * Get the position rounded to whole micro-steps (as reported by a board).
+	 * @return position in micro-steps
+	 */
+	long getPosition() {
+		return (long) Math.floor(position + 0.5);
+	}
+
+	/**
+	 * Set the current position without moving the motor.
+	 * Note: like the hardware, the target is not changed.
+	 * @param pos position in micro-steps
+	 */
+	void setPosition(long pos) {
+		position = pos;
+		velocity = 0.0;
+	}
+
+	/**
+	 * Get the velocity.
+	 * @return velocity in micro-steps/sec (signed)
+	 */
+	double getVelocity() {
+		return velocity;
+	}
+
+	/**
+	 * Get the target position.
+	 * @return target in micro-steps
+	 */
+	long getTarget() {
+		return target;
+	}
+
+	/**
+	 * Set the target position.
+	 * @param tar target in micro-steps
+	 */
+	void setTarget(long tar) {
+		target = tar;
+	}
+
+	/**
+	 * Set the velocity limit.
+	 * @param v velocity limit in micro-steps/sec
+	 */
+	void setVelocityLimit(double v) {
+		vLimit = v;
+	}
+
+	/**
+	 * Set the acceleration.
+	 * @param a acceleration in micro-steps/sec^2
+	 */
+	void setAcceleration(double a) {
+		accel = a;
+	}
+
+	/**
+	 * Check if the motor is engaged.
+	 * @return true=engaged
+	 */
+	boolean isEngaged() {
+		return engaged;
+	}
+
+	/**
+	 * Engage or disengage the motor.
+	 * @param state true=engaged
+	 */
+	void setEngaged(boolean state) {
+		engaged = state;
+		if (!state) {
+			velocity = 0.0;
+		}
+	}
+
+	/**
+	 * Check if the motor is stopped.
+	 * A disengaged motor is always stopped.
+	 * @return true=stopped
+	 */
+	boolean isStopped() {
+		return !engaged || ((velocity == 0.0) && (position == target));
+	}
+}
@@ -0,0 +1,791 @@
+package com.billooms.stepperboard.sim;
+
+import com.billooms.stepperboard.api.StepperBoard;
+import com.billooms.stepperboard.api.StepperBoard.Props;
+import com.billooms.stepperboard.api.StepperBoard.Stepper;
+import com.billooms.stepperboard.api.StepperListener;
+import com.billooms.stepperboard.api.StepperListenerSupport;
+import com.billooms.stepperboard.api.StepperSnapshot;
+import com.phidgets.StepperPhidget;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * A simulated StepperBoard that needs no hardware.
+ * Each stepper follows a trapezoidal velocity profile limited by its velocity limit
+ * and acceleration, and POSITION, STOPPED, VELOCITY and ALL_STOPPED
+ * events are fired at about the same rate as a real board.
+ *
+ * The board runs either in real time (a background thread advances the motors)
+ * or on a virtual clock (nothing moves until advance() or runUntilStopped() is called),
+ * so the same control code can be benchmarked headless and deterministically.
+ * Like the real board, control listeners get every position, and the other listeners
+ * get positions no more often than the display rate (see setDisplayRate).
+ *
+ * The default instance is registered after the Phidget board, so
+ * Lookup.getDefault().lookup(StepperBoard.class) still finds the real board.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = StepperBoard.class, position = 1000)
+public class SimulatedStepperBoard implements StepperBoard {
+
+	/** Default time between position events (a 1062 reports about every 8 msec) */
+	public final static long DEFAULT_EVENT_PERIOD = 8000000L;
+	/** Default maximum rate of positions for the listeners that aren't control listeners (like the real board) */
+	public final static double DEFAULT_DISPLAY_RATE = 30.0;
+
+	private final static int MAXSTEPPERS = 4;
+	private final static int MAXINPUTS = 4;
+	// Characteristics of the simulated 1062, 1063 and 1067 boards
+	private final static int[] N_STEPPERS = {4, 1, 1};
+	private final static int[] N_INPUTS = {0, 4, 0};
+	private final static double[] MAX_VELOCITY = {383.25, 32768.0, 115000.0};
+	private final static double[] MAX_ACCEL = {8859.375, 10000000.0, 10000000.0};
+	// commands take effect right away, so they are always written
+	private final static Future<Boolean> WRITTEN = CompletableFuture.completedFuture(Boolean.TRUE);
+
+	private boolean inputState[] = new boolean[MAXINPUTS];
+	private boolean engaged[] = new boolean[MAXSTEPPERS];
+	private boolean stopped[] = new boolean[MAXSTEPPERS];
+	private long position[] = new long[MAXSTEPPERS];
+	private long target[] = new long[MAXSTEPPERS];
+	private double velocity[] = new double[MAXSTEPPERS];
+	private double vLimit[] = new double[MAXSTEPPERS];
+	private double aLimit[] = new double[MAXSTEPPERS];
+	private double[] current = new double[MAXSTEPPERS];
+	private double[] cLimit = new double[MAXSTEPPERS];
+	private MotionModel[] motors = new MotionModel[MAXSTEPPERS];
+	private final AtomicReferenceArray<StepperSnapshot> snapshot = new AtomicReferenceArray<StepperSnapshot>(MAXSTEPPERS);
+
+	private final int type;				// 0 is 1062; 1 is 1063; 2 is 1067
+	private final int serial;
+	private final int nSteppers;
+	private final boolean realTime;		// true = real time, false = virtual clock
+	private long eventPeriod = DEFAULT_EVENT_PERIOD;
+	private volatile long displayPeriod;	// nanoseconds between positions for the display
+	private final long[] displayTime = new long[MAXSTEPPERS];		// when the display got a position
+	private final boolean[] displayPending = new boolean[MAXSTEPPERS];	// a position is waiting for the display
+	private long now = 0;				// virtual time in nanoseconds
+	private boolean attached = true;
+	private Thread ticker = null;		// advances the motors in real time
+	private long readHits = 0;			// reads with a maximum age
+	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+	private StepperListenerSupport sls = new StepperListenerSupport(pcs);
+
+	/**
+	 * Create a simulated 1062 board running in real time.
+	 */
+	public SimulatedStepperBoard() {
+		this(0, true);
+	}
+
+	/**
+	 * Create a simulated board.
+	 * @param type 0 is 1062, 1 is 1063, 2 is 1067
+	 * @param realTime true = motors move in real time,
+	 * false = motors move only when advance() or runUntilStopped() is called
+	 */
+	public SimulatedStepperBoard(int type, boolean realTime) {
+		this(type, realTime, 0);
+	}
+
+	/**
+	 * Create a simulated board with a serial number 
+	 * (so that several simulated boards can stand in for several real ones).
+	 * @param type 0 is 1062, 1 is 1063, 2 is 1067
+	 * @param realTime true = motors move in real time,
+	 * false = motors move only when advance() or runUntilStopped() is called
+	 * @param serial serial number of the simulated board
+	 */
+	public SimulatedStepperBoard(int type, boolean realTime, int serial) {
+		this.type = type;
+		this.serial = serial;
+		this.realTime = realTime;
+		this.nSteppers = N_STEPPERS[type];
+		setDisplayRate(DEFAULT_DISPLAY_RATE);
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			vLimit[i] = MAX_VELOCITY[type];
+			aLimit[i] = DEFAULT_ACCEL;
+			stopped[i] = true;
+			motors[i] = new MotionModel(vLimit[i], aLimit[i]);
+			snapshot.set(i, StepperSnapshot.EMPTY);
+			publish(i);
+		}
+	}
+
+	/**
+	 * Check if the board runs in real time.
+	 * @return true = real time, false = virtual clock
+	 */
+	public boolean isRealTime() {
+		return realTime;
+	}
+
+	/**
+	 * Get the time between position events.
+	 * @return time in nanoseconds
+	 */
+	public long getEventPeriod() {
+		return eventPeriod;
+	}
+
+	/**
+	 * Set the time between position events.
+	 * @param nanos time in nanoseconds (minimum of 1 msec)
+	 */
+	public void setEventPeriod(long nanos) {
+		eventPeriod = Math.max(nanos, 1000000L);
+	}
+
+	/**
+	 * Set the maximum rate of positions for the listeners that aren't control listeners.
+	 * The last position before a motor stops is always delivered.
+	 * @param perSecond positions per second (0 or less means no limit)
+	 */
+	public final void setDisplayRate(double perSecond) {
+		displayPeriod = (perSecond > 0.0) ? (long) (1.0E9 / perSecond) : 0L;
+	}
+
+	/**
+	 * Get the time of the board's clock.
+	 * This is the virtual time if not running in real time.
+	 * @return time in nanoseconds
+	 */
+	public synchronized long nanoTime() {
+		return realTime ? System.nanoTime() : now;
+	}
+
+	/**
+	 * Advance the virtual clock by the given time,
+	 * moving the motors and firing events one event period at a time.
+	 * Events are fired on the calling thread.
+	 * @param nanos time in nanoseconds
+	 * @throws IllegalStateException if the board runs in real time
+	 */
+	public void advance(long nanos) {
+		if (realTime) {
+			throw new IllegalStateException("advance() needs a virtual clock");
+		}
+		long end = now + nanos;
+		while (now < end) {
+			long dt = Math.min(eventPeriod, end - now);
+			synchronized (this) {
+				now += dt;
+			}
+			tick(dt);
+		}
+	}
+
+	/**
+	 * Advance the virtual clock until all engaged motors are stopped.
+	 * @param maxNanos give up after this much virtual time
+	 * @return virtual time that elapsed in nanoseconds
+	 * @throws IllegalStateException if the board runs in real time
+	 */
+	public long runUntilStopped(long maxNanos) {
+		long start = now;
+		while (isMoving() && (now - start < maxNanos)) {
+			advance(eventPeriod);
+		}
+		return now - start;
+	}
+
+	/**
+	 * Check if any engaged motor is moving.
+	 * @return true = something is moving
+	 */
+	public synchronized boolean isMoving() {
+		for (int i = 0; i < nSteppers; i++) {
+			if (!motors[i].isStopped()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Simulate attaching or detaching the board.
+	 * An ATTACH or DETACH PropertyChangeEvent is fired.
+	 * @param state true=attach, false=detach
+	 */
+	public void setAttached(boolean state) {
+		attached = state;
+		if (!state) {
+			disengageAll();
+		}
+		pcs.firePropertyChange((state ? Props.ATTACH : Props.DETACH).toString(), null, null);
+	}
+
+	/**
+	 * Simulate an input changing state.
+	 * An INPUT PropertyChangeEvent is fired with the old and new states.
+	 * @param in Input
+	 * @param state new state
+	 */
+	public void setInState(int in, boolean state) {
+		boolean old = inputState[in];
+		inputState[in] = state;
+		pcs.firePropertyChange(Props.INPUT.toString(), old, state);
+	}
+
+	/**
+	 * Move all the motors by the given time and fire events for what changed.
+	 * @param dtNanos time in nanoseconds
+	 */
+	private void tick(long dtNanos) {
+		double dt = dtNanos * 1.0E-9;
+		long t = nanoTime();
+		boolean posChanged = false;
+		for (int n = 0; n < nSteppers; n++) {
+			long oldPos, newPos;
+			boolean oldStop, newStop, report;
+			double oldVel, newVel;
+			synchronized (this) {
+				MotionModel m = motors[n];
+				m.step(dt);
+				oldPos = position[n];
+				newPos = m.getPosition();
+				position[n] = newPos;
+				oldVel = velocity[n];
+				newVel = m.getVelocity();
+				velocity[n] = newVel;
+				oldStop = stopped[n];
+				newStop = m.isStopped();
+				// the board reports each new position, and a last time when the motor stops
+				report = (newPos != oldPos) || (newStop && !oldStop);
+				if (report) {
+					stopped[n] = newStop;		// stopped is checked on each position change
+				}
+				if (report || (newVel != oldVel)) {
+					publish(n);
+				}
+			}
+			if (newVel != oldVel) {
+				sls.fireVelocity(n, newVel);
+			}
+			if (report) {
+				if (newPos != oldPos) {
+					sls.firePositionToControls(n, newPos, t);
+					displayPending[n] = true;
+				}
+				if (displayPending[n] && (newStop || (t - displayTime[n] >= displayPeriod))) {
+					displayPending[n] = false;		// the display gets the latest position
+					displayTime[n] = t;
+					sls.firePosition(n, newPos, t);
+				}
+				if (newStop != oldStop) {
+					sls.fireStopped(n, newStop);
+				}
+				posChanged = true;
+			}
+		}
+		if (posChanged) {
+			updateMoving();
+		}
+	}
+
+	/**
+	 * Publish a new snapshot of a stepper from the tables.
+	 * Must be called while synchronized, right after the tables are changed.
+	 * @param n stepper index
+	 */
+	private void publish(int n) {
+		long seq = snapshot.get(n).getSequence() + 1;
+		snapshot.set(n, new StepperSnapshot(position[n], target[n], velocity[n], stopped[n],
+				engaged[n], current[n], seq, nanoTime()));
+	}
+
+	/**
+	 * Check to see if all motors are stopped.
+	 * An ALL_STOPPED PropertyChangeEvent is fired when all are stopped.
+	 */
+	private void updateMoving() {
+		boolean moving = false;
+		synchronized (this) {
+			for (int i = 0; i < nSteppers; i++) {
+				StepperSnapshot snap = snapshot.get(i);
+				if (snap.isEngaged() && !snap.isStopped()) {
+					moving = true;
+					break;
+				}
+			}
+		}
+		if (!moving) {
+			sls.fireAllStopped();
+		}
+	}
+
+	/**
+	 * Make sure the real time thread is running.
+	 * It is only started when a motor is first engaged,
+	 * so an unused simulated board costs nothing.
+	 */
+	private synchronized void startTicker() {
+		if (!realTime || (ticker != null)) {
+			return;
+		}
+		ticker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long last = System.nanoTime();
+				while (!Thread.currentThread().isInterrupted()) {
+					try {
+						Thread.sleep(eventPeriod / 1000000L, (int) (eventPeriod % 1000000L));
+					} catch (InterruptedException ex) {
+						break;
+					}
+					long t = System.nanoTime();
+					tick(t - last);
+					last = t;
+				}
+			}
+		}, "SimulatedStepperBoard " + serial);
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/**
+	 * There is no Phidget behind a simulated board.
+	 * @return null
+	 */
+	@Override
+	public StepperPhidget getPhidget() {
+		return null;
+	}
+
+	@Override
+	public int getSerialNumber() {
+		return serial;
+	}
+
+	@Override
+	public String getHistogramPrefix() {
+		return "sim." + serial;
+	}
+
+	@Override
+	public int getType() {
+		return type;
+	}
+
+	@Override
+	public int getMicroStep() {
+		return MICRO_STEP[type];
+	}
+
+	@Override
+	public int getNInputs() {
+		return N_INPUTS[type];
+	}
+
+	@Override
+	public int getNSteppers() {
+		return nSteppers;
+	}
+
+	@Override
+	public boolean[] getInStates() {
+		return inputState;
+	}
+
+	@Override
+	public boolean getInState(int in) {
+		return inputState[in];
+	}
+
+	@Override
+	public long[] getPositions() {
+		long[] pos = new long[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			pos[i] = snapshot.get(i).getPosition();
+		}
+		return pos;
+	}
+
+	@Override
+	public boolean[] getEngaged() {
+		boolean[] eng = new boolean[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			eng[i] = snapshot.get(i).isEngaged();
+		}
+		return eng;
+	}
+
+	@Override
+	public boolean[] getStopped() {
+		boolean[] stop = new boolean[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			stop[i] = snapshot.get(i).isStopped();
+		}
+		return stop;
+	}
+
+	@Override
+	public double[] getVelocities() {
+		double[] vel = new double[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			vel[i] = snapshot.get(i).getVelocity();
+		}
+		return vel;
+	}
+
+	@Override
+	public double[] getVLimits() {
+		return vLimit;
+	}
+
+	@Override
+	public double[] getALimits() {
+		return aLimit;
+	}
+
+	@Override
+	public long[] getTargets() {
+		long[] tar = new long[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			tar[i] = snapshot.get(i).getTarget();
+		}
+		return tar;
+	}
+
+	@Override
+	public double[] getCurrents() {
+		double[] cur = new double[MAXSTEPPERS];
+		for (int i = 0; i < MAXSTEPPERS; i++) {
+			cur[i] = snapshot.get(i).getCurrent();
+		}
+		return cur;
+	}
+
+	@Override
+	public double[] getCLimits() {
+		return cLimit;
+	}
+
+	@Override
+	public StepperSnapshot getSnapshot(Stepper s) {
+		return snapshot.get(s.ordinal());
+	}
+
+	/**
+	 * A simulated board is attached when it is created, so this does nothing.
+	 */
+	@Override
+	public void open() {
+	}
+
+	@Override
+	public boolean isAttached() {
+		return attached;
+	}
+
+	@Override
+	public boolean getEngaged(Stepper s) {
+		return snapshot.get(s.ordinal()).isEngaged();
+	}
+
+	@Override
+	public void setEngaged(Stepper s, boolean state) {
+		boolean old;
+		double cur;
+		synchronized (this) {
+			motors[s.ordinal()].setEngaged(state);
+			old = engaged[s.ordinal()];
+			engaged[s.ordinal()] = state;
+			cur = state ? cLimit[s.ordinal()] : 0.0;
+			current[s.ordinal()] = cur;
+			publish(s.ordinal());
+		}
+		pcs.firePropertyChange(Props.ENGAGED.toString(), old, state);
+		sls.fireCurrent(s.ordinal(), cur);
+		if (state) {
+			startTicker();
+		}
+		stopCheck(s);	// make sure the table is updated
+	}
+
+	@Override
+	public boolean stopCheck(Stepper s) {
+		boolean old, isStopped;
+		synchronized (this) {
+			isStopped = motors[s.ordinal()].isStopped();
+			old = stopped[s.ordinal()];
+			stopped[s.ordinal()] = isStopped;
+			if (isStopped != old) {
+				publish(s.ordinal());
+			}
+		}
+		if (isStopped != old) {
+			sls.fireStopped(s.ordinal(), isStopped);
+		}
+		return isStopped;
+	}
+
+	@Override
+	public void disengageAll() {
+		synchronized (this) {
+			for (int i = 0; i < nSteppers; i++) {
+				motors[i].setEngaged(false);
+				engaged[i] = false;
+				current[i] = 0.0;
+				publish(i);
+			}
+		}
+		pcs.firePropertyChange(Props.ENGAGED.toString(), null, false);
+	}
+
+	@Override
+	public double getMaxVelocity() {
+		return MAX_VELOCITY[type];
+	}
+
+	@Override
+	public double getMinVelocity() {
+		return VELOCITY_RES[type];
+	}
+
+	@Override
+	public double getMaxAcceleration() {
+		return MAX_ACCEL[type];
+	}
+
+	@Override
+	public double getMinAcceleration() {
+		return ACCEL_RES[0];
+	}
+
+	@Override
+	public Future<Boolean> setVelocityLimit(Stepper s, double val) {
+		double v = Math.max(Math.min(val, getMaxVelocity()), getMinVelocity());
+		double old;
+		synchronized (this) {
+			motors[s.ordinal()].setVelocityLimit(v);
+			old = vLimit[s.ordinal()];
+			vLimit[s.ordinal()] = v;
+		}
+		pcs.firePropertyChange(Props.VLIMIT.toString(), old, v);
+		return WRITTEN;
+	}
+
+	@Override
+	public double getAcceleration(Stepper s) {
+		return aLimit[s.ordinal()];
+	}
+
+	@Override
+	public Future<Boolean> setAcceleration(Stepper s, double val) {
+		double a = Math.max(Math.min(val, getMaxAcceleration()), getMinAcceleration());
+		double old;
+		synchronized (this) {
+			motors[s.ordinal()].setAcceleration(a);
+			old = aLimit[s.ordinal()];
+			aLimit[s.ordinal()] = a;
+		}
+		pcs.firePropertyChange(Props.ALIMIT.toString(), old, a);
+		return WRITTEN;
+	}
+
+	@Override
+	public double getVelocityLimit(Stepper s) {
+		return vLimit[s.ordinal()];
+	}
+
+	@Override
+	public Future<Boolean> setVelocityToMax(Stepper s) {
+		return setVelocityLimit(s, getMaxVelocity());
+	}
+
+	/**
+	 * Get the current position of the simulated motor.
+	 * This is always up to date (there is no board to poll).
+	 * @param s Stepper
+	 * @return Current position
+	 */
+	@Override
+	public synchronized long getCurrentPosition(Stepper s) {
+		return motors[s.ordinal()].getPosition();
+	}
+
+	/**
+	 * Get the current position of the simulated motor.
+	 * This is always up to date, so it counts as a hit (unless maxAge is AUTHORITATIVE).
+	 * @param s Stepper
+	 * @param maxAge only checked for AUTHORITATIVE
+	 * @param unit unit of maxAge
+	 * @return Current position
+	 */
+	@Override
+	public synchronized long getCurrentPosition(Stepper s, long maxAge, TimeUnit unit) {
+		if (unit.toNanos(maxAge) > 0) {
+			readHits++;
+		}
+		return motors[s.ordinal()].getPosition();
+	}
+
+	@Override
+	public long getPosition(Stepper s) {
+		return snapshot.get(s.ordinal()).getPosition();
+	}
+
+	@Override
+	public void setCurrentPosition(Stepper s, int val) {
+		synchronized (this) {
+			motors[s.ordinal()].setPosition(val);
+			position[s.ordinal()] = val;
+			publish(s.ordinal());
+		}
+		long t = nanoTime();
+		sls.firePositionToControls(s.ordinal(), val, t);
+		sls.firePosition(s.ordinal(), val, t);
+	}
+
+	@Override
+	public synchronized long getTargetPosition(Stepper s) {
+		return motors[s.ordinal()].getTarget();
+	}
+
+	@Override
+	public synchronized long getTargetPosition(Stepper s, long maxAge, TimeUnit unit) {
+		if (unit.toNanos(maxAge) > 0) {
+			readHits++;
+		}
+		return motors[s.ordinal()].getTarget();
+	}
+
+	@Override
+	public synchronized long getReadHits() {
+		return readHits;
+	}
+
+	@Override
+	public long getReadMisses() {
+		return 0L;			// nothing to poll
+	}
+
+	/**
+	 * Set the target position of a motor.
+	 * A TARGET PropertyChangeEvent is fired with the old and new values.
+	 * Also, if the new target position is different than the current position,
+	 * a STOPPED PropertyChangeEvent is fired with the old state and 'false' for the new
+	 * (the same as the Phidget board).
+	 * @param s Stepper
+	 * @param val Target position
+	 * @return future that is already true
+	 */
+	@Override
+	public Future<Boolean> setTargetPosition(Stepper s, long val) {
+		long old;
+		boolean starting = false;
+		synchronized (this) {
+			old = target[s.ordinal()];
+			target[s.ordinal()] = val;
+			motors[s.ordinal()].setTarget(val);
+			if ((val != position[s.ordinal()]) && stopped[s.ordinal()]) {	// force NOT STOPPED
+				stopped[s.ordinal()] = false;
+				starting = true;
+			}
+			publish(s.ordinal());
+		}
+		pcs.firePropertyChange(Props.TARGET.toString(), old, val);
+		if (starting) {
+			sls.fireStopped(s.ordinal(), false);
+		}
+		return WRITTEN;
+	}
+
+	@Override
+	public void streamTargetPosition(Stepper s, long val) {
+		int n = s.ordinal();
+		boolean starting = false;
+		synchronized (this) {
+			target[n] = val;
+			motors[n].setTarget(val);
+			if (stopped[n]) {		// a moving motor publishes the target with its next position change
+				if (val != position[n]) {
+					stopped[n] = false;
+					starting = true;
+				}
+				publish(n);
+			}
+		}
+		if (starting) {
+			sls.fireStopped(n, false);
+		}
+	}
+
+	@Override
+	public double getCurrentLimit(Stepper s) {
+		return cLimit[s.ordinal()];
+	}
+
+	@Override
+	public Future<Boolean> setCurrentLimit(Stepper s, double cur) {
+		double c = Math.min(cur, MAX_CURRENT[type]);
+		double old = cLimit[s.ordinal()];
+		cLimit[s.ordinal()] = c;
+		pcs.firePropertyChange(Props.CLIMIT.toString(), old, c);
+		return WRITTEN;
+	}
+
+	/**
+	 * Disengage all steppers and stop the real time thread.
+	 */
+	@Override
+	public void close() {
+		disengageAll();
+		synchronized (this) {
+			if (ticker != null) {
+				ticker.interrupt();
+				ticker = null;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
+		sls.addPropertyChangeListener(listener);
+	}
+
+	@Override
+	public synchronized void removePropertyChangeListener(PropertyChangeListener listener) {
+		sls.removePropertyChangeListener(listener);
+	}
+
+	@Override
+	public void addStepperListener(StepperListener listener) {
+		sls.addStepperListener(listener);
+	}
+
+	@Override
+	public void removeStepperListener(StepperListener listener) {
+		sls.removeStepperListener(listener);
+	}
+
+	@Override
+	public void addControlListener(StepperListener listener) {
+		sls.addControlListener(listener);
+	}
+
+	@Override
+	public void removeControlListener(StepperListener listener) {
+		sls.removeControlListener(listener);
+	}
+}
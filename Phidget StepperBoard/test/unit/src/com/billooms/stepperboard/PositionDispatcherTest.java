@@ -0,0 +1,79 @@
+package com.billooms.stepperboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the PositionDispatcher gives every position to control
+ * and limits only the display to its maximum rate.
+ * @author Bill Ooms Copyright (c) 2012 Studio of Bill Ooms all rights reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PositionDispatcherTest {
+
+	private final static int EVENTS = 125;			// one second of events from a 1062
+	private final static long EVENT_PERIOD = 8;		// msec
+
+	private PositionDispatcher dispatcher;
+	private volatile int controls = 0;
+	private volatile int displays = 0;
+	private volatile long lastControl = -1;
+	private volatile long lastDisplay = -1;
+
+	@Before
+	public void setUp() {
+		dispatcher = new PositionDispatcher("test", 4, new PositionDispatcher.Receiver() {
+			@Override
+			public void control(int n, long pos, long nanoTime) {
+				controls++;				// only the dispatcher thread writes these
+				lastControl = pos;
+			}
+
+			@Override
+			public void deliver(int n, long pos, long nanoTime) {
+				displays++;
+				lastDisplay = pos;
+			}
+
+			@Override
+			public void delivered() {
+			}
+		});
+		dispatcher.setMaxRate(PositionDispatcher.DEFAULT_MAX_RATE);
+	}
+
+	@After
+	public void tearDown() {
+		dispatcher.stop();
+	}
+
+	@Test
+	public void testControlIsNotThrottled() throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++) {
+			dispatcher.post(0, i);
+			Thread.sleep(EVENT_PERIOD);
+		}
+		double seconds = (System.nanoTime() - start) / 1.0E9;
+		Thread.sleep(200);		// the last position reaches the display
+		assertEquals("last control position", EVENTS - 1, lastControl);
+		assertEquals("last display position", EVENTS - 1, lastDisplay);
+		assertTrue("control got " + controls + " of " + EVENTS, controls >= EVENTS * 8 / 10);
+		assertTrue("display got " + displays + " in " + seconds + " sec",
+				displays <= (int) (seconds * PositionDispatcher.DEFAULT_MAX_RATE) + 2);
+	}
+}